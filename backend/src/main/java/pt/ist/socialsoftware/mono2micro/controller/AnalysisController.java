@@ -2,7 +2,6 @@ package pt.ist.socialsoftware.mono2micro.controller;
 
 import com.fasterxml.jackson.core.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -14,18 +13,30 @@ import pt.ist.socialsoftware.mono2micro.domain.Controller;
 import pt.ist.socialsoftware.mono2micro.domain.Decomposition;
 import pt.ist.socialsoftware.mono2micro.dto.*;
 import pt.ist.socialsoftware.mono2micro.manager.CodebaseManager;
+import pt.ist.socialsoftware.mono2micro.manager.Job;
+import pt.ist.socialsoftware.mono2micro.manager.JobManager;
+import pt.ist.socialsoftware.mono2micro.utils.AnalyserCuts;
+import pt.ist.socialsoftware.mono2micro.utils.AnalyserResultsIndex;
+import pt.ist.socialsoftware.mono2micro.utils.ContingencyTable;
+import pt.ist.socialsoftware.mono2micro.utils.HierarchicalClustering;
+import pt.ist.socialsoftware.mono2micro.utils.EntityPairCounts;
+import pt.ist.socialsoftware.mono2micro.utils.Linkage;
 import pt.ist.socialsoftware.mono2micro.utils.Pair;
+import pt.ist.socialsoftware.mono2micro.utils.SimilarityMatrix;
+import pt.ist.socialsoftware.mono2micro.utils.SimilarityMetrics;
 import pt.ist.socialsoftware.mono2micro.utils.Utils;
-import pt.ist.socialsoftware.mono2micro.utils.mojoCalculator.src.main.java.MoJo;
+import pt.ist.socialsoftware.mono2micro.utils.mojoCalculator.src.main.java.PartitionMoJo;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
 
 import static pt.ist.socialsoftware.mono2micro.utils.Constants.*;
 
@@ -35,176 +46,313 @@ public class AnalysisController {
 
     private static final Logger logger = LoggerFactory.getLogger(AnalysisController.class);
     private final CodebaseManager codebaseManager = CodebaseManager.getInstance();
+    private final JobManager jobManager = JobManager.getInstance();
 
+	// with async, returns ACCEPTED and the ID of the job at once, otherwise waits for the job to finish
 	@RequestMapping(value = "/codebase/{codebaseName}/analyser", method = RequestMethod.POST)
-	public ResponseEntity<HttpStatus> analyser(
+	public ResponseEntity<String> analyser(
 		@PathVariable String codebaseName,
-		@RequestBody AnalyserDto analyser
+		@RequestBody AnalyserDto analyser,
+		@RequestParam(defaultValue = "false") boolean async
 	) {
 		logger.debug("analyser");
 
 		try {
-			File analyserPath = new File(CODEBASES_PATH + codebaseName + "/analyser/cuts/");
-			if (!analyserPath.exists()) {
-				analyserPath.mkdirs();
-			}
+			Job job = jobManager.submit(codebaseName, "analyser", j -> {
+				runAnalyser(codebaseName, analyser, j);
+				return null;
+			});
 
-			Codebase codebase = CodebaseManager.getInstance().getCodebaseWithFields(
-				codebaseName,
-				new HashSet<String>() {{
-					add("name");
-					add("profiles");
-					add("datafilePath");
-				}}
-			);
+			if (async)
+				return new ResponseEntity<>(job.getId(), HttpStatus.ACCEPTED);
 
-			int numberOfEntitiesPresentInCollection = getOrCreateSimilarityMatrix(
-				codebase,
-				analyser
-			);
+			job.waitFor();
 
-			System.out.println("Codebase: " + codebaseName + " has " + numberOfEntitiesPresentInCollection + " entities");
+		} catch (Exception e) {
+			e.printStackTrace();
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
 
-			executeCreateCutsPythonScript(
-				codebaseName,
-				numberOfEntitiesPresentInCollection
-			);
+	// the progress of the job is the number of new cuts analysed
+	private void runAnalyser(
+		String codebaseName,
+		AnalyserDto analyser,
+		Job job
+	)
+		throws Exception
+	{
+		File analyserPath = new File(CODEBASES_PATH + codebaseName + "/analyser/" + (ANALYSER_WRITE_CUTS ? "cuts/" : ""));
+		if (!analyserPath.exists()) {
+			analyserPath.mkdirs();
+		}
 
-			// THIS FIRST PHASE EXISTS TO NOT PROCESS CUTS PREVIOUSLY PROCESSED
-			// BASICALLY IT'S A COPY OF THE PREVIOUS FILE INTO THE NEW FILE
+		Codebase codebase = CodebaseManager.getInstance().getCodebaseWithFields(
+			codebaseName,
+			new HashSet<String>() {{
+				add("name");
+				add("profiles");
+				add("datafilePath");
+			}}
+		);
 
-			File analyserCutsPath = new File(CODEBASES_PATH + codebaseName + "/analyser/cuts/");
-			File[] files = analyserCutsPath.listFiles();
-			int totalNumberOfFiles = files.length;
+		SimilarityMatrix similarityMatrix = getOrCreateSimilarityMatrix(
+			codebase,
+			analyser
+		);
 
-			ObjectMapper mapper = new ObjectMapper();
-			JsonFactory jsonfactory = mapper.getFactory();
+		System.out.println("Codebase: " + codebaseName + " has " + similarityMatrix.getSize() + " entities");
 
-			boolean analyserResultFileAlreadyExists = codebaseManager.analyserResultFileAlreadyExists(codebaseName);
+		List<AnalyserCuts.WeightCombination> weightCombinations = AnalyserCuts.getWeightCombinations(
+			similarityMatrix.getSize()
+		);
 
-			String analyserResultFilename =  analyserResultFileAlreadyExists ?
-				"newAnalyserResult.json" :
-				"analyserResult.json";
+		int totalNumberOfCuts = AnalyserCuts.getNumberOfCuts(weightCombinations);
 
-			JsonGenerator jGenerator = jsonfactory.createGenerator(
-				new FileOutputStream(CODEBASES_PATH + codebaseName + "/analyser/" + analyserResultFilename),
-				JsonEncoding.UTF8
-			);
+		// THIS FIRST PHASE EXISTS TO NOT PROCESS CUTS PREVIOUSLY PROCESSED
+		// BASICALLY IT'S A COPY OF THE PREVIOUS FILE INTO THE NEW FILE
 
-		 	jGenerator.useDefaultPrettyPrinter();
-			jGenerator.writeStartObject();
+		ObjectMapper mapper = new ObjectMapper();
+		JsonFactory jsonfactory = mapper.getFactory();
 
-			Set<String> cutInfoNames = new HashSet<>();
+		boolean analyserResultFileAlreadyExists = codebaseManager.analyserResultFileAlreadyExists(codebaseName);
 
-			if (analyserResultFileAlreadyExists) {
+		File existentAnalyserResultFile = new File(CODEBASES_PATH + codebaseName + "/analyser/analyserResult.json");
+		Set<String> cutInfoNames = new HashSet<>();
 
-				File existentAnalyserResultFile = new File(CODEBASES_PATH + codebaseName + "/analyser/analyserResult.json");
+		if (analyserResultFileAlreadyExists) {
+			cutInfoNames = Utils.getJsonFileKeys(existentAnalyserResultFile);
 
-				cutInfoNames = Utils.getJsonFileKeys(existentAnalyserResultFile);
+			// checked before the new file is created, so that a complete result is left untouched
+			if (cutInfoNames.size() == totalNumberOfCuts) {
+				System.out.println("Analyser Complete");
+				return;
+			}
+		}
 
-				if (cutInfoNames.size() == totalNumberOfFiles) {
-					System.out.println("Analyser Complete");
-					return new ResponseEntity<>(HttpStatus.OK);
-				}
+		String analyserResultFilename =  analyserResultFileAlreadyExists ?
+			"newAnalyserResult.json" :
+			"analyserResult.json";
 
-				JsonParser jsonParser = jsonfactory.createParser(existentAnalyserResultFile);
-				jsonParser.nextValue();
+		File analyserResultFile = new File(CODEBASES_PATH + codebaseName + "/analyser/" + analyserResultFilename);
 
-				if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT) {
-					System.err.println("Json must start with a left curly brace");
-					System.exit(-1);
-				}
+		JsonGenerator jGenerator = jsonfactory.createGenerator(
+			new FileOutputStream(analyserResultFile),
+			JsonEncoding.UTF8
+		);
+
+		ExecutorService pool = null;
+		boolean previousResultsCopied = false;
+		Throwable failure = null;
+
+		try {
+			jGenerator.useDefaultPrettyPrinter();
+			jGenerator.writeStartObject();
 
-				jsonParser.nextValue();
+			if (analyserResultFileAlreadyExists) {
+				try (JsonParser jsonParser = jsonfactory.createParser(existentAnalyserResultFile)) {
+					jsonParser.nextValue();
+
+					if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT) {
+						System.err.println("Json must start with a left curly brace");
+						System.exit(-1);
+					}
 
-				while (jsonParser.getCurrentToken() != JsonToken.END_OBJECT) {
-					if (jsonParser.getCurrentToken() == JsonToken.START_OBJECT) {
-						Utils.print("Cut name: " + jsonParser.getCurrentName(), Utils.lineno());
-						cutInfoNames.add(jsonParser.currentName());
+					jsonParser.nextValue();
 
-						CutInfoDto cutInfo = jsonParser.readValueAs(CutInfoDto.class);
+					while (jsonParser.getCurrentToken() != JsonToken.END_OBJECT) {
+						if (jsonParser.getCurrentToken() == JsonToken.START_OBJECT) {
+							Utils.print("Cut name: " + jsonParser.getCurrentName(), Utils.lineno());
+							cutInfoNames.add(jsonParser.currentName());
 
-						jGenerator.writeObjectField(jsonParser.getCurrentName(), cutInfo);
+							CutInfoDto cutInfo = jsonParser.readValueAs(CutInfoDto.class);
 
-						jsonParser.nextValue();
+							jGenerator.writeObjectField(jsonParser.getCurrentName(), cutInfo);
+
+							jsonParser.nextValue();
+						}
 					}
 				}
 
 				jGenerator.flush();
-
-				existentAnalyserResultFile.delete();
+				previousResultsCopied = true;
 			}
 
 			int maxRequests = analyser.getRequestLimit();
-			short newRequestsCount = 0;
-			short count = 0;
+			int newRequestsCount = 0;
+			int count = 0;
 
 			// AFTER COPYING PREVIOUS RESULTS, NEXT CUTS WILL BE PROCESSED AND THEIR RESULTS
 			// WILL BE APPENDED TO THE NEW FILE
 
-			for (File file : files) {
+			pool = Executors.newWorkStealingPool(ANALYSER_THREADS);
+			CompletionService<Pair<String, CutInfoDto>> completionService = new ExecutorCompletionService<>(pool);
 
-				String filename = FilenameUtils.getBaseName(file.getName());
+			// each weight combination's linkage is computed once, by the first of its cuts to run, while the
+			// others wait for it outside of the map
+			Map<AnalyserCuts.WeightCombination, CompletableFuture<Linkage>> linkages = new ConcurrentHashMap<>();
 
-				count++;
+			for (AnalyserCuts.WeightCombination weightCombination : weightCombinations) {
+				for (int numberOfClusters : weightCombination.getNumbersOfClusters()) {
+					String cutName = weightCombination.getCutName(numberOfClusters);
 
-                if (cutInfoNames.contains(filename)) {
-                    System.out.println(filename + " already analysed. " + count + "/" + totalNumberOfFiles);
-                    continue;
-                }
+					count++;
 
-				Decomposition decomposition = buildDecompositionAndCalculateMetrics(
-					analyser,
-					codebase,
-					filename
-				);
+					if (cutInfoNames.contains(cutName)) {
+						System.out.println(cutName + " already analysed. " + count + "/" + totalNumberOfCuts);
+						continue;
+					}
 
-                CutInfoDto cutInfo = assembleCutInformation(
-                	analyser,
-					decomposition,
-					filename
-				);
+					if (maxRequests > 0 && newRequestsCount == maxRequests)
+						break;
+
+					newRequestsCount++;
+
+					// the decomposition is created and evaluated by a single worker
+					completionService.submit(() -> {
+						CompletableFuture<Linkage> newLinkage = new CompletableFuture<>();
+						CompletableFuture<Linkage> linkage = linkages.putIfAbsent(weightCombination, newLinkage);
+
+						if (linkage == null) {
+							linkage = newLinkage;
+
+							try {
+								newLinkage.complete(HierarchicalClustering.linkage(
+									similarityMatrix,
+									weightCombination.getMeasureWeights(),
+									similarityMatrix.getLinkageType()
+								));
+							} catch (RuntimeException | Error e) {
+								newLinkage.completeExceptionally(e);
+								throw e;
+							}
+						}
+
+						int[] labels;
+
+						try {
+							labels = linkage.get().cutByNumberOfClusters(numberOfClusters);
+						} catch (ExecutionException e) {
+							throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+						}
+
+						if (ANALYSER_WRITE_CUTS)
+							writeAnalyserCut(codebaseName, cutName, similarityMatrix.getEntityIDs(), labels);
+
+						Decomposition decomposition = buildDecompositionAndCalculateMetrics(
+							analyser,
+							codebase,
+							similarityMatrix.getEntityIDs(),
+							labels
+						);
+
+						return new Pair<>(cutName, assembleCutInformation(analyser, decomposition, cutName));
+					});
+				}
+
+				if (maxRequests > 0 && newRequestsCount == maxRequests)
+					break;
+			}
+
+			job.setProgress(0, newRequestsCount);
+
+			// results are written by this thread only, as they complete
+			for (int completed = 1; completed <= newRequestsCount; completed++) {
+				Pair<String, CutInfoDto> result;
+
+				try {
+					result = completionService.take().get();
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
 
 				jGenerator.writeObjectField(
-					filename,
-					cutInfo
+					result.getFirst(),
+					result.getSecond()
 				);
 
 				jGenerator.flush();
 
-				newRequestsCount++;
+				System.out.println("NEW: " + result.getFirst() + " : " + completed + "/" + newRequestsCount);
+				job.setProgress(completed, newRequestsCount);
+			}
 
-				System.out.println("NEW: " + filename + " : " + count + "/" + totalNumberOfFiles);
-				if (newRequestsCount == maxRequests)
-					break;
+		} catch (Throwable e) {
+			failure = e;
+			throw e;
 
-			}
+		} finally {
+			if (pool != null)
+				pool.shutdownNow();
+
+			// the cuts written so far are kept when the job fails or is cancelled, so that the next run resumes
+			IOException closeException = null;
 
-			jGenerator.writeEndObject();
-			jGenerator.close();
+			try {
+				try {
+					jGenerator.writeEndObject();
+				} finally {
+					jGenerator.close();
+				}
+			} catch (IOException e) {
+				closeException = e;
+			}
 
 			if (analyserResultFileAlreadyExists) {
-				File fileToBeRenamed = new File(CODEBASES_PATH + codebaseName + "/analyser/" + analyserResultFilename);
-				File fileRenamed = new File(CODEBASES_PATH + codebaseName + "/analyser/analyserResult.json");
+				// the previous results are only replaced by a complete file that has all of them
+				if (previousResultsCopied && closeException == null)
+					Files.move(analyserResultFile.toPath(), existentAnalyserResultFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				else
+					analyserResultFile.delete();
+			}
 
-				fileToBeRenamed.renameTo(fileRenamed);
+			// the error that stopped the analyser is the one thrown
+			if (closeException != null) {
+				if (failure != null)
+					failure.addSuppressed(closeException);
+				else
+					throw closeException;
 			}
+		}
+
+		System.out.println("Analyser Complete");
+	}
+
+	// the cuts of the analyser results in every range of the query, without their controller specs unless asked for
+	@RequestMapping(value = "/codebase/{codebaseName}/analyser/results", method = RequestMethod.POST)
+	public ResponseEntity<AnalyserResultsDto> getAnalyserResults(
+		@PathVariable String codebaseName,
+		@RequestBody AnalyserResultsQueryDto query
+	) {
+		logger.debug("getAnalyserResults");
+
+		try {
+			AnalyserResultsIndex index = codebaseManager.getAnalyserResultsIndex(codebaseName);
+			AnalyserResultsIndex.Result result = index.query(query);
+
+			AnalyserResultsDto analyserResults = new AnalyserResultsDto();
+			analyserResults.setTotal(result.total);
+			analyserResults.setCuts(index.getCutInfos(result.rows, query.isIncludeControllerSpecs()));
+
+			return new ResponseEntity<>(analyserResults, HttpStatus.OK);
+
+		} catch (FileNotFoundException e) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
 
-			System.out.println("Analyser Complete");
 		} catch (Exception e) {
 			e.printStackTrace();
 			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
 		}
-		return new ResponseEntity<>(HttpStatus.OK);
 	}
 
-	public int getOrCreateSimilarityMatrix(
+	public SimilarityMatrix getOrCreateSimilarityMatrix(
 		Codebase codebase,
 		AnalyserDto analyser
 	)
 		throws IOException
 	{
-		SimilarityMatrixDto similarityMatrixDto;
+		SimilarityMatrix similarityMatrix;
 
 		if (!codebaseManager.analyserSimilarityMatrixFileAlreadyExists(codebase.getName())) {
 
@@ -216,7 +364,7 @@ public class AnalysisController {
 			);
 
 			// Unfortunately, the getMatrixData method differs from the one used in the Dendrogram
-			similarityMatrixDto = getMatrixData(
+			similarityMatrix = getMatrixData(
 				result.entities,
 				result.e1e2PairCount,
 				result.entityControllers
@@ -224,78 +372,68 @@ public class AnalysisController {
 
 			CodebaseManager.getInstance().writeAnalyserSimilarityMatrix(
 				codebase.getName(),
-				similarityMatrixDto
+				similarityMatrix
 			);
 
 		} else {
 			System.out.println("Similarity matrix already exists...");
 
-			similarityMatrixDto = CodebaseManager.getInstance().getSimilarityMatrixDtoWithFields(
-				codebase.getName(),
-				new HashSet<String>() {{ add("entities"); }}
-			);
+			similarityMatrix = CodebaseManager.getInstance().getAnalyserSimilarityMatrix(codebase.getName());
 		}
 
-		return similarityMatrixDto.getEntities().size();
+		return similarityMatrix;
 	}
 
-	private void executeCreateCutsPythonScript(
+	// the cuts are only kept on disk for the evaluation scripts
+	private void writeAnalyserCut(
 		String codebaseName,
-		int numberOfEntitiesPresentInCollection
+		String cutName,
+		short[] entityIDs,
+		int[] labels
 	)
-		throws InterruptedException, IOException
+		throws IOException
 	{
-		System.out.println("Executing analyser.py to create cuts...");
-
-		Runtime r = Runtime.getRuntime();
-		String pythonScriptPath = RESOURCES_PATH + "analyser.py";
-		String[] cmd = new String[5];
-		cmd[0] = PYTHON;
-		cmd[1] = pythonScriptPath;
-		cmd[2] = CODEBASES_PATH;
-		cmd[3] = codebaseName;
-		cmd[4] = String.valueOf(numberOfEntitiesPresentInCollection);
-		Process p = r.exec(cmd);
-		p.waitFor();
-
-		System.out.println("script execution has ended");
+		Map<String, List<Short>> clusters = new LinkedHashMap<>();
+
+		for (int i = 0; i < labels.length; i++)
+			clusters.computeIfAbsent(String.valueOf(labels[i]), k -> new ArrayList<>()).add(entityIDs[i]);
+
+		codebaseManager.writeAnalyserCut(
+			codebaseName,
+			cutName,
+			clusters
+		);
 	}
 
 	private Decomposition buildDecompositionAndCalculateMetrics(
 		AnalyserDto analyser,
 		Codebase codebase, // requirements: name, profiles, datafilePath
-		String filename
+		short[] entityIDs,
+		int[] labels // cluster of each entity
 	)
 		throws Exception
 	{
 		Decomposition decomposition = new Decomposition();
 		decomposition.setCodebaseName(codebase.getName());
 
-		HashMap<String, HashMap<String, Set<Short>>> analyserCut = codebaseManager.getAnalyserCut(
-			codebase.getName(),
-			filename
-		);
-
-		Set<String> clusterIDs = analyserCut.get("clusters").keySet();
+		Cluster[] clusters = new Cluster[Linkage.getNumberOfClusters(labels)];
 
-		for (String clusterId : clusterIDs) {
-			Set<Short> entities = analyserCut.get("clusters").get(clusterId);
-			Cluster cluster = new Cluster(clusterId, entities);
+		for (int id = 0; id < clusters.length; id++)
+			clusters[id] = new Cluster(String.valueOf(id));
 
-			for (short entityID : entities)
-				decomposition.putEntity(entityID, clusterId);
+		for (int i = 0; i < labels.length; i++) {
+			Cluster cluster = clusters[labels[i]];
 
-			decomposition.addCluster(cluster);
+			cluster.addEntity(entityIDs[i]);
+			decomposition.putEntity(entityIDs[i], cluster.getName());
 		}
 
-		decomposition.setControllers(codebaseManager.getControllersWithCostlyAccesses(
-			codebase,
-			analyser.getProfile(),
-			decomposition.getEntityIDToClusterName()
-		));
+		for (Cluster cluster : clusters)
+			decomposition.addCluster(cluster);
 
 		decomposition.calculateMetrics(
 			codebase,
+			analyser.getProfile(),
 			analyser.getTracesMaxLimit(),
 			analyser.getTraceType(),
 			true
@@ -314,6 +452,7 @@ public class AnalysisController {
 		AnalysisDto analysisDto = new AnalysisDto();
 		analysisDto.setDecomposition1(analyser.getExpert());
 		analysisDto.setDecomposition2(decomposition);
+		analysisDto.setFalsePairsLimit(0); // only the scores are kept
 
 		analysisDto = getAnalysis(analysisDto).getBody();
 
@@ -361,59 +500,132 @@ public class AnalysisController {
 		return cutInfo;
 	}
 
-	private static SimilarityMatrixDto getMatrixData(
+	private static SimilarityMatrix getMatrixData(
 		Set<Short> entityIDs,
-		Map<String,Integer> e1e2PairCount,
+		EntityPairCounts e1e2PairCount,
 		Map<Short, List<Pair<String, Byte>>> entityControllers
 	) {
-		SimilarityMatrixDto matrixData = new SimilarityMatrixDto();
+		SimilarityMatrix similarityMatrix = new SimilarityMatrix(entityIDs, "average", 4, false);
+
+		SimilarityMetrics similarityMetrics = new SimilarityMetrics(entityIDs, e1e2PairCount, entityControllers);
+		int n = similarityMetrics.getSize();
+
+		similarityMetrics.calculateRows(SIMILARITY_MATRIX_THREADS, (i, metrics) -> {
+			for (int j = 0; j < n; j++)
+				for (int measure = 0; measure < SimilarityMetrics.MEASURES; measure++)
+					similarityMatrix.set(i, j, measure, metrics[j * SimilarityMetrics.MEASURES + measure]);
+		});
+
+		return similarityMatrix;
+	}
+
+	@RequestMapping(value = "/codebase/{codebaseName}/dendrogram/{dendrogramName}/comparison", method = RequestMethod.POST)
+	public ResponseEntity<ComparisonDto> getComparison(
+		@PathVariable String codebaseName,
+		@PathVariable String dendrogramName,
+		@RequestBody ComparisonDto comparison
+	) {
+		logger.debug("getComparison");
 
-		List<List<List<Float>>> similarityMatrix = new ArrayList<>();
+		try {
+			List<String> decompositionNames = comparison.getDecompositionNames();
+			int n = decompositionNames.size();
+
+			List<Map<String, Cluster>> decompositionsClusters = new ArrayList<>();
+
+			for (String decompositionName : decompositionNames)
+				decompositionsClusters.add(
+					codebaseManager.getDecompositionWithClustersWithFields(
+						codebaseName,
+						dendrogramName,
+						decompositionName,
+						new HashSet<String>() {{ add("name"); add("entities"); }}
+					).getClusters()
+				);
 
-		int maxNumberOfPairs = Utils.getMaxNumberOfPairs(e1e2PairCount);
+			// every decomposition is a partition over the same entity indexes
+			Map<Short, Integer> entityIndexes = new HashMap<>();
 
-		for (short e1ID : entityIDs) {
-			List<List<Float>> matrixRow = new ArrayList<>();
+			for (Map<String, Cluster> clusters : decompositionsClusters)
+				for (Cluster cluster : clusters.values())
+					for (short entityID : cluster.getEntities())
+						entityIndexes.putIfAbsent(entityID, entityIndexes.size());
 
-			for (short e2ID : entityIDs) {
-				List<Float> metric = new ArrayList<>();
+			short[] entityIDs = new short[entityIndexes.size()];
+			for (Map.Entry<Short, Integer> entry : entityIndexes.entrySet())
+				entityIDs[entry.getValue()] = entry.getKey();
 
-				if (e1ID == e2ID) {
-					metric.add((float) 1);
-					metric.add((float) 1);
-					metric.add((float) 1);
-					metric.add((float) 1);
+			String[][] clusterNames = new String[n][];
+			int[][] partitions = new int[n][];
 
-					matrixRow.add(metric);
-					continue;
-				}
+			for (int i = 0; i < n; i++) {
+				clusterNames[i] = decompositionsClusters.get(i).keySet().toArray(new String[0]);
+				partitions[i] = new int[entityIDs.length];
+				Arrays.fill(partitions[i], -1);
 
-				float[] metrics = Utils.calculateSimilarityMatrixMetrics(
-					entityControllers,
-					e1e2PairCount,
-					e1ID,
-					e2ID,
-					maxNumberOfPairs
-				);
+				for (int c = 0; c < clusterNames[i].length; c++)
+					for (short entityID : decompositionsClusters.get(i).get(clusterNames[i][c]).getEntities())
+						partitions[i][entityIndexes.get(entityID)] = c;
+			}
 
-				metric.add(metrics[0]);
-				metric.add(metrics[1]);
-				metric.add(metrics[2]);
-				metric.add(metrics[3]);
+			comparison.setMojoFM(new double[n][n]);
+			comparison.setFmeasure(new float[n][n]);
+			comparison.setPrecision(new float[n][n]);
+			comparison.setRecall(new float[n][n]);
+
+			ExecutorService pool = Executors.newWorkStealingPool(COMPARISON_THREADS);
+			List<Future<?>> rows = new ArrayList<>();
+
+			try {
+				for (int i = 0; i < n; i++) {
+					int row = i;
+
+					rows.add(pool.submit(() -> {
+						for (int j = 0; j < n; j++) {
+							Scores scores = new Scores(new ContingencyTable(
+								entityIDs,
+								clusterNames[row],
+								partitions[row],
+								clusterNames[j],
+								partitions[j]
+							));
+
+							comparison.getFmeasure()[row][j] = scores.fmeasure;
+							comparison.getPrecision()[row][j] = scores.precision;
+							comparison.getRecall()[row][j] = scores.recall;
+
+							// as getAnalysis, MoJoFM from decomposition j over its entities
+							int[] target = new int[entityIDs.length];
+							for (int e = 0; e < entityIDs.length; e++)
+								target[e] = partitions[j][e] >= 0 ? partitions[row][e] : -1;
+
+							comparison.getMojoFM()[row][j] = PartitionMoJo.mojofm(partitions[j], target);
+						}
+					}));
+				}
 
-				matrixRow.add(metric);
+				for (Future<?> future : rows) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					}
+				}
+
+			} finally {
+				pool.shutdown();
 			}
-			similarityMatrix.add(matrixRow);
-		}
-		matrixData.setMatrix(similarityMatrix);
-		matrixData.setEntities(entityIDs);
-		matrixData.setLinkageType("average");
 
-		return matrixData;
+			return new ResponseEntity<>(comparison, HttpStatus.OK);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
 	}
 
 	@RequestMapping(value = "/analysis", method = RequestMethod.POST)
-	public ResponseEntity<AnalysisDto> getAnalysis(@RequestBody AnalysisDto analysis) throws IOException {
+	public ResponseEntity<AnalysisDto> getAnalysis(@RequestBody AnalysisDto analysis) {
 		logger.debug("getAnalysis");
 
 		if (analysis.getDecomposition1().getCodebaseName() == null) { // no expert cut from frontend
@@ -430,27 +642,16 @@ public class AnalysisController {
 			decomposition2_CommonEntitiesOnly.put(c.getName(), c.getEntities());
 		}
 
-		List<Short> entities = new ArrayList<>();
-		List<Short> notSharedEntities = new ArrayList<>();
+		Set<Short> decomposition2Entities = new HashSet<>();
+		for (Set<Short> l2 : decomposition2_CommonEntitiesOnly.values())
+			decomposition2Entities.addAll(l2);
 
-		for (Set<Short> l1 : decomposition1.values()) {
-			for (short e1ID : l1) {
-				boolean inBoth = false;
-
-				for (Set<Short> l2 : decomposition2_CommonEntitiesOnly.values()) {
-					if (l2.contains(e1ID)) {
-						inBoth = true;
-						break;
-					}
-				}
+		List<Short> notSharedEntities = new ArrayList<>();
 
-				if (inBoth)
-					entities.add(e1ID);
-				else {
+		for (Set<Short> l1 : decomposition1.values())
+			for (short e1ID : l1)
+				if (!decomposition2Entities.contains(e1ID))
 					notSharedEntities.add(e1ID);
-				}
-			}				
-		}
 
 		// ------------------------------------------------------------------------------------------
 		Map<String, Set<Short>> decomposition2_UnassignedInBigger = decompositionCopyOf(decomposition2_CommonEntitiesOnly);
@@ -479,110 +680,25 @@ public class AnalysisController {
 			decomposition2_UnassignedInSingletons.put("singletonCluster" + i, clusterSingletonEntity);
 		}
 
-		int truePositive = 0;
-		int falsePositive = 0;
-		int trueNegative = 0;
-		int falseNegative = 0;
-
-		for (int i = 0; i < entities.size(); i++) {
-			for (int j = i+1; j < entities.size(); j++) {
-				short e1ID = entities.get(i);
-				short e2ID = entities.get(j);
-
-				String e1ClusterG1 = "";
-				String e2ClusterG1 = "";
-				String e1ClusterG2 = "";
-				String e2ClusterG2 = "";
-
-				for (String cluster : decomposition1.keySet()) {
-					if (decomposition1.get(cluster).contains(e1ID)) {
-						e1ClusterG1 = cluster;
-					}
-					if (decomposition1.get(cluster).contains(e2ID)) {
-						e2ClusterG1 = cluster;
-					}
-				}
-
-				for (String cluster : decomposition2_CommonEntitiesOnly.keySet()) {
-					if (decomposition2_CommonEntitiesOnly.get(cluster).contains(e1ID)) {
-						e1ClusterG2 = cluster;
-					}
-					if (decomposition2_CommonEntitiesOnly.get(cluster).contains(e2ID)) {
-						e2ClusterG2 = cluster;
-					}
-				}
+		ContingencyTable contingencyTable = new ContingencyTable(decomposition1, decomposition2_CommonEntitiesOnly);
+		Scores scores = new Scores(contingencyTable);
 
-				boolean sameClusterInGraph1 = false;
-				if (e1ClusterG1.equals(e2ClusterG1))
-					sameClusterInGraph1 = true;
-				
-				boolean sameClusterInGraph2 = false;
-				if (e1ClusterG2.equals(e2ClusterG2))
-					sameClusterInGraph2 = true;
-
-				if (sameClusterInGraph1 && sameClusterInGraph2)
-					truePositive++;
-				if (sameClusterInGraph1 && !sameClusterInGraph2)
-					falseNegative++;
-				if (!sameClusterInGraph1 && sameClusterInGraph2)
-					falsePositive++;
-				if (!sameClusterInGraph1 && !sameClusterInGraph2)
-					trueNegative++;
-
-				if (sameClusterInGraph1 != sameClusterInGraph2) {
-					String[] falsePair = new String[6];
-					falsePair[0] = String.valueOf(e1ID);
-					falsePair[1] = e1ClusterG1;
-					falsePair[2] = e1ClusterG2;
-					falsePair[3] = String.valueOf(e2ID);
-					falsePair[4] = e2ClusterG1;
-					falsePair[5] = e2ClusterG2;
-
-					analysis.addFalsePair(falsePair);
-				}
-			}
-		}
-
-		analysis.setTruePositive(truePositive);
-		analysis.setTrueNegative(trueNegative);
-		analysis.setFalsePositive(falsePositive);
-		analysis.setFalseNegative(falseNegative);
+		analysis.setTruePositive(scores.truePositive);
+		analysis.setTrueNegative(scores.trueNegative);
+		analysis.setFalsePositive(scores.falsePositive);
+		analysis.setFalseNegative(scores.falseNegative);
 
-		float accuracy;
-		float precision;
-		float recall;
-		float specificity;
-		float fmeasure;
-
-		if (truePositive == 0 && trueNegative == 0 && falsePositive == 0 && falseNegative == 0) { // no ExpertCut submitted
-			accuracy = 0;
-			precision = 0;
-			recall = 0;
-			specificity = 0;
-			fmeasure = 0;
-		}
-		else {
-			accuracy = (float)(truePositive + trueNegative) / (truePositive + trueNegative + falsePositive + falseNegative);
-			accuracy = BigDecimal.valueOf(accuracy).setScale(2, RoundingMode.HALF_UP).floatValue();
-
-			precision = (float)truePositive / (truePositive + falsePositive);
-			precision = BigDecimal.valueOf(precision).setScale(2, RoundingMode.HALF_UP).floatValue();
-
-			recall = (float)truePositive / (truePositive + falseNegative);
-			recall = BigDecimal.valueOf(recall).setScale(2, RoundingMode.HALF_UP).floatValue();
-
-			specificity = (float)trueNegative / (trueNegative + falsePositive);
-			specificity = Float.isNaN(specificity) ? -1 : BigDecimal.valueOf(specificity).setScale(2, RoundingMode.HALF_UP).floatValue();
-
-			fmeasure = 2*precision*recall / (precision + recall);
-			fmeasure = BigDecimal.valueOf(fmeasure).setScale(2, RoundingMode.HALF_UP).floatValue();
-		}
+		analysis.setFalsePairsCount((int) contingencyTable.getNumberOfFalsePairs());
+		analysis.setFalsePairs(contingencyTable.getFalsePairs(
+			analysis.getFalsePairsOffset(),
+			analysis.getFalsePairsLimit() == null ? Integer.MAX_VALUE : analysis.getFalsePairsLimit() // every pair unless a page is asked for
+		));
 
-		analysis.setAccuracy(accuracy);
-		analysis.setPrecision(precision);
-		analysis.setRecall(recall);
-		analysis.setSpecificity(specificity);
-        analysis.setFmeasure(fmeasure);
+		analysis.setAccuracy(scores.accuracy);
+		analysis.setPrecision(scores.precision);
+		analysis.setRecall(scores.recall);
+		analysis.setSpecificity(scores.specificity);
+		analysis.setFmeasure(scores.fmeasure);
 
         /*
         *******************************************
@@ -590,27 +706,23 @@ public class AnalysisController {
         *******************************************
         */
 		double mojoValueCommonOnly = getMojoValue(
-				decomposition2_CommonEntitiesOnly,
-				decomposition1,
-				decomposition2_CommonEntitiesOnly.values().stream().flatMap(Collection::stream).collect(Collectors.toSet())
+			decomposition2_CommonEntitiesOnly,
+			decomposition1
 		);
 
 		double mojoValueUnassignedInBiggest = getMojoValue(
-				decomposition2_UnassignedInBigger,
-				decomposition1,
-				decomposition2_UnassignedInBigger.values().stream().flatMap(Collection::stream).collect(Collectors.toSet())
+			decomposition2_UnassignedInBigger,
+			decomposition1
 		);
 
 		double mojoValueUnassignedInNew = getMojoValue(
-				decomposition2_UnassignedInNew,
-				decomposition1,
-				decomposition2_UnassignedInNew.values().stream().flatMap(Collection::stream).collect(Collectors.toSet())
+			decomposition2_UnassignedInNew,
+			decomposition1
 		);
 
 		double mojoValueUnassignedInSingletons = getMojoValue(
-				decomposition2_UnassignedInSingletons,
-				decomposition1,
-				decomposition2_UnassignedInSingletons.values().stream().flatMap(Collection::stream).collect(Collectors.toSet())
+			decomposition2_UnassignedInSingletons,
+			decomposition1
 		);
 
 		analysis.setMojoCommon(mojoValueCommonOnly);
@@ -621,6 +733,48 @@ public class AnalysisController {
 		return new ResponseEntity<>(analysis, HttpStatus.OK);
 	}
 
+	// pair counting scores of a decomposition against another one
+	private static class Scores {
+		// at most 65535 * 65534 / 2 pairs, so every count fits in an int
+		int truePositive;
+		int falsePositive;
+		int trueNegative;
+		int falseNegative;
+
+		float accuracy;
+		float precision;
+		float recall;
+		float specificity;
+		float fmeasure;
+
+		Scores(ContingencyTable contingencyTable) {
+			truePositive = (int) contingencyTable.getTruePositive();
+			falsePositive = (int) contingencyTable.getFalsePositive();
+			trueNegative = (int) contingencyTable.getTrueNegative();
+			falseNegative = (int) contingencyTable.getFalseNegative();
+
+			if (truePositive == 0 && trueNegative == 0 && falsePositive == 0 && falseNegative == 0) { // no ExpertCut submitted
+				accuracy = 0;
+				precision = 0;
+				recall = 0;
+				specificity = 0;
+				fmeasure = 0;
+			}
+			else {
+				accuracy = round((float)(truePositive + trueNegative) / (truePositive + trueNegative + falsePositive + falseNegative));
+				precision = round((float)truePositive / (truePositive + falsePositive));
+				recall = round((float)truePositive / (truePositive + falseNegative));
+				specificity = round((float)trueNegative / (trueNegative + falsePositive));
+				fmeasure = precision == -1 || recall == -1 ? -1 : round(2*precision*recall / (precision + recall));
+			}
+		}
+
+		// -1 when there are no pairs to divide by
+		private static float round(float value) {
+			return Float.isNaN(value) ? -1 : BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).floatValue();
+		}
+	}
+
 	private Map<String, Set<Short>> decompositionCopyOf(Map<String, Set<Short>> decomposition) {
 		HashMap<String, Set<Short>> copy = new HashMap<>();
 
@@ -633,60 +787,44 @@ public class AnalysisController {
 		return copy;
 	}
 
-	private double getMojoValue(
+	// MoJoFM from decomposition1 to decomposition2, over the entities of decomposition1
+	private static double getMojoValue(
 			Map<String, Set<Short>> decomposition1,
-			Map<String, Set<Short>> decomposition2,
-			Set<Short> entities
-	)
-		throws IOException
-	{
-		StringBuilder sbSource = new StringBuilder();
-		for (Map.Entry<String, Set<Short>> clusterEntry : decomposition1.entrySet()) {
-			String clusterName = clusterEntry.getKey();
-			Set<Short> clusterEntities = clusterEntry.getValue();
+			Map<String, Set<Short>> decomposition2
+	) {
+		Map<Short, Integer> entityIndexes = new HashMap<>();
 
-			for (short entityID : clusterEntities) {
-				if (entities.contains(entityID)) { // entity present in both decompositions
-					sbSource.append("contain ")
-							.append(clusterName)
-							.append(" ")
-							.append(entityID)
-							.append("\n");
-				}
-			}
-		}
+		for (Set<Short> clusterEntities : decomposition1.values())
+			for (short entityID : clusterEntities)
+				entityIndexes.putIfAbsent(entityID, entityIndexes.size());
+
+		return PartitionMoJo.mojofm(
+			getPartition(decomposition1, entityIndexes),
+			getPartition(decomposition2, entityIndexes)
+		);
+	}
 
-		StringBuilder sbTarget = new StringBuilder();
-		for (Map.Entry<String, Set<Short>> clusterEntry : decomposition2.entrySet()) {
-			String clusterName = clusterEntry.getKey();
-			Set<Short> clusterEntities = clusterEntry.getValue();
+	// cluster of each indexed entity, -1 when it is not in the decomposition
+	private static int[] getPartition(
+		Map<String, Set<Short>> decomposition,
+		Map<Short, Integer> entityIndexes
+	) {
+		int[] partition = new int[entityIndexes.size()];
+		Arrays.fill(partition, -1);
 
-			for (short entityID : clusterEntities) {
-				if (entities.contains(entityID)) { // entity present in both decompositions
-					sbTarget.append("contain ")
-							.append(clusterName)
-							.append(" ")
-							.append(entityID)
-							.append("\n");
-				}
-			}
-		}
+		int cluster = 0;
 
-		String distrSrcPath = MOJO_RESOURCES_PATH + "distrSrc.rsf";
-		String distrTargetPath = MOJO_RESOURCES_PATH + "distrTarget.rsf";
+		for (Set<Short> clusterEntities : decomposition.values()) {
+			for (short entityID : clusterEntities) {
+				Integer entityIndex = entityIndexes.get(entityID);
 
-		FileWriter srcFileWriter = new FileWriter(new File(distrSrcPath));
-		srcFileWriter.write(sbSource.toString());
-		srcFileWriter.close();
+				if (entityIndex != null)
+					partition[entityIndex] = cluster;
+			}
 
-		FileWriter targetFileWriter = new FileWriter(new File(distrTargetPath));
-		targetFileWriter.write(sbTarget.toString());
-		targetFileWriter.close();
+			cluster++;
+		}
 
-		return new MoJo().executeMojo(new String[]{
-				distrSrcPath,
-				distrTargetPath,
-				"-fm"
-		});
+		return partition;
 	}
-}
\ No newline at end of file
+}
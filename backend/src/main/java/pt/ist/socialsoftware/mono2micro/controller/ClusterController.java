@@ -6,12 +6,16 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import pt.ist.socialsoftware.mono2micro.domain.*;
+import pt.ist.socialsoftware.mono2micro.dto.MoveDto;
+import pt.ist.socialsoftware.mono2micro.dto.MoveEvaluationDto;
 import pt.ist.socialsoftware.mono2micro.manager.CodebaseManager;
 import pt.ist.socialsoftware.mono2micro.utils.Utils;
 
 import javax.management.openmbean.KeyAlreadyExistsException;
 import java.util.*;
 
+import static pt.ist.socialsoftware.mono2micro.utils.Constants.MOVE_EVALUATION_THREADS;
+
 @RestController
 @RequestMapping(value = "/mono2micro/codebase/{codebaseName}/dendrogram/{dendrogramName}/decomposition/{decompositionName}")
 public class ClusterController {
@@ -32,14 +36,9 @@ public class ClusterController {
 		logger.debug("mergeClusters");
 
 		try {
-			// FIXME The whole codebase needs to be fetched because it needs to be written as a whole again
-			// FIXME The best solution would be each "dendrogram directory could also have a dendrogram.json"
-			// FIXME Each dendrogram directory would have a folder for controllers and another for clusters
-			// FIXME Each controller and cluster would have its own json file
-
 			Codebase codebase = codebaseManager.getCodebase(codebaseName);
-			Dendrogram dendrogram = codebase.getDendrogram(dendrogramName);
-			Decomposition decomposition = dendrogram.getDecomposition(decompositionName);
+			Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
+			Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
 
 			decomposition.mergeClusters(
 				clusterName,
@@ -47,19 +46,14 @@ public class ClusterController {
 				newName
 			);
 
-			decomposition.setControllers(codebaseManager.getControllersWithCostlyAccesses(
+			decomposition.updateMetrics(
 				codebase,
 				dendrogram.getProfile(),
-				decomposition.getEntityIDToClusterName()
-			));
-
-			decomposition.calculateMetrics(
-				codebase,
 				dendrogram.getTracesMaxLimit(),
-				dendrogram.getTraceType(),
-					false);
+				dendrogram.getTraceType()
+			);
 
-			codebaseManager.writeCodebase(codebase);
+			codebaseManager.writeDecomposition(decomposition);
 			return new ResponseEntity<>(HttpStatus.OK);
 
 		} catch (Exception e) {
@@ -79,37 +73,25 @@ public class ClusterController {
 		logger.debug("renameCluster");
 
 		try {
-			// FIXME The whole codebase needs to be fetched because it needs to be written as a whole again
-			// FIXME The best solution would be each "dendrogram directory could also have a dendrogram.json"
-			// FIXME Each dendrogram directory would have a folder for controllers and another for clusters
-			// FIXME Each controller and cluster would have its own json file
-
 			Codebase codebase = codebaseManager.getCodebase(codebaseName);
-			Dendrogram dendrogram = codebase.getDendrogram(dendrogramName);
-			Decomposition decomposition = dendrogram.getDecomposition(decompositionName);
+			Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
+			Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
 
 			decomposition.renameCluster(
 				clusterName,
 				newName
 			);
 
-			// it should not be necessary to do this due to just a renaming
-			// but for safety i'll keep the existent behaviour
-			decomposition.setControllers(codebaseManager.getControllersWithCostlyAccesses(
+			// the metrics do not change, but the local transactions of the controllers
+			// that touch the cluster refer to it by name, so they are recalculated
+			decomposition.updateMetrics(
 				codebase,
 				dendrogram.getProfile(),
-				decomposition.getEntityIDToClusterName()
-			));
-
-			// it should not be necessary to recalculate metrics due to just a renaming
-			// but for safety i'll keep the existent behaviour
-			decomposition.calculateMetrics(
-				codebase,
 				dendrogram.getTracesMaxLimit(),
-				dendrogram.getTraceType(),
-					false);
+				dendrogram.getTraceType()
+			);
 
-			codebaseManager.writeCodebase(codebase);
+			codebaseManager.writeDecomposition(decomposition);
 			return new ResponseEntity<>(HttpStatus.OK);
 
 		} catch (KeyAlreadyExistsException e) {
@@ -134,14 +116,9 @@ public class ClusterController {
 		logger.debug("splitCluster");
 
 		try {
-			// FIXME The whole codebase needs to be fetched because it needs to be written as a whole again
-			// FIXME The best solution would be each "dendrogram directory could also have a dendrogram.json"
-			// FIXME Each dendrogram directory would have a folder for controllers and another for clusters
-			// FIXME Each controller and cluster would have its own json file
-
 			Codebase codebase = codebaseManager.getCodebase(codebaseName);
-			Dendrogram dendrogram = codebase.getDendrogram(dendrogramName);
-			Decomposition decomposition = dendrogram.getDecomposition(decompositionName);
+			Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
+			Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
 
 			decomposition.splitCluster(
 				clusterName,
@@ -149,19 +126,14 @@ public class ClusterController {
 				entities.split(",")
 			);
 
-			decomposition.setControllers(codebaseManager.getControllersWithCostlyAccesses(
+			decomposition.updateMetrics(
 				codebase,
 				dendrogram.getProfile(),
-				decomposition.getEntityIDToClusterName()
-			));
-
-			decomposition.calculateMetrics(
-				codebase,
 				dendrogram.getTracesMaxLimit(),
-				dendrogram.getTraceType(),
-					false);
+				dendrogram.getTraceType()
+			);
 
-			codebaseManager.writeCodebase(codebase);
+			codebaseManager.writeDecomposition(decomposition);
 			return new ResponseEntity<>(HttpStatus.OK);
 
 		} catch (Exception e) {
@@ -182,14 +154,9 @@ public class ClusterController {
 		logger.debug("transferEntities");
 
 		try {
-			// FIXME The whole codebase needs to be fetched because it needs to be written as a whole again
-			// FIXME The best solution would be each "dendrogram directory could also have a dendrogram.json"
-			// FIXME Each dendrogram directory would have a folder for controllers and another for clusters
-			// FIXME Each controller and cluster would have its own json file
-
 			Codebase codebase = codebaseManager.getCodebase(codebaseName);
-			Dendrogram dendrogram = codebase.getDendrogram(dendrogramName);
-			Decomposition decomposition = dendrogram.getDecomposition(decompositionName);
+			Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
+			Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
 
 			decomposition.transferEntities(
 				clusterName,
@@ -197,20 +164,50 @@ public class ClusterController {
 				entities.split(",")
 			);
 
-			decomposition.setControllers(codebaseManager.getControllersWithCostlyAccesses(
+			decomposition.updateMetrics(
 				codebase,
 				dendrogram.getProfile(),
-				decomposition.getEntityIDToClusterName()
-			));
+				dendrogram.getTracesMaxLimit(),
+				dendrogram.getTraceType()
+			);
+
+			codebaseManager.writeDecomposition(decomposition);
+			return new ResponseEntity<>(HttpStatus.OK);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	// the metrics of the decomposition if each entity was moved, nothing is changed
+	@RequestMapping(value = "/evaluateMoves", method = RequestMethod.POST)
+	public ResponseEntity<List<MoveEvaluationDto>> evaluateMoves(
+		@PathVariable String codebaseName,
+		@PathVariable String dendrogramName,
+		@PathVariable String decompositionName,
+		@RequestBody List<MoveDto> moves
+	) {
+		logger.debug("evaluateMoves");
 
-			decomposition.calculateMetrics(
+		try {
+			Codebase codebase = codebaseManager.getCodebase(codebaseName);
+			Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
+			// this request's own copy, so the workers never see a cluster edit of another request
+			Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
+
+			MoveEvaluator moveEvaluator = new MoveEvaluator(
+				decomposition,
 				codebase,
+				dendrogram.getProfile(),
 				dendrogram.getTracesMaxLimit(),
-				dendrogram.getTraceType(),
-					false);
+				dendrogram.getTraceType()
+			);
 
-			codebaseManager.writeCodebase(codebase);
-			return new ResponseEntity<>(HttpStatus.OK);
+			return new ResponseEntity<>(
+				moveEvaluator.evaluate(moves, MOVE_EVALUATION_THREADS),
+				HttpStatus.OK
+			);
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -8,6 +8,7 @@ import org.springframework.web.bind.annotation.*;
 import pt.ist.socialsoftware.mono2micro.domain.Codebase;
 import pt.ist.socialsoftware.mono2micro.domain.Decomposition;
 import pt.ist.socialsoftware.mono2micro.manager.CodebaseManager;
+import pt.ist.socialsoftware.mono2micro.manager.DocumentCache;
 
 import javax.management.openmbean.KeyAlreadyExistsException;
 import java.io.FileNotFoundException;
@@ -42,6 +43,16 @@ public class CodebaseController {
 		}
 	}
 
+	@RequestMapping(value = "/documentCache/statistics", method = RequestMethod.GET)
+	public ResponseEntity<DocumentCache.Statistics> getDocumentCacheStatistics() {
+		logger.debug("getDocumentCacheStatistics");
+
+		return new ResponseEntity<>(
+			codebaseManager.getDocumentCacheStatistics(),
+			HttpStatus.OK
+		);
+	}
+
 	@RequestMapping(value = "/codebase/{codebaseName}", method = RequestMethod.GET)
 	public ResponseEntity<Codebase> getCodebase(
 		@PathVariable String codebaseName,
@@ -86,12 +86,9 @@ public class DecompositionController {
 		logger.debug("deleteDecomposition");
 
 		try {
-			// FIXME The whole codebase needs to be fetched because it needs to be written as a whole again
-			// FIXME The best solution would be each "dendrogram directory could also have a dendrogram.json"
-			// FIXME And each dendrogram directory could have its own decompositions etc...
-			Codebase codebase = codebaseManager.getCodebase(codebaseName);
-			codebase.getDendrogram(dendrogramName).deleteDecomposition(decompositionName);
-			codebaseManager.writeCodebase(codebase);
+			Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
+			dendrogram.deleteDecomposition(decompositionName);
+			codebaseManager.writeDendrogram(dendrogram);
 
 			return new ResponseEntity<>(HttpStatus.OK);
 
@@ -11,6 +11,8 @@ import pt.ist.socialsoftware.mono2micro.domain.Codebase;
 import pt.ist.socialsoftware.mono2micro.domain.Dendrogram;
 import pt.ist.socialsoftware.mono2micro.domain.Decomposition;
 import pt.ist.socialsoftware.mono2micro.manager.CodebaseManager;
+import pt.ist.socialsoftware.mono2micro.manager.Job;
+import pt.ist.socialsoftware.mono2micro.manager.JobManager;
 
 import javax.management.openmbean.KeyAlreadyExistsException;
 import java.io.IOException;
@@ -26,6 +28,8 @@ public class DendrogramController {
 
 	private final CodebaseManager codebaseManager = CodebaseManager.getInstance();
 
+	private final JobManager jobManager = JobManager.getInstance();
+
 	@RequestMapping(value = "/dendrograms", method = RequestMethod.GET)
 	public ResponseEntity<List<Dendrogram>> getDendrograms(
 		@PathVariable String codebaseName,
@@ -57,8 +61,6 @@ public class DendrogramController {
 		logger.debug("getDendrogram");
 
 		try {
-			// FIXME Instead of parsing the whole list of dendrograms, it would be much better to just parse the right one
-			// FIXME or the respective dendrogram directory could also have a dendrogram.json
 			return new ResponseEntity<>(
 				codebaseManager.getCodebaseDendrogramWithFields(
 					codebaseName,
@@ -113,123 +115,144 @@ public class DendrogramController {
 	}
 
 
+	// with async, returns ACCEPTED and the ID of the job at once, otherwise waits for the job to finish
 	@RequestMapping(value = "/dendrogram/create", method = RequestMethod.POST)
-	public ResponseEntity<HttpStatus> createDendrogram(
+	public ResponseEntity<String> createDendrogram(
 		@PathVariable String codebaseName,
-		@RequestBody Dendrogram dendrogram
+		@RequestBody Dendrogram dendrogram,
+		@RequestParam(defaultValue = "false") boolean async
 	) {
 		logger.debug("createDendrogram");
 
 		try {
-			// FIXME The whole codebase needs to be fetched because it needs to be written as a whole again
-			// FIXME The best solution would be each "dendrogram directory could also have a dendrogram.json"
-			Codebase codebase = codebaseManager.getCodebase(codebaseName);
-			codebase.createDendrogram(dendrogram);
+			Job job = jobManager.submit(codebaseName, "createDendrogram", j -> {
+				Codebase codebase = codebaseManager.getCodebase(codebaseName);
+				codebase.createDendrogram(dendrogram);
+
+				j.checkCancelled();
+
+				codebaseManager.writeDendrogram(dendrogram);
+				codebaseManager.writeCodebase(codebase);
+				return null;
+			});
 
-            codebaseManager.writeCodebase(codebase);
-            return new ResponseEntity<>(HttpStatus.CREATED);
+			if (async)
+				return new ResponseEntity<>(job.getId(), HttpStatus.ACCEPTED);
+
+			job.waitFor();
+			return new ResponseEntity<>(HttpStatus.CREATED);
 
 		} catch (KeyAlreadyExistsException e) {
 			e.printStackTrace();
-            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+			return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
 
 		} catch (Exception e) {
 			e.printStackTrace();
-            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-        }
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
 	}
 
 
 	@RequestMapping(value = "/dendrogram/{dendrogramName}/cut", method = RequestMethod.POST)
-	public ResponseEntity<HttpStatus> cutDendrogram(
+	public ResponseEntity<String> cutDendrogram(
 		@PathVariable String codebaseName,
 		@PathVariable String dendrogramName,
-		@RequestBody Decomposition decomposition
+		@RequestBody Decomposition decomposition,
+		@RequestParam(defaultValue = "false") boolean async
 	) {
 		logger.debug("cutDendrogram");
 
 		try {
-			// FIXME The whole codebase needs to be fetched because it needs to be written as a whole again
-			// FIXME The best solution would be each "dendrogram directory could also have a dendrogram.json"
-			Codebase codebase = codebaseManager.getCodebase(codebaseName);
+			Job job = jobManager.submit(codebaseName, "cutDendrogram", j -> {
+				Codebase codebase = codebaseManager.getCodebase(codebaseName);
 
-			Dendrogram dendrogram = codebase.getDendrogram(dendrogramName);
+				Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
 
-			// FIXME the graph given to the cut function shouldn't be a Decomposition
-			// FIXME The result of the cut function SHOULD be a decomposition
-			// FIXME Did not have the patience to code it well
-			Decomposition cutDecomposition = dendrogram.cut(decomposition);
+				// FIXME the graph given to the cut function shouldn't be a Decomposition
+				// FIXME The result of the cut function SHOULD be a decomposition
+				// FIXME Did not have the patience to code it well
+				Decomposition cutDecomposition = dendrogram.cut(decomposition);
 
-			decomposition.setControllers(codebaseManager.getControllersWithCostlyAccesses(
-				codebase,
-				dendrogram.getProfile(),
-				decomposition.getEntityIDToClusterName()
-			));
+				cutDecomposition.calculateMetrics(
+					codebase,
+					dendrogram.getProfile(),
+					dendrogram.getTracesMaxLimit(),
+					dendrogram.getTraceType(),
+						false);
 
-			cutDecomposition.calculateMetrics(
-				codebase,
-				dendrogram.getTracesMaxLimit(),
-				dendrogram.getTraceType(),
-					false);
+				j.checkCancelled();
 
+				dendrogram.addDecompositionName(cutDecomposition.getName());
 
-			dendrogram.addDecomposition(cutDecomposition);
+				codebaseManager.writeDecomposition(cutDecomposition);
+				codebaseManager.writeDendrogram(dendrogram);
+				return cutDecomposition.getName();
+			});
 
-            codebaseManager.writeCodebase(codebase);
-            return new ResponseEntity<>(HttpStatus.OK);
+			if (async)
+				return new ResponseEntity<>(job.getId(), HttpStatus.ACCEPTED);
 
-        } catch (Exception e) {
+			job.waitFor();
+			return new ResponseEntity<>(HttpStatus.OK);
+
+		} catch (Exception e) {
 			e.printStackTrace();
-            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-        }
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
 	}
 
 	@RequestMapping(value = "/dendrogram/{dendrogramName}/expertCut", method = RequestMethod.POST)
-	public ResponseEntity<HttpStatus> createExpertCut(
+	public ResponseEntity<String> createExpertCut(
 		@PathVariable String codebaseName,
 		@PathVariable String dendrogramName,
 		@RequestParam String expertName,
-		@RequestParam Optional<MultipartFile> expertFile
+		@RequestParam Optional<MultipartFile> expertFile,
+		@RequestParam(defaultValue = "false") boolean async
 	) {
 		logger.debug("createExpertCut");
 
 		try {
-			// FIXME The whole codebase needs to be fetched because it needs to be written as a whole again
-			// FIXME The best solution would be each "dendrogram directory could also have a dendrogram.json"
+			// the uploaded file is deleted when the request ends
+			byte[] expertFileContent = expertFile.isPresent() ? expertFile.get().getBytes() : null;
 
-			Codebase codebase = codebaseManager.getCodebase(codebaseName);
-			Dendrogram dendrogram = codebase.getDendrogram(dendrogramName);
+			Job job = jobManager.submit(codebaseName, "createExpertCut", j -> {
+				Codebase codebase = codebaseManager.getCodebase(codebaseName);
+				Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
 
-			Decomposition decomposition = dendrogram.createExpertCut(
-            	expertName,
-				expertFile
-			);
+				Decomposition decomposition = dendrogram.createExpertCut(
+					expertName,
+					Optional.ofNullable(expertFileContent)
+				);
 
-			decomposition.setControllers(codebaseManager.getControllersWithCostlyAccesses(
-				codebase,
-				dendrogram.getProfile(),
-				decomposition.getEntityIDToClusterName()
-			));
+				decomposition.calculateMetrics(
+					codebase,
+					dendrogram.getProfile(),
+					dendrogram.getTracesMaxLimit(),
+					dendrogram.getTraceType(),
+						false);
 
-			decomposition.calculateMetrics(
-				codebase,
-				dendrogram.getTracesMaxLimit(),
-				dendrogram.getTraceType(),
-					false);
+				j.checkCancelled();
 
-			dendrogram.addDecomposition(decomposition);
+				dendrogram.addDecompositionName(decomposition.getName());
 
-            codebaseManager.writeCodebase(codebase);
+				codebaseManager.writeDecomposition(decomposition);
+				codebaseManager.writeDendrogram(dendrogram);
+				return decomposition.getName();
+			});
 
-            return new ResponseEntity<>(HttpStatus.OK);
+			if (async)
+				return new ResponseEntity<>(job.getId(), HttpStatus.ACCEPTED);
+
+			job.waitFor();
+			return new ResponseEntity<>(HttpStatus.OK);
 
-        } catch (KeyAlreadyExistsException e) {
+		} catch (KeyAlreadyExistsException e) {
 			e.printStackTrace();
-            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+			return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
 
-        } catch (Exception e) {
+		} catch (Exception e) {
 			e.printStackTrace();
-            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-        }
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -38,8 +38,8 @@ public class FunctionalityRedesignController {
 
         try {
             Codebase codebase = codebaseManager.getCodebase(codebaseName);
-            Dendrogram dendrogram = codebase.getDendrogram(dendrogramName);
-            Decomposition decomposition = dendrogram.getDecomposition(decompositionName);
+            Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
+            Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
             Controller controller = decomposition.getController(controllerName);
             if(controller.getFunctionalityRedesigns()
                     .stream()
@@ -55,7 +55,7 @@ public class FunctionalityRedesignController {
                         )
                 );
             };
-            codebaseManager.writeCodebase(codebase);
+            codebaseManager.writeDecomposition(decomposition);
             return new ResponseEntity<>(controller, HttpStatus.OK);
 
         } catch (IOException e) {
@@ -81,13 +81,12 @@ public class FunctionalityRedesignController {
             ArrayList<Integer> accesses = (ArrayList<Integer>) data.get("entities");
 
 
-            Codebase codebase = codebaseManager.getCodebase(codebaseName);
-            Decomposition decomposition = codebase.getDendrogram(dendrogramName).getDecomposition(decompositionName);
+            Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
             Controller controller = decomposition.getController(controllerName);
 
             controller.getFunctionalityRedesign(redesignName).addCompensating(clusterName, accesses, fromID);
             Metrics.calculateRedesignComplexities(controller, redesignName, decomposition);
-            codebaseManager.writeCodebase(codebase);
+            codebaseManager.writeDecomposition(decomposition);
 
             return new ResponseEntity<>(controller, HttpStatus.OK);
 
@@ -109,13 +108,12 @@ public class FunctionalityRedesignController {
             String localTransactionID = data.get("localTransactionID");
             String newCaller = data.get("newCaller");
 
-            Codebase codebase = codebaseManager.getCodebase(codebaseName);
-            Decomposition decomposition = codebase.getDendrogram(dendrogramName).getDecomposition(decompositionName);
-            Controller controller = codebase.getDendrogram(dendrogramName).getDecomposition(decompositionName).getController(controllerName);
+            Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
+            Controller controller = decomposition.getController(controllerName);
             controller.getFunctionalityRedesign(redesignName).sequenceChange(localTransactionID, newCaller);
 
             Metrics.calculateRedesignComplexities(controller, redesignName, decomposition);
-            codebaseManager.writeCodebase(codebase);
+            codebaseManager.writeDecomposition(decomposition);
             return new ResponseEntity<>(controller, HttpStatus.OK);
 
         } catch (Exception e) {
@@ -140,14 +138,13 @@ public class FunctionalityRedesignController {
             String toCluster = data.get("toCluster");
             String localTransactions = data.get("localTransactions");
 
-            Codebase codebase = codebaseManager.getCodebase(codebaseName);
-            Decomposition decomposition = codebase.getDendrogram(dendrogramName).getDecomposition(decompositionName);
+            Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
             Controller controller = decomposition.getController(controllerName);
 
             controller.getFunctionalityRedesign(redesignName).dcgi(fromCluster, toCluster, localTransactions);
 
             Metrics.calculateRedesignComplexities(controller, redesignName, decomposition);
-            codebaseManager.writeCodebase(codebase);
+            codebaseManager.writeDecomposition(decomposition);
 
             return new ResponseEntity<>(controller, HttpStatus.OK);
 
@@ -172,8 +169,8 @@ public class FunctionalityRedesignController {
         logger.debug("pivotTransaction");
         try {
             Codebase codebase = codebaseManager.getCodebase(codebaseName);
-            Dendrogram dendrogram = codebase.getDendrogram(dendrogramName);
-            Decomposition decomposition = dendrogram.getDecomposition(decompositionName);
+            Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
+            Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
             Controller controller = decomposition.getController(controllerName);
 
             if(newRedesignName.isPresent())
@@ -202,7 +199,7 @@ public class FunctionalityRedesignController {
             }
 
             Metrics.calculateRedesignComplexities(controller, Constants.DEFAULT_REDESIGN_NAME, decomposition);
-            codebaseManager.writeCodebase(codebase);
+            codebaseManager.writeDecomposition(decomposition);
 
             return new ResponseEntity<>(controller, HttpStatus.OK);
         } catch (IOException | JSONException e) {
@@ -224,11 +221,10 @@ public class FunctionalityRedesignController {
     ){
         logger.debug("changeLTName");
         try {
-            Codebase codebase = codebaseManager.getCodebase(codebaseName);
-            Decomposition decomposition = codebase.getDendrogram(dendrogramName).getDecomposition(decompositionName);
+            Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
             Controller controller = decomposition.getController(controllerName);
             controller.getFunctionalityRedesign(redesignName).changeLTName(transactionID, newName);
-            codebaseManager.writeCodebase(codebase);
+            codebaseManager.writeDecomposition(decomposition);
 
             return new ResponseEntity<>(controller, HttpStatus.OK);
         } catch (IOException e) {
@@ -247,11 +243,10 @@ public class FunctionalityRedesignController {
     ) {
         logger.debug("deleteRedesign");
         try {
-            Codebase codebase = codebaseManager.getCodebase(codebaseName);
-            Decomposition decomposition = codebase.getDendrogram(dendrogramName).getDecomposition(decompositionName);
+            Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
             Controller controller = decomposition.getController(controllerName);
             controller.deleteRedesign(redesignName);
-            codebaseManager.writeCodebase(codebase);
+            codebaseManager.writeDecomposition(decomposition);
 
             return new ResponseEntity<>(controller, HttpStatus.OK);
         } catch (IOException e) {
@@ -270,11 +265,10 @@ public class FunctionalityRedesignController {
     ) {
         logger.debug("useForMetrics");
         try {
-            Codebase codebase = codebaseManager.getCodebase(codebaseName);
-            Decomposition decomposition = codebase.getDendrogram(dendrogramName).getDecomposition(decompositionName);
+            Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
             Controller controller = decomposition.getController(controllerName);
             controller.changeFRUsedForMetrics(redesignName);
-            codebaseManager.writeCodebase(codebase);
+            codebaseManager.writeDecomposition(decomposition);
 
             return new ResponseEntity<>(controller, HttpStatus.OK);
         } catch (IOException e) {
@@ -0,0 +1,108 @@
+package pt.ist.socialsoftware.mono2micro.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pt.ist.socialsoftware.mono2micro.dto.JobDto;
+import pt.ist.socialsoftware.mono2micro.manager.Job;
+import pt.ist.socialsoftware.mono2micro.manager.JobManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping(value = "/mono2micro")
+public class JobController {
+
+	private static final Logger logger = LoggerFactory.getLogger(JobController.class);
+
+	private final JobManager jobManager = JobManager.getInstance();
+
+	@RequestMapping(value = "/jobs", method = RequestMethod.GET)
+	public ResponseEntity<List<JobDto>> getJobs(
+		@RequestParam(required = false) String codebaseName
+	) {
+		logger.debug("getJobs");
+
+		List<JobDto> jobs = new ArrayList<>();
+
+		for (Job job : jobManager.getJobs(codebaseName))
+			jobs.add(job.getDto());
+
+		return new ResponseEntity<>(jobs, HttpStatus.OK);
+	}
+
+	@RequestMapping(value = "/job/{jobID}", method = RequestMethod.GET)
+	public ResponseEntity<JobDto> getJob(
+		@PathVariable String jobID
+	) {
+		logger.debug("getJob");
+
+		Job job = jobManager.getJob(jobID);
+
+		if (job == null)
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+
+		return new ResponseEntity<>(job.getDto(), HttpStatus.OK);
+	}
+
+	// ACCEPTED while the job has not finished, BAD_REQUEST if it failed or was cancelled
+	@RequestMapping(value = "/job/{jobID}/result", method = RequestMethod.GET)
+	public ResponseEntity<Object> getJobResult(
+		@PathVariable String jobID
+	) {
+		logger.debug("getJobResult");
+
+		Job job = jobManager.getJob(jobID);
+
+		if (job == null)
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+
+		switch (job.getStatus()) {
+			case DONE:
+				return new ResponseEntity<>(job.getResult(), HttpStatus.OK);
+			case FAILED:
+			case CANCELLED:
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			default:
+				return new ResponseEntity<>(HttpStatus.ACCEPTED);
+		}
+	}
+
+	@RequestMapping(value = "/job/{jobID}/cancel", method = RequestMethod.POST)
+	public ResponseEntity<HttpStatus> cancelJob(
+		@PathVariable String jobID
+	) {
+		logger.debug("cancelJob");
+
+		if (jobManager.getJob(jobID) == null)
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+
+		if (!jobManager.cancel(jobID))
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST); // already finished
+
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	// a "job" event with the JobDto on every change, until the job finishes
+	@RequestMapping(value = "/job/{jobID}/events", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public ResponseEntity<SseEmitter> getJobEvents(
+		@PathVariable String jobID
+	) {
+		logger.debug("getJobEvents");
+
+		Job job = jobManager.getJob(jobID);
+
+		if (job == null)
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+
+		SseEmitter emitter = new SseEmitter(0L); // no timeout, the emitter completes with the job
+		job.addEmitter(emitter);
+
+		return new ResponseEntity<>(emitter, HttpStatus.OK);
+	}
+}
@@ -0,0 +1,111 @@
+package pt.ist.socialsoftware.mono2micro.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import pt.ist.socialsoftware.mono2micro.domain.Codebase;
+import pt.ist.socialsoftware.mono2micro.domain.Decomposition;
+import pt.ist.socialsoftware.mono2micro.domain.DecompositionOptimiser;
+import pt.ist.socialsoftware.mono2micro.domain.Dendrogram;
+import pt.ist.socialsoftware.mono2micro.dto.OptimiserDto;
+import pt.ist.socialsoftware.mono2micro.dto.OptimiserProgressDto;
+import pt.ist.socialsoftware.mono2micro.manager.CodebaseManager;
+import pt.ist.socialsoftware.mono2micro.manager.Job;
+import pt.ist.socialsoftware.mono2micro.manager.JobManager;
+
+import javax.management.openmbean.KeyAlreadyExistsException;
+
+@RestController
+@RequestMapping(value = "/mono2micro/codebase/{codebaseName}/dendrogram/{dendrogramName}")
+public class OptimiserController {
+
+	private static final Logger logger = LoggerFactory.getLogger(OptimiserController.class);
+
+	private final CodebaseManager codebaseManager = CodebaseManager.getInstance();
+
+	private final JobManager jobManager = JobManager.getInstance();
+
+	// returns the ID of the job, which runs in the background once the previous jobs of the codebase finish
+	@RequestMapping(value = "/decomposition/{decompositionName}/optimise", method = RequestMethod.POST)
+	public ResponseEntity<String> optimiseDecomposition(
+		@PathVariable String codebaseName,
+		@PathVariable String dendrogramName,
+		@PathVariable String decompositionName,
+		@RequestBody OptimiserDto optimiser
+	) {
+		logger.debug("optimiseDecomposition");
+
+		try {
+			Codebase codebase = codebaseManager.getCodebase(codebaseName);
+			Dendrogram dendrogram = codebaseManager.getDendrogram(codebaseName, dendrogramName);
+			Decomposition decomposition = codebaseManager.getDecomposition(codebaseName, dendrogramName, decompositionName);
+
+			DecompositionOptimiser decompositionOptimiser = new DecompositionOptimiser(
+				codebase,
+				dendrogram,
+				decomposition,
+				optimiser
+			);
+
+			// stopping the optimiser saves the best decomposition, cancelling its job does not
+			Job job = jobManager.submit(codebaseName, "optimiser", decompositionOptimiser);
+
+			return new ResponseEntity<>(job.getId(), HttpStatus.OK);
+
+		} catch (KeyAlreadyExistsException e) {
+			e.printStackTrace();
+			return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	// the optimiser is only kept while its job is
+	private DecompositionOptimiser getOptimiser(String jobID) {
+		Job job = jobManager.getJob(jobID);
+
+		if (job == null || !(job.getTask() instanceof DecompositionOptimiser))
+			return null;
+
+		return (DecompositionOptimiser) job.getTask();
+	}
+
+	// best decomposition found so far, and the decomposition name once it is saved
+	@RequestMapping(value = "/optimiser/{jobID}", method = RequestMethod.GET)
+	public ResponseEntity<OptimiserProgressDto> getOptimiserProgress(
+		@PathVariable String codebaseName,
+		@PathVariable String dendrogramName,
+		@PathVariable String jobID
+	) {
+		logger.debug("getOptimiserProgress");
+
+		DecompositionOptimiser decompositionOptimiser = getOptimiser(jobID);
+
+		if (decompositionOptimiser == null)
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+
+		return new ResponseEntity<>(decompositionOptimiser.getProgress(), HttpStatus.OK);
+	}
+
+	@RequestMapping(value = "/optimiser/{jobID}/stop", method = RequestMethod.POST)
+	public ResponseEntity<HttpStatus> stopOptimiser(
+		@PathVariable String codebaseName,
+		@PathVariable String dendrogramName,
+		@PathVariable String jobID
+	) {
+		logger.debug("stopOptimiser");
+
+		DecompositionOptimiser decompositionOptimiser = getOptimiser(jobID);
+
+		if (decompositionOptimiser == null)
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+
+		decompositionOptimiser.stop();
+
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+}
@@ -100,7 +100,7 @@ public class Cluster {
 		if (this.couplingDependencies.containsKey(toCluster)) {
 			this.couplingDependencies.get(toCluster).addAll(entityIDs);
 		} else {
-			this.couplingDependencies.put(toCluster, entityIDs);
+			this.couplingDependencies.put(toCluster, new HashSet<>(entityIDs)); // the given set belongs to a local transaction
 		}
 	}
 }
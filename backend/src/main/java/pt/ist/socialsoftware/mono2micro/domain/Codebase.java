@@ -1,10 +1,12 @@
 package pt.ist.socialsoftware.mono2micro.domain;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import org.apache.commons.io.FileUtils;
 import pt.ist.socialsoftware.mono2micro.manager.CodebaseManager;
+import pt.ist.socialsoftware.mono2micro.utils.HierarchicalClustering;
+import pt.ist.socialsoftware.mono2micro.utils.Linkage;
+import pt.ist.socialsoftware.mono2micro.utils.SimilarityMatrix;
 import pt.ist.socialsoftware.mono2micro.utils.Utils;
 import pt.ist.socialsoftware.mono2micro.utils.deserializers.CodebaseDeserializer;
 
@@ -20,7 +22,7 @@ import static pt.ist.socialsoftware.mono2micro.utils.Constants.*;
 public class Codebase {
 	private String name;
 	private Map<String, Set<String>> profiles = new HashMap<>(); // e.g <Generic, ControllerNamesList> change to Set
-	private List<Dendrogram> dendrograms = new ArrayList<>();
+	private List<String> dendrogramNames = new ArrayList<>(); // each dendrogram is kept in its own dendrogram.json
 	private String datafilePath;
 
 	public Codebase() {}
@@ -85,64 +87,23 @@ public class Codebase {
 	}
 
 
-	public List<Dendrogram> getDendrograms() {
-		return dendrograms;
-	}
-
-	public void setDendrograms(List<Dendrogram> dendrograms) {
-		this.dendrograms = dendrograms;
+	public List<String> getDendrogramNames() {
+		return dendrogramNames;
 	}
 
-	public Dendrogram getDendrogram(String dendrogramName) {
-		for (Dendrogram dendrogram : this.dendrograms)
-			if (dendrogram.getName().equals(dendrogramName))
-				return dendrogram;
-
-		return null;
+	public void setDendrogramNames(List<String> dendrogramNames) {
+		this.dendrogramNames = dendrogramNames;
 	}
 
 	public void deleteDendrogram(String dendrogramName) throws IOException {
-		for (int i = 0; i < dendrograms.size(); i++) {
-			if (dendrograms.get(i).getName().equals(dendrogramName)) {
-				dendrograms.remove(i);
-				break;
-			}
-		}
+		this.dendrogramNames.remove(dendrogramName);
 
+		CodebaseManager.getInstance().evictDocuments(CODEBASES_PATH + this.name + "/" + dendrogramName + "/");
 		FileUtils.deleteDirectory(new File(CODEBASES_PATH + this.name + "/" + dendrogramName));
 	}
 
-	@JsonIgnore
-	public List<String> getDendrogramNames() {
-		List<String> dendrogramNames = new ArrayList<>();
-
-		for (Dendrogram dendrogram : this.dendrograms)
-			dendrogramNames.add(dendrogram.getName());
-
-		return dendrogramNames;
-	}
-
-	public void addDendrogram(Dendrogram dendrogram) {
-		this.dendrograms.add(dendrogram);
-	}
-
-	public void executeCreateDendrogramPythonScript(
-		Dendrogram dendrogram
-	)
-		throws InterruptedException, IOException
-	{
-		//run python script to generate dendrogram image
-		Runtime r = Runtime.getRuntime();
-		String pythonScriptPath = RESOURCES_PATH + "createDendrogram.py";
-		String[] cmd = new String[5];
-		cmd[0] = PYTHON;
-		cmd[1] = pythonScriptPath;
-		cmd[2] = CODEBASES_PATH;
-		cmd[3] = this.name;
-		cmd[4] = dendrogram.getName();
-
-		Process p = r.exec(cmd);
-		p.waitFor();
+	public void addDendrogramName(String dendrogramName) {
+		this.dendrogramNames.add(dendrogramName);
 	}
 
 	public void createDendrogram(
@@ -150,15 +111,17 @@ public class Codebase {
 	)
 		throws Exception
 	{
-		if (getDendrogram(dendrogram.getName()) != null)
+		if (this.dendrogramNames.contains(dendrogram.getName()))
 			throw new KeyAlreadyExistsException();
 
+		dendrogram.setCodebaseName(this.name);
+
 		File dendrogramPath = new File(CODEBASES_PATH + this.name + "/" + dendrogram.getName());
 		if (!dendrogramPath.exists()) {
 			dendrogramPath.mkdir();
 		}
 
-		this.addDendrogram(dendrogram);
+		this.addDendrogramName(dendrogram.getName());
 
 		Utils.GetDataToBuildSimilarityMatrixResult result = Utils.getDataToBuildSimilarityMatrix(
 			this,
@@ -167,17 +130,31 @@ public class Codebase {
 			dendrogram.getTraceType()
 		);
 
+		SimilarityMatrix similarityMatrix = dendrogram.getMatrixData(
+			result.entities,
+			result.e1e2PairCount,
+			result.entityControllers
+		);
+
 		CodebaseManager.getInstance().writeDendrogramSimilarityMatrix(
 			this.name,
 			dendrogram.getName(),
-			dendrogram.getMatrixData(
-				result.entities,
-				result.e1e2PairCount,
-				result.entityControllers
-			)
+			similarityMatrix
+		);
+
+		Linkage linkage = HierarchicalClustering.createDendrogramLinkage(similarityMatrix);
+
+		CodebaseManager.getInstance().writeDendrogramLinkage(
+			this.name,
+			dendrogram.getName(),
+			linkage
 		);
 
-		executeCreateDendrogramPythonScript(dendrogram);
+		CodebaseManager.getInstance().writeDendrogramImage(
+			this.name,
+			dendrogram.getName(),
+			linkage
+		);
 	}
 
 
@@ -7,6 +7,7 @@ import org.jgrapht.graph.DirectedAcyclicGraph;
 import pt.ist.socialsoftware.mono2micro.dto.*;
 import pt.ist.socialsoftware.mono2micro.utils.Constants;
 import pt.ist.socialsoftware.mono2micro.utils.ControllerTracesIterator;
+import pt.ist.socialsoftware.mono2micro.utils.EntityControllersIndex;
 import pt.ist.socialsoftware.mono2micro.utils.Metrics;
 import pt.ist.socialsoftware.mono2micro.utils.Utils;
 import pt.ist.socialsoftware.mono2micro.utils.deserializers.DecompositionDeserializer;
@@ -17,6 +18,7 @@ import java.math.RoundingMode;
 import java.util.*;
 
 import static org.jgrapht.Graphs.successorListOf;
+import static pt.ist.socialsoftware.mono2micro.utils.Constants.INCREMENTAL_METRICS;
 
 @JsonInclude(JsonInclude.Include.USE_DEFAULTS)
 @JsonDeserialize(using = DecompositionDeserializer.class)
@@ -38,6 +40,8 @@ public class Decomposition {
 
 	private Map<Short, String> entityIDToClusterName = new HashMap<>();
 
+	private MetricsState metricsState; // not persisted, only lives while the decomposition is cached
+
 	public Decomposition() { }
 
 	public String getCodebaseName() { return this.codebaseName; }
@@ -126,6 +130,16 @@ public class Decomposition {
 		entityIDToClusterName.put(entityID, clusterName);
 	}
 
+	// cluster names are their IDs, so they are parsed once per calculation instead of once per access
+	Map<Short, Short> getEntityIDToClusterID() {
+		Map<Short, Short> entityIDToClusterID = new HashMap<>();
+
+		for (Map.Entry<Short, String> entry : entityIDToClusterName.entrySet())
+			entityIDToClusterID.put(entry.getKey(), Short.parseShort(entry.getValue()));
+
+		return entityIDToClusterID;
+	}
+
 	public Map<String, Cluster> getClusters() { return this.clusters; }
 
 	public void setClusters(Map<String, Cluster> clusters) { this.clusters = clusters; }
@@ -281,6 +295,7 @@ public class Decomposition {
 	{
 		TraceDto t;
 		DirectedAcyclicGraph<LocalTransaction, DefaultEdge> localTransactionsGraph = new DirectedAcyclicGraph<>(DefaultEdge.class);
+		Map<Short, Short> entityIDToClusterID = getEntityIDToClusterID();
 
 		localTransactionsGraph.addVertex( // root
 			new LocalTransaction(
@@ -308,7 +323,7 @@ public class Decomposition {
 							localTransactionsCounter,
 							null,
 							traceElements,
-							entityIDToClusterName,
+							entityIDToClusterID,
 							new HashMap<>(),
 							0,
 							traceElements.size()
@@ -338,7 +353,7 @@ public class Decomposition {
 							localTransactionsCounter,
 							null,
 							traceElements,
-							entityIDToClusterName,
+							entityIDToClusterID,
 							new HashMap<>(),
 							0,
 							traceElements.size()
@@ -407,7 +422,7 @@ public class Decomposition {
 							localTransactionsCounter,
 							null,
 							traceElements,
-							entityIDToClusterName,
+							entityIDToClusterID,
 							new HashMap<>(),
 							0,
 							traceElements.size()
@@ -436,16 +451,49 @@ public class Decomposition {
 	// FIXME then separate this method into 2 similar ones: one for the dendrogram and the other for the analyser
 	// FIXME and only then add the new calculation to the (new) respective method
 	// FIXME By doing the above, extra performance overhead won't be added to the analyser
+	/**
+	 * Finds the controllers of the profile with their costly accesses and calculates every metric of the
+	 * decomposition with a single pass over the traces of the datafile.
+	 */
 	public void calculateMetrics(
-		Codebase codebase, // requirements: datafilePath
+		Codebase codebase, // requirements: datafilePath, profiles
+		String profile,
 		int tracesMaxLimit,
 		Constants.TraceType traceType,
 		boolean isAnalyser
 	)
 		throws Exception
+	{
+		// the analyser calculates the metrics of each cut once, so there is nothing to keep
+		calculateMetrics(
+			codebase,
+			profile,
+			tracesMaxLimit,
+			traceType,
+			isAnalyser,
+			!isAnalyser && INCREMENTAL_METRICS
+		);
+	}
+
+	private void calculateMetrics(
+		Codebase codebase,
+		String profile,
+		int tracesMaxLimit,
+		Constants.TraceType traceType,
+		boolean isAnalyser,
+		boolean keepMetricsState
+	)
+		throws Exception
 	{
 		System.out.println("Calculating metrics...");
 
+		Map<String, GetLocalTransactionsGraphAndControllerPerformanceResult> controllersGraphs = calculateControllers(
+			codebase,
+			profile,
+			tracesMaxLimit,
+			traceType
+		);
+
 		Collection<Cluster> clusters = this.getClusters().values();
 
 		Utils.GetControllersClustersAndClustersControllersResult result1 =
@@ -457,22 +505,20 @@ public class Decomposition {
 		Map<String, Set<Cluster>> controllersClusters = result1.controllersClusters;
 		Map<String, Set<Controller>> clustersControllers = result1.clustersControllers;
 
+		resetCouplingDependencies();
+
 		// COMPLEXITY AND PERFORMANCE CALCULATION
 		CalculateComplexityAndPerformanceResult result2;
 
 		if(isAnalyser) {
 			result2 = calculateComplexityAndPerformance(
-					codebase,
 					controllersClusters,
-					traceType,
-					tracesMaxLimit
+					controllersGraphs
 			);
 		} else {
 			result2 = calculateComplexityAndPerformanceAndRedesignMetrics(
-					codebase,
 					controllersClusters,
-					traceType,
-					tracesMaxLimit
+					controllersGraphs
 			);
 		}
 
@@ -487,6 +533,595 @@ public class Decomposition {
 
 		this.setCohesion(result3.cohesion);
 		this.setCoupling(result3.coupling);
+
+		if (keepMetricsState)
+			metricsState = new MetricsState(
+				codebase,
+				profile,
+				tracesMaxLimit,
+				traceType,
+				controllersGraphs,
+				this.getControllers().values(),
+				entityIDToClusterName
+			);
+		else
+			metricsState = null;
+	}
+
+	/**
+	 * Local transactions graphs and cluster assignment of the last calculation, from which the metrics are
+	 * updated after the clusters are edited.
+	 *
+	 * The entities accessed by a controller do not depend on the clusters, only the modes of its costly
+	 * accesses do, so the controllers that access each entity are found once.
+	 */
+	static class MetricsState {
+		private final String datafilePath;
+		private final String profile;
+		private final Set<String> profileControllers;
+		private final int tracesMaxLimit;
+		private final Constants.TraceType traceType;
+		private final Map<String, GetLocalTransactionsGraphAndControllerPerformanceResult> controllersGraphs;
+		private final Map<Short, Set<String>> entityControllers = new HashMap<>(); // entityID -> controllers
+		private Map<Short, String> entityIDToClusterName;
+
+		MetricsState(
+			Codebase codebase,
+			String profile,
+			int tracesMaxLimit,
+			Constants.TraceType traceType,
+			Map<String, GetLocalTransactionsGraphAndControllerPerformanceResult> controllersGraphs,
+			Collection<Controller> controllers,
+			Map<Short, String> entityIDToClusterName
+		) {
+			this.datafilePath = codebase.getDatafilePath();
+			this.profile = profile;
+			this.profileControllers = new HashSet<>(codebase.getProfile(profile));
+			this.tracesMaxLimit = tracesMaxLimit;
+			this.traceType = traceType;
+			this.controllersGraphs = controllersGraphs;
+			this.entityIDToClusterName = new HashMap<>(entityIDToClusterName);
+
+			for (Controller controller : controllers)
+				for (short entityID : controller.getEntities().keySet())
+					entityControllers.computeIfAbsent(entityID, k -> new HashSet<>()).add(controller.getName());
+		}
+
+		// the graphs are shared, they are replaced and never changed by an update
+		MetricsState(MetricsState metricsState) {
+			this.datafilePath = metricsState.datafilePath;
+			this.profile = metricsState.profile;
+			this.profileControllers = metricsState.profileControllers;
+			this.tracesMaxLimit = metricsState.tracesMaxLimit;
+			this.traceType = metricsState.traceType;
+			this.controllersGraphs = new HashMap<>(metricsState.controllersGraphs);
+			this.entityControllers.putAll(metricsState.entityControllers);
+			this.entityIDToClusterName = new HashMap<>(metricsState.entityIDToClusterName);
+		}
+
+		boolean isFor(
+			Codebase codebase,
+			String profile,
+			int tracesMaxLimit,
+			Constants.TraceType traceType
+		) {
+			return datafilePath.equals(codebase.getDatafilePath()) &&
+				this.profile.equals(profile) &&
+				profileControllers.equals(codebase.getProfile(profile)) &&
+				this.tracesMaxLimit == tracesMaxLimit &&
+				this.traceType == traceType;
+		}
+
+		Set<Short> getChangedEntities(Map<Short, String> entityIDToClusterName) {
+			Set<Short> changedEntities = new HashSet<>();
+
+			for (Map.Entry<Short, String> entry : entityIDToClusterName.entrySet())
+				if (!entry.getValue().equals(this.entityIDToClusterName.get(entry.getKey())))
+					changedEntities.add(entry.getKey());
+
+			for (short entityID : this.entityIDToClusterName.keySet())
+				if (!entityIDToClusterName.containsKey(entityID))
+					changedEntities.add(entityID);
+
+			return changedEntities;
+		}
+
+		GetLocalTransactionsGraphAndControllerPerformanceResult getControllerGraph(String controllerName) {
+			return controllersGraphs.get(controllerName);
+		}
+
+		// rough number of bytes kept, mostly by the graphs, for the caches that hold decompositions
+		long getEstimatedSize() {
+			long size = 64L * (entityControllers.size() + entityIDToClusterName.size());
+
+			for (GetLocalTransactionsGraphAndControllerPerformanceResult result : controllersGraphs.values()) {
+				size += 64L * result.localTransactionsGraph.edgeSet().size();
+
+				for (LocalTransaction localTransaction : result.localTransactionsGraph.vertexSet())
+					size += 128L + 48L * localTransaction.getClusterAccesses().size();
+			}
+
+			return size;
+		}
+
+		Set<String> getControllersThatAccess(Collection<Short> entityIDs) {
+			Set<String> controllers = new HashSet<>();
+
+			for (short entityID : entityIDs)
+				controllers.addAll(entityControllers.getOrDefault(entityID, Collections.emptySet()));
+
+			return controllers;
+		}
+	}
+
+	// whether the metrics were calculated with these parameters and the clusters did not change since
+	boolean hasMetricsStateFor(
+		Codebase codebase,
+		String profile,
+		int tracesMaxLimit,
+		Constants.TraceType traceType
+	) {
+		return metricsState != null &&
+			metricsState.isFor(codebase, profile, tracesMaxLimit, traceType) &&
+			metricsState.getChangedEntities(entityIDToClusterName).isEmpty();
+	}
+
+	MetricsState getMetricsState() { return metricsState; }
+
+	public long getMetricsStateEstimatedSize() {
+		return metricsState == null ? 0 : metricsState.getEstimatedSize();
+	}
+
+	// for the copies of a decomposition, which can then be updated apart from it
+	public void copyMetricsStateFrom(Decomposition decomposition) {
+		metricsState = decomposition.metricsState == null ? null : new MetricsState(decomposition.metricsState);
+	}
+
+	/**
+	 * Copy of the clusters with every metric calculated and their state kept, whatever the configuration,
+	 * so that changes can be evaluated without touching this decomposition.
+	 */
+	Decomposition copyWithMetrics(
+		Codebase codebase,
+		String profile,
+		int tracesMaxLimit,
+		Constants.TraceType traceType
+	)
+		throws Exception
+	{
+		Decomposition copy = copyClusters();
+
+		copy.calculateMetrics(
+			codebase,
+			profile,
+			tracesMaxLimit,
+			traceType,
+			true, // no redesigns
+			true
+		);
+
+		return copy;
+	}
+
+	// the clusters and their entities are copied, everything else is left to be calculated
+	Decomposition copyClusters() {
+		Decomposition copy = new Decomposition();
+		copy.setName(name);
+		copy.setCodebaseName(codebaseName);
+		copy.setDendrogramName(dendrogramName);
+
+		for (Cluster cluster : clusters.values())
+			copy.addCluster(new Cluster(cluster.getName(), new HashSet<>(cluster.getEntities())));
+
+		copy.setEntityIDToClusterName(new HashMap<>(entityIDToClusterName));
+
+		return copy;
+	}
+
+	/**
+	 * Updates the metrics after the clusters were edited. Only the controllers that access an entity that
+	 * changed cluster since the last calculation read their traces again, and only them, the controllers
+	 * that access the same entities and the clusters they touch have their complexity and cohesion
+	 * recalculated. Falls back to calculateMetrics when there is no previous calculation to start from,
+	 * e.g. after the decomposition was read from disk.
+	 */
+	public void updateMetrics(
+		Codebase codebase,
+		String profile,
+		int tracesMaxLimit,
+		Constants.TraceType traceType
+	)
+		throws Exception
+	{
+		updateMetrics(
+			codebase,
+			profile,
+			tracesMaxLimit,
+			traceType,
+			false
+		);
+	}
+
+	// as in calculateMetrics, the redesigns are left out for the analyser
+	void updateMetrics(
+		Codebase codebase,
+		String profile,
+		int tracesMaxLimit,
+		Constants.TraceType traceType,
+		boolean isAnalyser
+	)
+		throws Exception
+	{
+		if (metricsState == null || !metricsState.isFor(codebase, profile, tracesMaxLimit, traceType)) {
+			calculateMetrics(codebase, profile, tracesMaxLimit, traceType, isAnalyser, true);
+			return;
+		}
+
+		System.out.println("Updating metrics...");
+
+		Set<Short> changedEntities = metricsState.getChangedEntities(entityIDToClusterName);
+		Set<String> affectedControllers = metricsState.getControllersThatAccess(changedEntities);
+
+		recalculateControllers(
+			codebase,
+			affectedControllers,
+			tracesMaxLimit,
+			traceType
+		);
+
+		// the complexity of a controller depends on the controllers that access the same entities
+		Set<String> dirtyControllers = new HashSet<>(affectedControllers);
+
+		for (String controllerName : affectedControllers)
+			dirtyControllers.addAll(
+				metricsState.getControllersThatAccess(getController(controllerName).getEntities().keySet())
+			);
+
+		Collection<Cluster> clusters = this.getClusters().values();
+
+		Utils.GetControllersClustersAndClustersControllersResult result1 =
+			Utils.getControllersClustersAndClustersControllers(
+				clusters,
+				this.getControllers().values()
+			);
+
+		Map<String, Set<Cluster>> controllersClusters = result1.controllersClusters;
+
+		resetCouplingDependencies();
+
+		CalculateComplexityAndPerformanceResult result2 = updateComplexityAndPerformance(
+			controllersClusters,
+			affectedControllers,
+			dirtyControllers,
+			isAnalyser
+		);
+
+		this.setPerformance(result2.performance);
+		this.setComplexity(result2.complexity);
+
+		// the cohesion of a cluster depends on its entities and on the controllers that touch it
+		Set<String> dirtyClusters = new HashSet<>();
+
+		for (short entityID : changedEntities) {
+			dirtyClusters.add(entityIDToClusterName.get(entityID));
+			dirtyClusters.add(metricsState.entityIDToClusterName.get(entityID));
+		}
+
+		for (String controllerName : dirtyControllers)
+			for (Cluster cluster : controllersClusters.get(controllerName))
+				dirtyClusters.add(cluster.getName());
+
+		CalculateCouplingAndCohesionResult result3 = updateCouplingAndCohesion(
+			clusters,
+			result1.clustersControllers,
+			dirtyClusters
+		);
+
+		this.setCohesion(result3.cohesion);
+		this.setCoupling(result3.coupling);
+
+		metricsState.entityIDToClusterName = new HashMap<>(entityIDToClusterName);
+	}
+
+	private void recalculateControllers(
+		Codebase codebase,
+		Set<String> controllerNames,
+		int tracesMaxLimit,
+		Constants.TraceType traceType
+	)
+		throws IOException
+	{
+		if (controllerNames.isEmpty())
+			return;
+
+		System.out.println("Recalculating the local transactions graphs of " + controllerNames.size() + " controllers...");
+
+		ControllerTracesIterator iter = new ControllerTracesIterator(
+			codebase.getDatafilePath(),
+			0 // the limit only applies to the graphs, so it is enforced while they are built
+		);
+
+		Map<Short, Short> entityIDToClusterID = getEntityIDToClusterID();
+
+		for (String controllerName : controllerNames) {
+			Controller controller = new Controller(controllerName);
+
+			GetLocalTransactionsGraphAndControllerPerformanceResult result = addCostlyAccessesAndGetLocalTransactionsGraph(
+				iter,
+				controller,
+				entityIDToClusterID,
+				tracesMaxLimit,
+				traceType
+			);
+
+			this.getControllers().put(controllerName, controller);
+			metricsState.controllersGraphs.put(controllerName, result);
+		}
+	}
+
+	// dependencies are found again from the local transactions graphs, so the old ones must be dropped
+	private void resetCouplingDependencies() {
+		for (Cluster cluster : this.getClusters().values())
+			cluster.setCouplingDependencies(new HashMap<>());
+	}
+
+	/**
+	 * Sets the controllers of the profile that touch domain entities, with their costly accesses, and returns
+	 * the local transactions graph and performance of each one of them.
+	 *
+	 * Every trace of a controller is read once: the costly accesses consider all of them while the graph and
+	 * the performance only consider the traces selected by tracesMaxLimit and traceType.
+	 */
+	private Map<String, GetLocalTransactionsGraphAndControllerPerformanceResult> calculateControllers(
+		Codebase codebase,
+		String profile,
+		int tracesMaxLimit,
+		Constants.TraceType traceType
+	)
+		throws IOException
+	{
+		System.out.println("Getting controllers with costly accesses and their local transactions graphs...");
+
+		Map<String, Controller> controllers = new HashMap<>();
+		Map<String, GetLocalTransactionsGraphAndControllerPerformanceResult> controllersGraphs = new HashMap<>();
+
+		ControllerTracesIterator iter = new ControllerTracesIterator(
+			codebase.getDatafilePath(),
+			0 // the limit only applies to the graphs, so it is enforced below
+		);
+
+		Map<Short, Short> entityIDToClusterID = getEntityIDToClusterID();
+
+		for (String controllerName : codebase.getProfile(profile)) {
+			Controller controller = new Controller(controllerName);
+
+			GetLocalTransactionsGraphAndControllerPerformanceResult result = addCostlyAccessesAndGetLocalTransactionsGraph(
+				iter,
+				controller,
+				entityIDToClusterID,
+				tracesMaxLimit,
+				traceType
+			);
+
+			// only consider controllers that touch domain entities
+			if (!controller.getEntities().isEmpty()) {
+				controllers.put(controllerName, controller);
+				controllersGraphs.put(controllerName, result);
+			}
+		}
+
+		this.setControllers(controllers);
+
+		return controllersGraphs;
+	}
+
+	// traces of a controller, either read from the datafile or kept in memory
+	interface ControllerTraces {
+		TraceDto nextTrace() throws IOException; // null when there are no more traces
+	}
+
+	private GetLocalTransactionsGraphAndControllerPerformanceResult addCostlyAccessesAndGetLocalTransactionsGraph(
+		ControllerTracesIterator iter,
+		Controller controller,
+		Map<Short, Short> entityIDToClusterID,
+		int tracesMaxLimit,
+		Constants.TraceType traceType
+	)
+		throws IOException
+	{
+		iter.nextControllerWithName(controller.getName());
+
+		return addCostlyAccessesAndGetLocalTransactionsGraph(
+			() -> iter.hasMoreTraces() ? iter.nextTrace() : null,
+			controller,
+			entityIDToClusterID,
+			tracesMaxLimit,
+			traceType
+		);
+	}
+
+	GetLocalTransactionsGraphAndControllerPerformanceResult addCostlyAccessesAndGetLocalTransactionsGraph(
+		ControllerTraces traces,
+		Controller controller,
+		Map<Short, Short> entityIDToClusterID, // from getEntityIDToClusterID
+		int tracesMaxLimit,
+		Constants.TraceType traceType
+	)
+		throws IOException
+	{
+		DirectedAcyclicGraph<LocalTransaction, DefaultEdge> localTransactionsGraph = new DirectedAcyclicGraph<>(DefaultEdge.class);
+
+		localTransactionsGraph.addVertex( // root
+			new LocalTransaction(
+				0,
+				(short) -1
+			)
+		);
+
+		Map<Short, Byte> entityIDToMode = new HashMap<>();
+		TraceDto selectedTrace = null; // longest trace or trace with more different accesses
+		int selectedTraceSize = 0;
+		float controllerPerformance = 0;
+		float tracesCounter = 0;
+		int nonEmptyTracesCounter = 0;
+
+		// identical traces add the same costly accesses and local transactions, so they are only evaluated once,
+		// and the traces with the same content hash are only taken as identical when their elements are
+		Map<Long, List<TraceDto>> evaluatedTraces = new HashMap<>();
+		Map<TraceDto, Float> tracesPerformance = new IdentityHashMap<>(); // of the first of the identical traces
+
+		TraceDto t;
+
+		while ((t = traces.nextTrace()) != null) {
+			// as in a limited iterator, only the traces up to the limit-th non empty trace are selectable
+			boolean isSelectable = tracesMaxLimit == 0 || nonEmptyTracesCounter < tracesMaxLimit;
+
+			// the elements of a trace are only read when it is added to the graph
+			boolean isEmpty = !t.hasElements();
+			TraceDto evaluatedTrace = getTraceWithSameElements(evaluatedTraces, t);
+			boolean isDuplicate = evaluatedTrace != t;
+
+			if (!isEmpty) {
+				if (!isDuplicate)
+					addCostlyAccesses(controller, t, entityIDToMode);
+
+				nonEmptyTracesCounter++;
+			}
+
+			if (!isSelectable)
+				continue;
+
+			switch (traceType) {
+				case LONGEST:
+				case WITH_MORE_DIFFERENT_ACCESSES:
+					if (isDuplicate) // never strictly longer than the trace it duplicates
+						break;
+
+					int traceSize = traceType == Constants.TraceType.LONGEST ?
+						t.getUncompressedSize() :
+						t.getAccessesSet().size();
+
+					if (selectedTrace == null || traceSize > selectedTraceSize) {
+						selectedTrace = t;
+						selectedTraceSize = traceSize;
+					}
+
+					break;
+
+				default:
+					int weight = Utils.getTraceWeight(t);
+					tracesCounter += weight;
+
+					if (!isEmpty) {
+						Float tracePerformance = tracesPerformance.get(evaluatedTrace);
+
+						if (tracePerformance == null) {
+							tracePerformance = addTraceToLocalTransactionsGraph(localTransactionsGraph, t.getElements(), entityIDToClusterID);
+							tracesPerformance.put(evaluatedTrace, tracePerformance);
+						}
+
+						controllerPerformance += weight * tracePerformance;
+					}
+			}
+		}
+
+		if (traceType == Constants.TraceType.LONGEST || traceType == Constants.TraceType.WITH_MORE_DIFFERENT_ACCESSES) {
+			if (selectedTrace != null && selectedTrace.hasElements())
+				controllerPerformance += addTraceToLocalTransactionsGraph(localTransactionsGraph, selectedTrace.getElements(), entityIDToClusterID);
+
+			tracesCounter = 1;
+		}
+
+		controllerPerformance /= tracesCounter;
+
+		return new GetLocalTransactionsGraphAndControllerPerformanceResult(
+			controllerPerformance,
+			localTransactionsGraph
+		);
+	}
+
+	// the trace evaluated before with the same elements, or the trace itself, which is then added to the evaluated ones
+	private static TraceDto getTraceWithSameElements(
+		Map<Long, List<TraceDto>> evaluatedTraces,
+		TraceDto trace
+	) {
+		List<TraceDto> sameHashTraces = evaluatedTraces.computeIfAbsent(trace.getContentHash(), hash -> new ArrayList<>(1));
+
+		for (TraceDto evaluatedTrace : sameHashTraces)
+			if (evaluatedTrace.hasSameElements(trace))
+				return evaluatedTrace;
+
+		sameHashTraces.add(trace);
+
+		return trace;
+	}
+
+	// returns the performance of the trace
+	private float addTraceToLocalTransactionsGraph(
+		DirectedAcyclicGraph<LocalTransaction, DefaultEdge> localTransactionsGraph,
+		List<ReducedTraceElementDto> traceElements,
+		Map<Short, Short> entityIDToClusterID
+	) {
+		Utils.GetLocalTransactionsSequenceAndCalculateTracePerformanceResult result = Utils.getLocalTransactionsSequenceAndCalculateTracePerformance(
+			1, // 1 because the root was already added with ID 0
+			null,
+			traceElements,
+			entityIDToClusterID,
+			new HashMap<>(),
+			0,
+			traceElements.size()
+		);
+
+		addLocalTransactionsSequenceToGraph(
+			localTransactionsGraph,
+			result.localTransactionsSequence
+		);
+
+		return result.performance;
+	}
+
+	private void addCostlyAccesses(
+		Controller controller,
+		TraceDto trace,
+		Map<Short, Byte> entityIDToMode
+	) {
+		String[] previousCluster = {null}; // null before the first access
+
+		entityIDToMode.clear();
+
+		// every access of the trace is visited once, in order, straight from the trace store when it is used
+		trace.visitCompressedAccesses((entityID, mode, occurrences) -> {
+			String cluster = entityIDToClusterName.get(entityID);
+
+			if (cluster == null) {
+				System.err.println("Entity " + entityID + " is not assign to a cluster.");
+				System.exit(-1);
+			}
+
+			if (previousCluster[0] == null) {
+				entityIDToMode.put(entityID, mode);
+				controller.addEntity(entityID, mode);
+
+			} else {
+
+				if (cluster.equals(previousCluster[0])) {
+					Byte savedMode = entityIDToMode.get(entityID);
+
+					if (savedMode == null || (savedMode == 1 && mode == 2)) { // "R" -> 1, "W" -> 2
+						entityIDToMode.put(entityID, mode);
+						controller.addEntity(entityID, mode);
+					}
+
+				} else {
+					controller.addEntity(entityID, mode);
+
+					entityIDToMode.clear();
+					entityIDToMode.put(entityID, mode);
+				}
+			}
+
+			previousCluster[0] = cluster;
+		});
 	}
 
 	public static class CalculateComplexityAndPerformanceResult {
@@ -529,31 +1164,23 @@ public class Decomposition {
 	}
 
 	public CalculateComplexityAndPerformanceResult calculateComplexityAndPerformance(
-		Codebase codebase,
 		Map<String, Set<Cluster>> controllersClusters,
-		Constants.TraceType traceType,
-		int tracesMaxLimit
-	)
-		throws IOException
-	{
-		ControllerTracesIterator iter = new ControllerTracesIterator(
-			codebase.getDatafilePath(),
-			tracesMaxLimit
-		);
-
+		Map<String, GetLocalTransactionsGraphAndControllerPerformanceResult> controllersGraphs
+	) {
 		float complexity = 0;
 		float performance = 0;
 
 		System.out.println("Calculating graph complexity and performance...");
 
+		EntityControllersIndex entityControllersIndex = new EntityControllersIndex(
+			this.getControllers().values(),
+			controllersClusters
+		);
+
 		for (Controller controller : this.getControllers().values()) {
 			String controllerName = controller.getName();
 
-			GetLocalTransactionsGraphAndControllerPerformanceResult result2 = getLocalTransactionsGraphAndControllerPerformance(
-				iter,
-				controllerName,
-				traceType
-			);
+			GetLocalTransactionsGraphAndControllerPerformanceResult result2 = controllersGraphs.get(controllerName);
 
 			float controllerPerformance = result2.performance;
 
@@ -561,6 +1188,7 @@ public class Decomposition {
 				this,
 				controllerName,
 				controllersClusters,
+				entityControllersIndex,
 				result2.localTransactionsGraph
 			);
 
@@ -595,31 +1223,23 @@ public class Decomposition {
 	}
 
 	public CalculateComplexityAndPerformanceResult calculateComplexityAndPerformanceAndRedesignMetrics(
-			Codebase codebase,
 			Map<String, Set<Cluster>> controllersClusters,
-			Constants.TraceType traceType,
-			int tracesMaxLimit
-	)
-			throws IOException
-	{
-		ControllerTracesIterator iter = new ControllerTracesIterator(
-				codebase.getDatafilePath(),
-				tracesMaxLimit
-		);
-
+			Map<String, GetLocalTransactionsGraphAndControllerPerformanceResult> controllersGraphs
+	) {
 		float complexity = 0;
 		float performance = 0;
 
 		System.out.println("Calculating graph complexity and performance...");
 
+		EntityControllersIndex entityControllersIndex = new EntityControllersIndex(
+			this.getControllers().values(),
+			controllersClusters
+		);
+
 		for (Controller controller : this.getControllers().values()) {
 			String controllerName = controller.getName();
 
-			GetLocalTransactionsGraphAndControllerPerformanceResult result2 = getLocalTransactionsGraphAndControllerPerformance(
-					iter,
-					controllerName,
-					traceType
-			);
+			GetLocalTransactionsGraphAndControllerPerformanceResult result2 = controllersGraphs.get(controllerName);
 
 			float controllerPerformance = result2.performance;
 
@@ -627,6 +1247,7 @@ public class Decomposition {
 					this,
 					controllerName,
 					controllersClusters,
+					entityControllersIndex,
 					result2.localTransactionsGraph
 			);
 
@@ -672,6 +1293,88 @@ public class Decomposition {
 		);
 	}
 
+	private CalculateComplexityAndPerformanceResult updateComplexityAndPerformance(
+		Map<String, Set<Cluster>> controllersClusters,
+		Set<String> affectedControllers,
+		Set<String> dirtyControllers,
+		boolean isAnalyser
+	) {
+		float complexity = 0;
+		float performance = 0;
+
+		System.out.println("Updating graph complexity and performance of " + dirtyControllers.size() + " controllers...");
+
+		EntityControllersIndex entityControllersIndex = new EntityControllersIndex(
+			this.getControllers().values(),
+			controllersClusters
+		);
+
+		for (Controller controller : this.getControllers().values()) {
+			String controllerName = controller.getName();
+
+			GetLocalTransactionsGraphAndControllerPerformanceResult result2 = metricsState.controllersGraphs.get(controllerName);
+
+			if (dirtyControllers.contains(controllerName)) {
+				float controllerComplexity = Metrics.calculateControllerComplexityAndClusterDependencies(
+					this,
+					controllerName,
+					controllersClusters,
+					entityControllersIndex,
+					result2.localTransactionsGraph
+				);
+
+				controller.setPerformance(
+					BigDecimal.valueOf(result2.performance).setScale(2, RoundingMode.HALF_UP).floatValue()
+				);
+
+				controller.setComplexity(controllerComplexity);
+
+				if (!isAnalyser) {
+					// the other controllers keep their redesigns, only a new controller needs the default one
+					if (affectedControllers.contains(controllerName))
+						controller.createFunctionalityRedesign(
+							Constants.DEFAULT_REDESIGN_NAME,
+							true,
+							result2.localTransactionsGraph
+						);
+
+					if (controller.getFunctionalityRedesign(Constants.DEFAULT_REDESIGN_NAME) != null)
+						Metrics.calculateRedesignComplexities(
+							controller,
+							Constants.DEFAULT_REDESIGN_NAME,
+							this
+						);
+				}
+
+			} else if (controllersClusters.get(controllerName).size() > 1) {
+				Metrics.calculateClusterDependencies(
+					this,
+					result2.localTransactionsGraph
+				);
+			}
+
+			performance += result2.performance;
+			complexity += controller.getComplexity();
+		}
+
+		int graphControllersAmount = controllersClusters.size();
+
+		complexity = BigDecimal
+			.valueOf(complexity / graphControllersAmount)
+			.setScale(2, RoundingMode.HALF_UP)
+			.floatValue();
+
+		performance = BigDecimal
+			.valueOf(performance / graphControllersAmount)
+			.setScale(2, RoundingMode.HALF_UP)
+			.floatValue();
+
+		return new CalculateComplexityAndPerformanceResult(
+			complexity,
+			performance
+		);
+	}
+
 	public static class CalculateCouplingAndCohesionResult {
 		public float coupling;
 		public float cohesion;
@@ -727,6 +1430,51 @@ public class Decomposition {
 		);
 	}
 
+	// the coupling of every cluster is recalculated, since its dependencies were found again
+	private CalculateCouplingAndCohesionResult updateCouplingAndCohesion(
+		Collection<Cluster> clusters,
+		Map<String, Set<Controller>> clustersControllers,
+		Set<String> dirtyClusters
+	) {
+		System.out.println("Updating graph cohesion of " + dirtyClusters.size() + " clusters and coupling...");
+
+		float cohesion = 0;
+		float coupling = 0;
+
+		for (Cluster cluster : clusters) {
+			if (dirtyClusters.contains(cluster.getName()))
+				Metrics.calculateClusterComplexityAndCohesion(
+					cluster,
+					clustersControllers
+				);
+
+			Metrics.calculateClusterCoupling(
+				cluster,
+				this.getClusters()
+			);
+
+			coupling += cluster.getCoupling();
+			cohesion += cluster.getCohesion();
+		}
+
+		int graphClustersAmount = clusters.size();
+
+		cohesion = BigDecimal
+			.valueOf(cohesion / graphClustersAmount)
+			.setScale(2, RoundingMode.HALF_UP)
+			.floatValue();
+
+		coupling = BigDecimal
+			.valueOf(coupling / graphClustersAmount)
+			.setScale(2, RoundingMode.HALF_UP)
+			.floatValue();
+
+		return new CalculateCouplingAndCohesionResult(
+			coupling,
+			cohesion
+		);
+	}
+
 	public void mergeClusters(
 		String cluster1ID,
 		String cluster2ID,
@@ -0,0 +1,478 @@
+package pt.ist.socialsoftware.mono2micro.domain;
+
+import pt.ist.socialsoftware.mono2micro.dto.OptimiserDto;
+import pt.ist.socialsoftware.mono2micro.dto.OptimiserProgressDto;
+import pt.ist.socialsoftware.mono2micro.manager.CodebaseManager;
+import pt.ist.socialsoftware.mono2micro.manager.Job;
+
+import javax.management.openmbean.KeyAlreadyExistsException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static pt.ist.socialsoftware.mono2micro.utils.Constants.OPTIMISER_THREADS;
+
+/**
+ * Simulated annealing over the clusters of a decomposition, saving the best one found as a new decomposition
+ * of the dendrogram.
+ *
+ * Every iteration evaluates a batch of random neighbours in parallel, each one an entity moved to another
+ * cluster, two clusters merged or a cluster split in two, and the best of them is accepted when it improves
+ * the objective or, otherwise, with a probability that decreases with the temperature. The objective adds the
+ * complexity, performance and coupling and subtracts the cohesion, each weighted and relative to its value in
+ * the initial decomposition, plus a penalty for every entity above or below the cluster size limits.
+ *
+ * Neighbours are scored by a MoveEvaluator and the accepted ones are applied to a working copy whose metrics
+ * are updated incrementally, so the traces are only read for the controllers that access moved entities.
+ *
+ * The optimiser runs as the task of a job, through which it is found while the job is kept. The progress of
+ * the job is the number of iterations done, and a cancelled job stops without saving anything.
+ */
+public class DecompositionOptimiser implements Job.Task {
+	private static final double MERGE_PROBABILITY = 0.15;
+	private static final double SPLIT_PROBABILITY = 0.15;
+	private static final int CANDIDATES_PER_THREAD = 2;
+
+	private final Codebase codebase;
+	private final Dendrogram dendrogram;
+	private final Decomposition decomposition; // the clusters when the optimiser was created
+	private final OptimiserDto settings;
+	private final Random random;
+
+	private volatile boolean stopRequested;
+	private volatile OptimiserProgressDto progress; // replaced, never changed, so that it can be read any time
+
+	private float[] referenceMetrics; // complexity, performance, cohesion and coupling of the initial decomposition
+
+	public DecompositionOptimiser(
+		Codebase codebase,
+		Dendrogram dendrogram,
+		Decomposition decomposition,
+		OptimiserDto settings
+	) {
+		if (settings.getName() == null || dendrogram.getDecompositionNames().contains(settings.getName()))
+			throw new KeyAlreadyExistsException();
+
+		this.codebase = codebase;
+		this.dendrogram = dendrogram;
+		// copied in the caller's thread, the decomposition may be changed once the job runs
+		this.decomposition = decomposition.copyClusters();
+		this.settings = settings;
+		this.random = settings.getSeed() == 0 ? new Random() : new Random(settings.getSeed());
+
+		OptimiserProgressDto progress = new OptimiserProgressDto();
+		progress.setStatus("RUNNING");
+		this.progress = progress;
+	}
+
+	public OptimiserProgressDto getProgress() { return progress; }
+
+	// the best decomposition found so far is still saved
+	public void stop() { stopRequested = true; }
+
+	// the job fails when the optimisation does, and its result is the final progress otherwise
+	@Override
+	public Object run(Job job)
+		throws Exception
+	{
+		try {
+			optimise(job);
+
+		} catch (Exception e) {
+			// a cancelled job stops at checkCancelled or at the interruption of a blocking call
+			if (job.isCancelRequested()) {
+				OptimiserProgressDto cancelled = copyProgress();
+				cancelled.setStatus("CANCELLED");
+				progress = cancelled;
+
+				throw e;
+			}
+
+			OptimiserProgressDto failed = copyProgress();
+			failed.setStatus("FAILED");
+			failed.setError(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+			progress = failed;
+
+			throw e;
+		}
+
+		return progress;
+	}
+
+	private void optimise(Job job)
+		throws Exception
+	{
+		long start = System.currentTimeMillis();
+		long budget = settings.getMaxSeconds() * 1000L;
+
+		String profile = dendrogram.getProfile();
+		int tracesMaxLimit = dendrogram.getTracesMaxLimit();
+
+		System.out.println("Optimising decomposition " + decomposition.getName() + "...");
+
+		Decomposition working = decomposition.copyWithMetrics(
+			codebase,
+			profile,
+			tracesMaxLimit,
+			dendrogram.getTraceType()
+		);
+
+		MoveEvaluator moveEvaluator = new MoveEvaluator(
+			working,
+			codebase,
+			profile,
+			tracesMaxLimit,
+			dendrogram.getTraceType()
+		);
+
+		referenceMetrics = new float[] {
+			working.getComplexity(),
+			working.getPerformance(),
+			working.getCohesion(),
+			working.getCoupling()
+		};
+
+		double objective = objective(
+			working.getComplexity(),
+			working.getPerformance(),
+			working.getCohesion(),
+			working.getCoupling(),
+			getClusterSizes(working, Collections.emptyMap())
+		);
+
+		double temperature = settings.getInitialTemperature();
+		int candidatesPerIteration = settings.getCandidatesPerIteration() > 0 ?
+			settings.getCandidatesPerIteration() :
+			CANDIDATES_PER_THREAD * OPTIMISER_THREADS;
+
+		publishProgress(0, start, temperature, objective, working, objective);
+		double bestObjective = objective;
+
+		ExecutorService pool = Executors.newWorkStealingPool(OPTIMISER_THREADS);
+
+		try {
+			for (int iteration = 1; iteration <= settings.getMaxIterations(); iteration++) {
+				job.checkCancelled();
+
+				if (stopRequested || System.currentTimeMillis() - start >= budget)
+					break;
+
+				List<Map<Short, String>> candidates = new ArrayList<>();
+				String newClusterName = getNewClusterName(working);
+
+				for (int i = 0; i < candidatesPerIteration; i++) {
+					Map<Short, String> candidate = getRandomNeighbour(working, newClusterName);
+
+					if (candidate != null)
+						candidates.add(candidate);
+				}
+
+				if (candidates.isEmpty())
+					break;
+
+				List<MoveEvaluator.Evaluation> evaluations = moveEvaluator.evaluate(candidates, pool);
+
+				Map<Short, String> bestCandidate = null;
+				double bestCandidateObjective = Double.POSITIVE_INFINITY;
+
+				for (int i = 0; i < candidates.size(); i++) {
+					MoveEvaluator.Evaluation evaluation = evaluations.get(i);
+
+					double candidateObjective = objective(
+						evaluation.complexity,
+						evaluation.performance,
+						evaluation.cohesion,
+						evaluation.coupling,
+						getClusterSizes(working, candidates.get(i))
+					);
+
+					if (candidateObjective < bestCandidateObjective) {
+						bestCandidate = candidates.get(i);
+						bestCandidateObjective = candidateObjective;
+					}
+				}
+
+				double delta = bestCandidateObjective - objective;
+
+				// no candidate is picked when none of them has a comparable objective
+				if (bestCandidate != null && (delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature))) {
+					apply(working, bestCandidate);
+
+					working.updateMetrics(
+						codebase,
+						profile,
+						tracesMaxLimit,
+						dendrogram.getTraceType(),
+						true // no redesigns
+					);
+
+					objective = objective(
+						working.getComplexity(),
+						working.getPerformance(),
+						working.getCohesion(),
+						working.getCoupling(),
+						getClusterSizes(working, Collections.emptyMap())
+					);
+				}
+
+				temperature *= settings.getCoolingRate();
+
+				if (objective < bestObjective) {
+					bestObjective = objective;
+					publishProgress(iteration, start, temperature, objective, working, bestObjective);
+
+				} else {
+					OptimiserProgressDto next = copyProgress();
+					next.setIteration(iteration);
+					next.setElapsedMilliseconds(System.currentTimeMillis() - start);
+					next.setTemperature((float) temperature);
+					next.setObjective(objective);
+					progress = next;
+				}
+
+				job.setProgress(iteration, settings.getMaxIterations());
+			}
+
+		} finally {
+			pool.shutdown();
+		}
+
+		String decompositionName = saveBestDecomposition();
+
+		OptimiserProgressDto done = copyProgress();
+		done.setStatus(stopRequested ? "STOPPED" : "DONE");
+		done.setDecompositionName(decompositionName);
+		progress = done;
+
+		System.out.println("Optimised decomposition saved as " + decompositionName);
+	}
+
+	private double objective(
+		float complexity,
+		float performance,
+		float cohesion,
+		float coupling,
+		Collection<Integer> clusterSizes
+	) {
+		double objective = settings.getComplexityWeight() * relative(complexity, 0) +
+			settings.getPerformanceWeight() * relative(performance, 1) -
+			settings.getCohesionWeight() * relative(cohesion, 2) +
+			settings.getCouplingWeight() * relative(coupling, 3);
+
+		int entitiesOutOfLimits = 0;
+
+		for (int clusterSize : clusterSizes) {
+			if (clusterSize < settings.getMinClusterSize())
+				entitiesOutOfLimits += settings.getMinClusterSize() - clusterSize;
+
+			if (settings.getMaxClusterSize() > 0 && clusterSize > settings.getMaxClusterSize())
+				entitiesOutOfLimits += clusterSize - settings.getMaxClusterSize();
+		}
+
+		return objective + settings.getClusterSizePenalty() * entitiesOutOfLimits;
+	}
+
+	// a metric that is 0 in the initial decomposition is taken as it is
+	private double relative(float metric, int measure) {
+		return referenceMetrics[measure] == 0 ? metric : metric / referenceMetrics[measure];
+	}
+
+	private static Collection<Integer> getClusterSizes(
+		Decomposition decomposition,
+		Map<Short, String> reassignment
+	) {
+		Map<String, Integer> clusterSizes = new HashMap<>();
+
+		for (Cluster cluster : decomposition.getClusters().values())
+			clusterSizes.put(cluster.getName(), cluster.getEntities().size());
+
+		for (Map.Entry<Short, String> entry : reassignment.entrySet()) {
+			clusterSizes.merge(decomposition.getEntityIDToClusterName().get(entry.getKey()), -1, Integer::sum);
+			clusterSizes.merge(entry.getValue(), 1, Integer::sum);
+		}
+
+		clusterSizes.values().removeIf(size -> size == 0);
+
+		return clusterSizes.values();
+	}
+
+	// cluster names are cluster IDs in the local transactions, so a new cluster takes the next free number
+	private static String getNewClusterName(Decomposition decomposition) {
+		short maxClusterID = -1;
+
+		for (String clusterName : decomposition.getClusters().keySet())
+			maxClusterID = (short) Math.max(maxClusterID, Short.parseShort(clusterName));
+
+		return String.valueOf(maxClusterID + 1);
+	}
+
+	// null when the decomposition has no such neighbour
+	private Map<Short, String> getRandomNeighbour(
+		Decomposition decomposition,
+		String newClusterName
+	) {
+		List<Cluster> clusters = new ArrayList<>(decomposition.getClusters().values());
+		double type = random.nextDouble();
+
+		if (type < MERGE_PROBABILITY) {
+			if (clusters.size() < 2)
+				return null;
+
+			Cluster from = clusters.get(random.nextInt(clusters.size()));
+			Cluster to = clusters.get(random.nextInt(clusters.size()));
+
+			if (from == to)
+				return null;
+
+			Map<Short, String> reassignment = new HashMap<>();
+
+			for (short entityID : from.getEntities())
+				reassignment.put(entityID, to.getName());
+
+			return reassignment;
+
+		} else if (type < MERGE_PROBABILITY + SPLIT_PROBABILITY) {
+			Cluster cluster = clusters.get(random.nextInt(clusters.size()));
+
+			if (cluster.getEntities().size() < 2)
+				return null;
+
+			Map<Short, String> reassignment = new HashMap<>();
+
+			for (short entityID : cluster.getEntities())
+				if (random.nextBoolean())
+					reassignment.put(entityID, newClusterName);
+
+			if (reassignment.isEmpty() || reassignment.size() == cluster.getEntities().size())
+				return null;
+
+			return reassignment;
+
+		} else {
+			if (clusters.size() < 2)
+				return null;
+
+			Cluster from = clusters.get(random.nextInt(clusters.size()));
+			Cluster to = clusters.get(random.nextInt(clusters.size()));
+
+			if (from == to)
+				return null;
+
+			List<Short> entities = new ArrayList<>(from.getEntities());
+
+			return Collections.singletonMap(entities.get(random.nextInt(entities.size())), to.getName());
+		}
+	}
+
+	private static void apply(
+		Decomposition decomposition,
+		Map<Short, String> reassignment
+	) {
+		for (Map.Entry<Short, String> entry : reassignment.entrySet()) {
+			String fromClusterName = decomposition.getEntityIDToClusterName().get(entry.getKey());
+
+			if (!decomposition.clusterExists(entry.getValue()))
+				decomposition.addCluster(new Cluster(entry.getValue()));
+
+			decomposition.transferEntities(
+				fromClusterName,
+				entry.getValue(),
+				new String[] {String.valueOf(entry.getKey())}
+			);
+
+			if (decomposition.getCluster(fromClusterName).getEntities().isEmpty())
+				decomposition.removeCluster(fromClusterName);
+		}
+	}
+
+	private void publishProgress(
+		int iteration,
+		long start,
+		double temperature,
+		double objective,
+		Decomposition best,
+		double bestObjective
+	) {
+		OptimiserProgressDto next = copyProgress();
+		next.setIteration(iteration);
+		next.setElapsedMilliseconds(System.currentTimeMillis() - start);
+		next.setTemperature((float) temperature);
+		next.setObjective(objective);
+		next.setBestObjective(bestObjective);
+		next.setBestComplexity(best.getComplexity());
+		next.setBestPerformance(best.getPerformance());
+		next.setBestCohesion(best.getCohesion());
+		next.setBestCoupling(best.getCoupling());
+
+		Map<String, Set<Short>> bestClusters = new HashMap<>();
+
+		for (Cluster cluster : best.getClusters().values())
+			bestClusters.put(cluster.getName(), new HashSet<>(cluster.getEntities()));
+
+		next.setBestClusters(bestClusters);
+		progress = next;
+	}
+
+	private OptimiserProgressDto copyProgress() {
+		OptimiserProgressDto current = progress;
+
+		OptimiserProgressDto copy = new OptimiserProgressDto();
+		copy.setStatus(current.getStatus());
+		copy.setError(current.getError());
+		copy.setIteration(current.getIteration());
+		copy.setElapsedMilliseconds(current.getElapsedMilliseconds());
+		copy.setTemperature(current.getTemperature());
+		copy.setObjective(current.getObjective());
+		copy.setBestObjective(current.getBestObjective());
+		copy.setBestComplexity(current.getBestComplexity());
+		copy.setBestPerformance(current.getBestPerformance());
+		copy.setBestCohesion(current.getBestCohesion());
+		copy.setBestCoupling(current.getBestCoupling());
+		copy.setBestClusters(current.getBestClusters());
+		copy.setDecompositionName(current.getDecompositionName());
+
+		return copy;
+	}
+
+	private String saveBestDecomposition()
+		throws Exception
+	{
+		CodebaseManager codebaseManager = CodebaseManager.getInstance();
+
+		Decomposition optimised = new Decomposition();
+		optimised.setCodebaseName(decomposition.getCodebaseName());
+		optimised.setDendrogramName(decomposition.getDendrogramName());
+		optimised.setName(settings.getName());
+
+		for (Map.Entry<String, Set<Short>> entry : progress.getBestClusters().entrySet()) {
+			optimised.addCluster(new Cluster(entry.getKey(), new HashSet<>(entry.getValue())));
+
+			for (short entityID : entry.getValue())
+				optimised.putEntity(entityID, entry.getKey());
+		}
+
+		optimised.calculateMetrics(
+			codebase,
+			dendrogram.getProfile(),
+			dendrogram.getTracesMaxLimit(),
+			dendrogram.getTraceType(),
+			false
+		);
+
+		// the dendrogram may have changed while the optimiser was running
+		Dendrogram currentDendrogram = codebaseManager.getDendrogram(
+			decomposition.getCodebaseName(),
+			decomposition.getDendrogramName()
+		);
+
+		if (currentDendrogram.getDecompositionNames().contains(optimised.getName()))
+			throw new KeyAlreadyExistsException("Decomposition " + optimised.getName() + " already exists");
+
+		currentDendrogram.addDecompositionName(optimised.getName());
+
+		codebaseManager.writeDecomposition(optimised);
+		codebaseManager.writeDendrogram(currentDendrogram);
+
+		return optimised.getName();
+	}
+}
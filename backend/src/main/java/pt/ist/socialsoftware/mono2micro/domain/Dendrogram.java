@@ -1,27 +1,24 @@
 package pt.ist.socialsoftware.mono2micro.domain;
 
-import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.springframework.web.multipart.MultipartFile;
 import pt.ist.socialsoftware.mono2micro.manager.CodebaseManager;
+import pt.ist.socialsoftware.mono2micro.utils.EntityPairCounts;
+import pt.ist.socialsoftware.mono2micro.utils.Linkage;
 import pt.ist.socialsoftware.mono2micro.utils.Pair;
-import pt.ist.socialsoftware.mono2micro.utils.Utils;
+import pt.ist.socialsoftware.mono2micro.utils.SimilarityMatrix;
+import pt.ist.socialsoftware.mono2micro.utils.SimilarityMetrics;
 import pt.ist.socialsoftware.mono2micro.utils.deserializers.DendrogramDeserializer;
 
 import javax.management.openmbean.KeyAlreadyExistsException;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static pt.ist.socialsoftware.mono2micro.utils.Constants.*;
 
@@ -36,7 +33,7 @@ public class Dendrogram {
 	private float readMetricWeight;
 	private float sequenceMetricWeight;
 	private String profile;
-	private List<Decomposition> decompositions = new ArrayList<>(); // Might not be necessary if the folders structure gets better organized
+	private List<String> decompositionNames = new ArrayList<>(); // each decomposition is kept in its own decomposition.json
 	private int tracesMaxLimit = 0;
 	private TraceType traceType = TraceType.ALL;
 
@@ -102,11 +99,9 @@ public class Dendrogram {
 
 	public void setProfile(String profile) { this.profile = profile; }
 
-	public List<Decomposition> getDecompositions() {
-		return this.decompositions;
-	}
+	public List<String> getDecompositionNames() { return this.decompositionNames; }
 
-	public void setDecompositions(List<Decomposition> decompositions) { this.decompositions = decompositions; }
+	public void setDecompositionNames(List<String> decompositionNames) { this.decompositionNames = decompositionNames; }
 
 	public int getTracesMaxLimit() { return tracesMaxLimit; }
 
@@ -116,19 +111,8 @@ public class Dendrogram {
 
 	public void setTraceType(TraceType traceType) { this.traceType = traceType; }
 
-	@JsonIgnore
-	public List<String> getDecompositionNames() { return this.decompositions.stream().map(Decomposition::getName).collect(Collectors.toList()); }
-
-	@JsonIgnore
-	public Decomposition getDecomposition(String decompositionName) {
-		return this.decompositions.stream()
-			.filter(decomposition -> decomposition.getName().equals(decompositionName))
-			.findAny()
-			.orElse(null);
-	}
-
-	public void addDecomposition(Decomposition decomposition) {
-		this.decompositions.add(decomposition);
+	public void addDecompositionName(String decompositionName) {
+		this.decompositionNames.add(decompositionName);
 	}
 
 	public void deleteDecomposition(
@@ -136,13 +120,11 @@ public class Dendrogram {
 	)
 		throws IOException
 	{
-		for (int i = 0; i < this.decompositions.size(); i++) {
-			if (this.decompositions.get(i).getName().equals(decompositionName)) {
-				this.decompositions.remove(i);
-				break;
-			}
-		}
+		this.decompositionNames.remove(decompositionName);
 
+		CodebaseManager.getInstance().evictDocuments(
+			CODEBASES_PATH + this.codebaseName + "/" + this.name + "/" + decompositionName + "/"
+		);
 		FileUtils.deleteDirectory(
 			new File(CODEBASES_PATH + this.codebaseName + "/" + this.name + "/" + decompositionName)
 		);
@@ -150,7 +132,7 @@ public class Dendrogram {
 
 	public Decomposition createExpertCut(
 		String expertName,
-		Optional<MultipartFile> expertFile
+		Optional<byte[]> expertFile // content of the uploaded file
 	)
 		throws Exception
 	{
@@ -164,9 +146,7 @@ public class Dendrogram {
 		expertDecomposition.setName(expertName);
 
 		if (expertFile.isPresent()) {
-			InputStream is = new BufferedInputStream(expertFile.get().getInputStream());
-			JSONObject expertCut = new JSONObject(IOUtils.toString(is, StandardCharsets.UTF_8));
-			is.close();
+			JSONObject expertCut = new JSONObject(new String(expertFile.get(), StandardCharsets.UTF_8));
 
 			Iterator<String> clusters = expertCut.getJSONObject("clusters").keys();
 
@@ -187,16 +167,12 @@ public class Dendrogram {
 		} else {
 			Cluster cluster = new Cluster("Generic");
 
-			JSONObject similarityMatrixData = CodebaseManager.getInstance().getSimilarityMatrix(
+			SimilarityMatrix similarityMatrix = CodebaseManager.getInstance().getSimilarityMatrix(
 				this.codebaseName,
 				this.name
 			);
 
-			JSONArray entities = similarityMatrixData.getJSONArray("entities");
-
-			for (int i = 0; i < entities.length(); i++) {
-				short entityID = (short) entities.getInt(i);
-
+			for (short entityID : similarityMatrix.getEntityIDs()) {
 				cluster.addEntity(entityID);
 				expertDecomposition.putEntity(entityID, "Generic");
 			}
@@ -207,49 +183,35 @@ public class Dendrogram {
 		return expertDecomposition;
 	}
 
-	public JSONObject getMatrixData(
+	public SimilarityMatrix getMatrixData(
 		Set<Short> entityIDs,
-		Map<String, Integer> e1e2PairCount,
+		EntityPairCounts e1e2PairCount,
 		Map<Short, List<Pair<String, Byte>>> entityControllers
-	)
-		throws JSONException
-	{
-		JSONArray similarityMatrix = new JSONArray();
-		JSONObject matrixData = new JSONObject();
-
-		int maxNumberOfPairs = Utils.getMaxNumberOfPairs(e1e2PairCount);
+	) {
+		SimilarityMatrix similarityMatrix = new SimilarityMatrix(entityIDs, this.linkageType, 1, false);
 
-		for (short e1ID : entityIDs) {
-			JSONArray matrixRow = new JSONArray();
+		SimilarityMetrics similarityMetrics = new SimilarityMetrics(entityIDs, e1e2PairCount, entityControllers);
+		int n = similarityMetrics.getSize();
 
-			for (short e2ID : entityIDs) {
-				if (e1ID == e2ID) {
-					matrixRow.put(1);
+		similarityMetrics.calculateRows(SIMILARITY_MATRIX_THREADS, (i, metrics) -> {
+			for (int j = 0; j < n; j++) {
+				if (i == j) {
+					similarityMatrix.set(i, j, 1);
 					continue;
 				}
 
-				float[] metrics = Utils.calculateSimilarityMatrixMetrics(
-					entityControllers,
-					e1e2PairCount,
-					e1ID,
-					e2ID,
-					maxNumberOfPairs
-				);
+				int k = j * SimilarityMetrics.MEASURES;
 
-				float metric = metrics[0] * this.accessMetricWeight / 100 +
-					metrics[1] * this.writeMetricWeight / 100 +
-					metrics[2] * this.readMetricWeight / 100 +
-					metrics[3] * this.sequenceMetricWeight / 100;
+				float metric = metrics[k] * this.accessMetricWeight / 100 +
+					metrics[k + 1] * this.writeMetricWeight / 100 +
+					metrics[k + 2] * this.readMetricWeight / 100 +
+					metrics[k + 3] * this.sequenceMetricWeight / 100;
 
-				matrixRow.put(metric);
+				similarityMatrix.set(i, j, metric);
 			}
-			similarityMatrix.put(matrixRow);
-		}
-		matrixData.put("matrix", similarityMatrix);
-		matrixData.put("entities", entityIDs);
-		matrixData.put("linkageType", this.linkageType);
+		});
 
-		return matrixData;
+		return similarityMatrix;
 	}
 
 	public Decomposition cut(Decomposition decomposition)
@@ -267,58 +229,58 @@ public class Dendrogram {
 			decomposition.setName(decomposition.getCutType() + cutValue);
 		}
 
+		decomposition.setCodebaseName(this.codebaseName);
+		decomposition.setDendrogramName(this.name);
+
 		File decompositionPath = new File(CODEBASES_PATH + this.codebaseName + "/" + this.name + "/" + decomposition.getName());
 		if (!decompositionPath.exists()) {
 			decompositionPath.mkdir();
 		}
 
-		Runtime r = Runtime.getRuntime();
-		String pythonScriptPath = RESOURCES_PATH + "cutDendrogram.py";
-		String[] cmd = new String[8];
-		cmd[0] = PYTHON;
-		cmd[1] = pythonScriptPath;
-		cmd[2] = CODEBASES_PATH;
-		cmd[3] = this.codebaseName;
-		cmd[4] = this.name;
-		cmd[5] = decomposition.getName();
-		cmd[6] = decomposition.getCutType();
-		cmd[7] = Float.toString(decomposition.getCutValue());
-		Process p = r.exec(cmd);
-		
-		p.waitFor();
-
-		JSONObject clustersJSON = CodebaseManager.getInstance().getClusters(
+		CodebaseManager codebaseManager = CodebaseManager.getInstance();
+
+		Linkage linkage = codebaseManager.getDendrogramLinkage(
 			this.codebaseName,
-			this.name,
-			decomposition.getName()
+			this.name
 		);
 
-		decomposition.setSilhouetteScore((float) clustersJSON.getDouble("silhouetteScore"));
+		int[] labels;
 
-		Iterator<String> clusters = clustersJSON.getJSONObject("clusters").sortedKeys();
-		ArrayList<Integer> clusterIds = new ArrayList<>();
+		if (decomposition.getCutType().equals("H"))
+			labels = linkage.cutByHeight(decomposition.getCutValue());
+		else if (decomposition.getCutType().equals("N"))
+			labels = linkage.cutByNumberOfClusters((int) decomposition.getCutValue());
+		else
+			throw new Exception("Cut type " + decomposition.getCutType() + " not found");
 
-		while(clusters.hasNext()) {
-			clusterIds.add(Integer.parseInt(clusters.next()));
-		}
+		int numberOfClusters = Linkage.getNumberOfClusters(labels);
+		short[] entityIDs = linkage.getEntities();
 
-		Collections.sort(clusterIds);
+		// kept with two decimals, as it is shown
+		double silhouetteScore = codebaseManager.getDendrogramSilhouetteScore(
+			this.codebaseName,
+			this.name,
+			linkage,
+			labels
+		);
 
-		for (Integer id : clusterIds) {
-			String clusterId = String.valueOf(id);
-			JSONArray entities = clustersJSON.getJSONObject("clusters").getJSONArray(clusterId);
-			Cluster cluster = new Cluster(clusterId);
+		decomposition.setSilhouetteScore(Math.round(silhouetteScore * 100) / 100f);
 
-			for (int i = 0; i < entities.length(); i++) {
-				short entityID = (short) entities.getInt(i);
+		Cluster[] clusters = new Cluster[numberOfClusters];
 
-				cluster.addEntity(entityID);
-				decomposition.putEntity(entityID, clusterId);
-			}
+		for (int id = 0; id < numberOfClusters; id++)
+			clusters[id] = new Cluster(String.valueOf(id));
 
-			decomposition.addCluster(cluster);
+		for (int i = 0; i < labels.length; i++) {
+			Cluster cluster = clusters[labels[i]];
+
+			cluster.addEntity(entityIDs[i]);
+			decomposition.putEntity(entityIDs[i], cluster.getName());
 		}
 
+		for (Cluster cluster : clusters)
+			decomposition.addCluster(cluster);
+
 		return decomposition;
 	}
 }
@@ -0,0 +1,363 @@
+package pt.ist.socialsoftware.mono2micro.domain;
+
+import pt.ist.socialsoftware.mono2micro.dto.MoveDto;
+import pt.ist.socialsoftware.mono2micro.dto.MoveEvaluationDto;
+import pt.ist.socialsoftware.mono2micro.dto.TraceDto;
+import pt.ist.socialsoftware.mono2micro.utils.Constants;
+import pt.ist.socialsoftware.mono2micro.utils.ControllerTracesIterator;
+import pt.ist.socialsoftware.mono2micro.utils.EntityControllersIndex;
+import pt.ist.socialsoftware.mono2micro.utils.Metrics;
+import pt.ist.socialsoftware.mono2micro.utils.Utils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Metrics of a decomposition if some of its entities were moved to other clusters, without changing the
+ * decomposition.
+ *
+ * Each reassignment is evaluated on a copy of the clusters that shares, read only, the controllers and local
+ * transactions graphs of the last calculation. Only the controllers that access a moved entity read their
+ * traces again, from memory after the first time, and only them and the controllers that access the same
+ * entities have their complexity recalculated.
+ */
+public class MoveEvaluator {
+	public static class Evaluation {
+		public float complexity;
+		public float performance;
+		public float cohesion;
+		public float coupling;
+
+		public Evaluation(
+			float complexity,
+			float performance,
+			float cohesion,
+			float coupling
+		) {
+			this.complexity = complexity;
+			this.performance = performance;
+			this.cohesion = cohesion;
+			this.coupling = coupling;
+		}
+	}
+
+	// only changed by its owner, between evaluations, so it must not be a decomposition other threads can change,
+	// e.g. it is a copy from CodebaseManager.getDecomposition and never the cached one
+	private final Decomposition decomposition;
+	private final String datafilePath;
+	private final int tracesMaxLimit;
+	private final Constants.TraceType traceType;
+
+	private final Map<String, List<TraceDto>> controllersTraces = new HashMap<>();
+	private ControllerTracesIterator iter;
+
+	public MoveEvaluator(
+		Decomposition decomposition,
+		Codebase codebase,
+		String profile,
+		int tracesMaxLimit,
+		Constants.TraceType traceType
+	)
+		throws Exception
+	{
+		// without an up to date calculation, a copy is calculated instead of changing the decomposition
+		this.decomposition = decomposition.hasMetricsStateFor(codebase, profile, tracesMaxLimit, traceType) ?
+			decomposition :
+			decomposition.copyWithMetrics(codebase, profile, tracesMaxLimit, traceType);
+
+		this.datafilePath = codebase.getDatafilePath();
+		this.tracesMaxLimit = tracesMaxLimit;
+		this.traceType = traceType;
+	}
+
+	public Decomposition getDecomposition() { return decomposition; }
+
+	/**
+	 * Evaluates the moves in parallel, returning their evaluations in the same order.
+	 */
+	public List<MoveEvaluationDto> evaluate(
+		List<MoveDto> moves,
+		int parallelism
+	)
+		throws Exception
+	{
+		List<Map<Short, String>> reassignments = new ArrayList<>();
+
+		for (MoveDto move : moves) {
+			validate(move);
+			reassignments.add(Collections.singletonMap(move.getEntityID(), move.getToCluster()));
+		}
+
+		ExecutorService pool = Executors.newWorkStealingPool(parallelism);
+		List<Evaluation> evaluations;
+
+		try {
+			evaluations = evaluate(reassignments, pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		List<MoveEvaluationDto> moveEvaluations = new ArrayList<>();
+
+		for (int i = 0; i < moves.size(); i++) {
+			MoveDto move = moves.get(i);
+			Evaluation evaluation = evaluations.get(i);
+
+			MoveEvaluationDto moveEvaluation = new MoveEvaluationDto();
+			moveEvaluation.setEntityID(move.getEntityID());
+			moveEvaluation.setFromCluster(decomposition.getEntityIDToClusterName().get(move.getEntityID()));
+			moveEvaluation.setToCluster(move.getToCluster());
+
+			moveEvaluation.setComplexity(evaluation.complexity);
+			moveEvaluation.setPerformance(evaluation.performance);
+			moveEvaluation.setCohesion(evaluation.cohesion);
+			moveEvaluation.setCoupling(evaluation.coupling);
+
+			moveEvaluation.setComplexityDelta(round(evaluation.complexity - decomposition.getComplexity()));
+			moveEvaluation.setPerformanceDelta(round(evaluation.performance - decomposition.getPerformance()));
+			moveEvaluation.setCohesionDelta(round(evaluation.cohesion - decomposition.getCohesion()));
+			moveEvaluation.setCouplingDelta(round(evaluation.coupling - decomposition.getCoupling()));
+
+			moveEvaluations.add(moveEvaluation);
+		}
+
+		return moveEvaluations;
+	}
+
+	/**
+	 * Evaluates the reassignments on the given pool, returning their evaluations in the same order.
+	 */
+	public List<Evaluation> evaluate(
+		List<Map<Short, String>> reassignments,
+		ExecutorService pool
+	)
+		throws Exception
+	{
+		List<Future<Evaluation>> futures = new ArrayList<>();
+
+		for (Map<Short, String> reassignment : reassignments)
+			futures.add(pool.submit(() -> evaluate(reassignment)));
+
+		List<Evaluation> evaluations = new ArrayList<>();
+
+		for (Future<Evaluation> future : futures) {
+			try {
+				evaluations.add(future.get());
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+		}
+
+		return evaluations;
+	}
+
+	private void validate(MoveDto move) {
+		String fromClusterName = decomposition.getEntityIDToClusterName().get(move.getEntityID());
+
+		if (fromClusterName == null)
+			throw new IllegalArgumentException("Entity " + move.getEntityID() + " is not assigned to a cluster");
+
+		if (!decomposition.clusterExists(move.getToCluster()))
+			throw new IllegalArgumentException("Cluster with ID: " + move.getToCluster() + " not found");
+
+		if (fromClusterName.equals(move.getToCluster()))
+			throw new IllegalArgumentException("Entity " + move.getEntityID() + " is already in cluster " + fromClusterName);
+
+		// the cohesion of an empty cluster is undefined
+		if (decomposition.getCluster(fromClusterName).getEntities().size() == 1)
+			throw new IllegalArgumentException("Entity " + move.getEntityID() + " is the only entity of cluster " + fromClusterName);
+	}
+
+	/**
+	 * Metrics if every entity of the reassignment was moved to its cluster, which is created when it does
+	 * not exist. Clusters left without entities are dropped.
+	 */
+	public Evaluation evaluate(Map<Short, String> reassignment)
+		throws IOException
+	{
+		Decomposition.MetricsState metricsState = decomposition.getMetricsState();
+
+		Decomposition scratch = new Decomposition();
+		scratch.setEntityIDToClusterName(new HashMap<>(decomposition.getEntityIDToClusterName()));
+
+		// clusters changed by the reassignment, the entities of the others are shared
+		Map<String, Set<Short>> changedClusters = new HashMap<>();
+
+		for (Map.Entry<Short, String> entry : reassignment.entrySet()) {
+			short entityID = entry.getKey();
+			String fromClusterName = decomposition.getEntityIDToClusterName().get(entityID);
+			String toClusterName = entry.getValue();
+
+			changedClusters.computeIfAbsent(
+				fromClusterName,
+				name -> new HashSet<>(decomposition.getCluster(name).getEntities())
+			).remove(entityID);
+
+			changedClusters.computeIfAbsent(
+				toClusterName,
+				name -> decomposition.clusterExists(name) ? new HashSet<>(decomposition.getCluster(name).getEntities()) : new HashSet<>()
+			).add(entityID);
+
+			scratch.putEntity(entityID, toClusterName);
+		}
+
+		for (Cluster cluster : decomposition.getClusters().values())
+			if (!changedClusters.containsKey(cluster.getName()))
+				scratch.addCluster(new Cluster(cluster.getName(), cluster.getEntities()));
+
+		for (Map.Entry<String, Set<Short>> entry : changedClusters.entrySet())
+			if (!entry.getValue().isEmpty())
+				scratch.addCluster(new Cluster(entry.getKey(), entry.getValue()));
+
+		// the local transactions of the controllers that access the entities change
+		Set<String> affectedControllers = metricsState.getControllersThatAccess(reassignment.keySet());
+
+		Map<String, Controller> controllers = new HashMap<>(decomposition.getControllers());
+		Map<String, Decomposition.GetLocalTransactionsGraphAndControllerPerformanceResult> affectedControllersGraphs = new HashMap<>();
+
+		Map<Short, Short> entityIDToClusterID = scratch.getEntityIDToClusterID();
+
+		for (String controllerName : affectedControllers) {
+			Controller controller = new Controller(controllerName);
+			Iterator<TraceDto> traces = getControllerTraces(controllerName).iterator();
+
+			affectedControllersGraphs.put(
+				controllerName,
+				scratch.addCostlyAccessesAndGetLocalTransactionsGraph(
+					() -> traces.hasNext() ? traces.next() : null,
+					controller,
+					entityIDToClusterID,
+					tracesMaxLimit,
+					traceType
+				)
+			);
+
+			controllers.put(controllerName, controller);
+		}
+
+		scratch.setControllers(controllers);
+
+		Utils.GetControllersClustersAndClustersControllersResult result =
+			Utils.getControllersClustersAndClustersControllers(
+				scratch.getClusters().values(),
+				controllers.values()
+			);
+
+		Map<String, Set<Cluster>> controllersClusters = result.controllersClusters;
+
+		// the complexity of a controller depends on the controllers that access the same entities
+		Set<String> dirtyControllers = new HashSet<>(affectedControllers);
+
+		for (String controllerName : affectedControllers)
+			dirtyControllers.addAll(
+				metricsState.getControllersThatAccess(controllers.get(controllerName).getEntities().keySet())
+			);
+
+		EntityControllersIndex entityControllersIndex = new EntityControllersIndex(
+			controllers.values(),
+			controllersClusters
+		);
+
+		float complexity = 0;
+		float performance = 0;
+
+		for (Controller controller : controllers.values()) {
+			String controllerName = controller.getName();
+
+			Decomposition.GetLocalTransactionsGraphAndControllerPerformanceResult controllerGraph = affectedControllersGraphs.containsKey(controllerName) ?
+				affectedControllersGraphs.get(controllerName) :
+				metricsState.getControllerGraph(controllerName);
+
+			if (dirtyControllers.contains(controllerName)) {
+				complexity += Metrics.calculateControllerComplexityAndClusterDependencies(
+					scratch,
+					controllerName,
+					controllersClusters,
+					entityControllersIndex,
+					controllerGraph.localTransactionsGraph
+				);
+
+			} else {
+				complexity += controller.getComplexity();
+
+				if (controllersClusters.get(controllerName).size() > 1)
+					Metrics.calculateClusterDependencies(
+						scratch,
+						controllerGraph.localTransactionsGraph
+					);
+			}
+
+			performance += controllerGraph.performance;
+		}
+
+		// the cohesion of a cluster depends on its entities and on the controllers that touch it
+		Set<String> dirtyClusters = new HashSet<>(changedClusters.keySet());
+
+		for (String controllerName : dirtyControllers)
+			for (Cluster cluster : controllersClusters.get(controllerName))
+				dirtyClusters.add(cluster.getName());
+
+		float cohesion = 0;
+		float coupling = 0;
+
+		for (Cluster cluster : scratch.getClusters().values()) {
+			if (dirtyClusters.contains(cluster.getName()))
+				Metrics.calculateClusterComplexityAndCohesion(
+					cluster,
+					result.clustersControllers
+				);
+			else
+				cluster.setCohesion(decomposition.getCluster(cluster.getName()).getCohesion());
+
+			Metrics.calculateClusterCoupling(
+				cluster,
+				scratch.getClusters()
+			);
+
+			cohesion += cluster.getCohesion();
+			coupling += cluster.getCoupling();
+		}
+
+		return new Evaluation(
+			round(complexity / controllersClusters.size()),
+			round(performance / controllersClusters.size()),
+			round(cohesion / scratch.getClusters().size()),
+			round(coupling / scratch.getClusters().size())
+		);
+	}
+
+	// the traces of a controller are read once and shared by every move that affects it
+	private synchronized List<TraceDto> getControllerTraces(String controllerName)
+		throws IOException
+	{
+		List<TraceDto> traces = controllersTraces.get(controllerName);
+
+		if (traces == null) {
+			if (iter == null)
+				iter = new ControllerTracesIterator(datafilePath, 0);
+
+			iter.nextControllerWithName(controllerName);
+			traces = new ArrayList<>();
+
+			while (iter.hasMoreTraces())
+				traces.add(iter.nextTrace());
+
+			controllersTraces.put(controllerName, traces);
+		}
+
+		return traces;
+	}
+
+	private static float round(float value) {
+		return BigDecimal
+			.valueOf(value)
+			.setScale(2, RoundingMode.HALF_UP)
+			.floatValue();
+	}
+}
@@ -0,0 +1,16 @@
+package pt.ist.socialsoftware.mono2micro.dto;
+
+import java.util.LinkedHashMap;
+
+public class AnalyserResultsDto {
+    private int total; // cuts in every range, before the offset and limit are applied
+    private LinkedHashMap<String, CutInfoDto> cuts = new LinkedHashMap<>(); // <cutName, CutInfoDto>, in the query's order
+
+    public int getTotal() { return total; }
+
+    public void setTotal(int total) { this.total = total; }
+
+    public LinkedHashMap<String, CutInfoDto> getCuts() { return cuts; }
+
+    public void setCuts(LinkedHashMap<String, CutInfoDto> cuts) { this.cuts = cuts; }
+}
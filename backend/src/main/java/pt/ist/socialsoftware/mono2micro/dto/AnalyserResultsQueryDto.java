@@ -0,0 +1,37 @@
+package pt.ist.socialsoftware.mono2micro.dto;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class AnalyserResultsQueryDto {
+    private Map<String, RangeDto> ranges = new HashMap<>(); // <metric, range the cuts' values must be in>
+    private String sortBy; // a metric, null keeps the order of the analyser results file
+    private boolean ascending = false;
+    private int offset = 0;
+    private int limit = 0; // default is 0 which means, every cut after the offset
+    private boolean includeControllerSpecs = false;
+
+    public Map<String, RangeDto> getRanges() { return ranges; }
+
+    public void setRanges(Map<String, RangeDto> ranges) { this.ranges = ranges; }
+
+    public String getSortBy() { return sortBy; }
+
+    public void setSortBy(String sortBy) { this.sortBy = sortBy; }
+
+    public boolean isAscending() { return ascending; }
+
+    public void setAscending(boolean ascending) { this.ascending = ascending; }
+
+    public int getOffset() { return offset; }
+
+    public void setOffset(int offset) { this.offset = offset; }
+
+    public int getLimit() { return limit; }
+
+    public void setLimit(int limit) { this.limit = limit; }
+
+    public boolean isIncludeControllerSpecs() { return includeControllerSpecs; }
+
+    public void setIncludeControllerSpecs(boolean includeControllerSpecs) { this.includeControllerSpecs = includeControllerSpecs; }
+}
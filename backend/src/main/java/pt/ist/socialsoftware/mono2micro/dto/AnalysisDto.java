@@ -13,6 +13,9 @@ public class AnalysisDto {
     private int falsePositive;
     private int falseNegative;
     private List<String[]> falsePairs = new ArrayList<>();
+    private int falsePairsCount;
+    private int falsePairsOffset; // page of false pairs to return
+    private Integer falsePairsLimit; // null for every false pair
     private float accuracy;
     private float precision;
     private float recall;
@@ -71,6 +74,30 @@ public class AnalysisDto {
         this.falsePairs.add(falsePair);
     }
 
+    public int getFalsePairsCount() {
+        return falsePairsCount;
+    }
+
+    public void setFalsePairsCount(int falsePairsCount) {
+        this.falsePairsCount = falsePairsCount;
+    }
+
+    public int getFalsePairsOffset() {
+        return falsePairsOffset;
+    }
+
+    public void setFalsePairsOffset(int falsePairsOffset) {
+        this.falsePairsOffset = falsePairsOffset;
+    }
+
+    public Integer getFalsePairsLimit() {
+        return falsePairsLimit;
+    }
+
+    public void setFalsePairsLimit(Integer falsePairsLimit) {
+        this.falsePairsLimit = falsePairsLimit;
+    }
+
     public int getFalseNegative() {
         return falseNegative;
     }
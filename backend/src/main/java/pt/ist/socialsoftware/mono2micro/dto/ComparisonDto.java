@@ -0,0 +1,33 @@
+package pt.ist.socialsoftware.mono2micro.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// [i][j] compares decomposition j against decomposition i, as an analysis with decomposition i as decomposition1
+public class ComparisonDto {
+    private List<String> decompositionNames = new ArrayList<>();
+    private double[][] mojoFM;
+    private float[][] fmeasure;
+    private float[][] precision;
+    private float[][] recall;
+
+    public List<String> getDecompositionNames() { return decompositionNames; }
+
+    public void setDecompositionNames(List<String> decompositionNames) { this.decompositionNames = decompositionNames; }
+
+    public double[][] getMojoFM() { return mojoFM; }
+
+    public void setMojoFM(double[][] mojoFM) { this.mojoFM = mojoFM; }
+
+    public float[][] getFmeasure() { return fmeasure; }
+
+    public void setFmeasure(float[][] fmeasure) { this.fmeasure = fmeasure; }
+
+    public float[][] getPrecision() { return precision; }
+
+    public void setPrecision(float[][] precision) { this.precision = precision; }
+
+    public float[][] getRecall() { return recall; }
+
+    public void setRecall(float[][] recall) { this.recall = recall; }
+}
@@ -0,0 +1,54 @@
+package pt.ist.socialsoftware.mono2micro.dto;
+
+public class JobDto {
+    private String id;
+    private String codebaseName;
+    private String type;
+    private String status; // QUEUED, RUNNING, DONE, FAILED or CANCELLED
+    private int done;
+    private int total; // default is 0 which means, the progress is unknown
+    private String error;
+    private long createdTime;
+    private long startedTime;
+    private long finishedTime;
+
+    public String getId() { return id; }
+
+    public void setId(String id) { this.id = id; }
+
+    public String getCodebaseName() { return codebaseName; }
+
+    public void setCodebaseName(String codebaseName) { this.codebaseName = codebaseName; }
+
+    public String getType() { return type; }
+
+    public void setType(String type) { this.type = type; }
+
+    public String getStatus() { return status; }
+
+    public void setStatus(String status) { this.status = status; }
+
+    public int getDone() { return done; }
+
+    public void setDone(int done) { this.done = done; }
+
+    public int getTotal() { return total; }
+
+    public void setTotal(int total) { this.total = total; }
+
+    public String getError() { return error; }
+
+    public void setError(String error) { this.error = error; }
+
+    public long getCreatedTime() { return createdTime; }
+
+    public void setCreatedTime(long createdTime) { this.createdTime = createdTime; }
+
+    public long getStartedTime() { return startedTime; }
+
+    public void setStartedTime(long startedTime) { this.startedTime = startedTime; }
+
+    public long getFinishedTime() { return finishedTime; }
+
+    public void setFinishedTime(long finishedTime) { this.finishedTime = finishedTime; }
+}
@@ -0,0 +1,29 @@
+package pt.ist.socialsoftware.mono2micro.dto;
+
+public class MoveDto {
+    private short entityID;
+    private String toCluster;
+
+    public MoveDto() {}
+
+    public MoveDto(short entityID, String toCluster) {
+        this.entityID = entityID;
+        this.toCluster = toCluster;
+    }
+
+    public short getEntityID() {
+        return entityID;
+    }
+
+    public void setEntityID(short entityID) {
+        this.entityID = entityID;
+    }
+
+    public String getToCluster() {
+        return toCluster;
+    }
+
+    public void setToCluster(String toCluster) {
+        this.toCluster = toCluster;
+    }
+}
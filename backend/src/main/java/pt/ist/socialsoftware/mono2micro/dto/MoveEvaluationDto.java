@@ -0,0 +1,105 @@
+package pt.ist.socialsoftware.mono2micro.dto;
+
+public class MoveEvaluationDto {
+    private short entityID;
+    private String fromCluster;
+    private String toCluster;
+    private float complexity;
+    private float performance;
+    private float cohesion;
+    private float coupling;
+    private float complexityDelta; // relative to the decomposition without the move
+    private float performanceDelta;
+    private float cohesionDelta;
+    private float couplingDelta;
+
+    public MoveEvaluationDto() {}
+
+    public short getEntityID() {
+        return entityID;
+    }
+
+    public void setEntityID(short entityID) {
+        this.entityID = entityID;
+    }
+
+    public String getFromCluster() {
+        return fromCluster;
+    }
+
+    public void setFromCluster(String fromCluster) {
+        this.fromCluster = fromCluster;
+    }
+
+    public String getToCluster() {
+        return toCluster;
+    }
+
+    public void setToCluster(String toCluster) {
+        this.toCluster = toCluster;
+    }
+
+    public float getComplexity() {
+        return complexity;
+    }
+
+    public void setComplexity(float complexity) {
+        this.complexity = complexity;
+    }
+
+    public float getPerformance() {
+        return performance;
+    }
+
+    public void setPerformance(float performance) {
+        this.performance = performance;
+    }
+
+    public float getCohesion() {
+        return cohesion;
+    }
+
+    public void setCohesion(float cohesion) {
+        this.cohesion = cohesion;
+    }
+
+    public float getCoupling() {
+        return coupling;
+    }
+
+    public void setCoupling(float coupling) {
+        this.coupling = coupling;
+    }
+
+    public float getComplexityDelta() {
+        return complexityDelta;
+    }
+
+    public void setComplexityDelta(float complexityDelta) {
+        this.complexityDelta = complexityDelta;
+    }
+
+    public float getPerformanceDelta() {
+        return performanceDelta;
+    }
+
+    public void setPerformanceDelta(float performanceDelta) {
+        this.performanceDelta = performanceDelta;
+    }
+
+    public float getCohesionDelta() {
+        return cohesionDelta;
+    }
+
+    public void setCohesionDelta(float cohesionDelta) {
+        this.cohesionDelta = cohesionDelta;
+    }
+
+    public float getCouplingDelta() {
+        return couplingDelta;
+    }
+
+    public void setCouplingDelta(float couplingDelta) {
+        this.couplingDelta = couplingDelta;
+    }
+}
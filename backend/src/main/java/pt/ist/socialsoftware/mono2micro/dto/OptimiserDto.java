@@ -0,0 +1,74 @@
+package pt.ist.socialsoftware.mono2micro.dto;
+
+public class OptimiserDto {
+    private String name; // of the decomposition to create
+    private float complexityWeight = 1;
+    private float performanceWeight = 1;
+    private float cohesionWeight = 1;
+    private float couplingWeight = 1;
+    private int minClusterSize = 1;
+    private int maxClusterSize; // default is 0 which means, no limit
+    private float clusterSizePenalty = 1; // per entity above or below the limits
+    private int maxIterations = 1000;
+    private int maxSeconds = 60;
+    private int candidatesPerIteration; // default is 0 which means, 2 per thread
+    private float initialTemperature = 0.1f;
+    private float coolingRate = 0.99f;
+    private long seed; // default is 0 which means, random
+
+    public String getName() { return name; }
+
+    public void setName(String name) { this.name = name; }
+
+    public float getComplexityWeight() { return complexityWeight; }
+
+    public void setComplexityWeight(float complexityWeight) { this.complexityWeight = complexityWeight; }
+
+    public float getPerformanceWeight() { return performanceWeight; }
+
+    public void setPerformanceWeight(float performanceWeight) { this.performanceWeight = performanceWeight; }
+
+    public float getCohesionWeight() { return cohesionWeight; }
+
+    public void setCohesionWeight(float cohesionWeight) { this.cohesionWeight = cohesionWeight; }
+
+    public float getCouplingWeight() { return couplingWeight; }
+
+    public void setCouplingWeight(float couplingWeight) { this.couplingWeight = couplingWeight; }
+
+    public int getMinClusterSize() { return minClusterSize; }
+
+    public void setMinClusterSize(int minClusterSize) { this.minClusterSize = minClusterSize; }
+
+    public int getMaxClusterSize() { return maxClusterSize; }
+
+    public void setMaxClusterSize(int maxClusterSize) { this.maxClusterSize = maxClusterSize; }
+
+    public float getClusterSizePenalty() { return clusterSizePenalty; }
+
+    public void setClusterSizePenalty(float clusterSizePenalty) { this.clusterSizePenalty = clusterSizePenalty; }
+
+    public int getMaxIterations() { return maxIterations; }
+
+    public void setMaxIterations(int maxIterations) { this.maxIterations = maxIterations; }
+
+    public int getMaxSeconds() { return maxSeconds; }
+
+    public void setMaxSeconds(int maxSeconds) { this.maxSeconds = maxSeconds; }
+
+    public int getCandidatesPerIteration() { return candidatesPerIteration; }
+
+    public void setCandidatesPerIteration(int candidatesPerIteration) { this.candidatesPerIteration = candidatesPerIteration; }
+
+    public float getInitialTemperature() { return initialTemperature; }
+
+    public void setInitialTemperature(float initialTemperature) { this.initialTemperature = initialTemperature; }
+
+    public float getCoolingRate() { return coolingRate; }
+
+    public void setCoolingRate(float coolingRate) { this.coolingRate = coolingRate; }
+
+    public long getSeed() { return seed; }
+
+    public void setSeed(long seed) { this.seed = seed; }
+}
@@ -0,0 +1,72 @@
+package pt.ist.socialsoftware.mono2micro.dto;
+
+import java.util.Map;
+import java.util.Set;
+
+public class OptimiserProgressDto {
+    private String status; // RUNNING, DONE, STOPPED, CANCELLED or FAILED
+    private String error;
+    private int iteration;
+    private long elapsedMilliseconds;
+    private float temperature;
+    private double objective; // of the current decomposition
+    private double bestObjective;
+    private float bestComplexity;
+    private float bestPerformance;
+    private float bestCohesion;
+    private float bestCoupling;
+    private Map<String, Set<Short>> bestClusters; // clusterName -> entityIDs
+    private String decompositionName; // set once the best decomposition is saved
+
+    public String getStatus() { return status; }
+
+    public void setStatus(String status) { this.status = status; }
+
+    public String getError() { return error; }
+
+    public void setError(String error) { this.error = error; }
+
+    public int getIteration() { return iteration; }
+
+    public void setIteration(int iteration) { this.iteration = iteration; }
+
+    public long getElapsedMilliseconds() { return elapsedMilliseconds; }
+
+    public void setElapsedMilliseconds(long elapsedMilliseconds) { this.elapsedMilliseconds = elapsedMilliseconds; }
+
+    public float getTemperature() { return temperature; }
+
+    public void setTemperature(float temperature) { this.temperature = temperature; }
+
+    public double getObjective() { return objective; }
+
+    public void setObjective(double objective) { this.objective = objective; }
+
+    public double getBestObjective() { return bestObjective; }
+
+    public void setBestObjective(double bestObjective) { this.bestObjective = bestObjective; }
+
+    public float getBestComplexity() { return bestComplexity; }
+
+    public void setBestComplexity(float bestComplexity) { this.bestComplexity = bestComplexity; }
+
+    public float getBestPerformance() { return bestPerformance; }
+
+    public void setBestPerformance(float bestPerformance) { this.bestPerformance = bestPerformance; }
+
+    public float getBestCohesion() { return bestCohesion; }
+
+    public void setBestCohesion(float bestCohesion) { this.bestCohesion = bestCohesion; }
+
+    public float getBestCoupling() { return bestCoupling; }
+
+    public void setBestCoupling(float bestCoupling) { this.bestCoupling = bestCoupling; }
+
+    public Map<String, Set<Short>> getBestClusters() { return bestClusters; }
+
+    public void setBestClusters(Map<String, Set<Short>> bestClusters) { this.bestClusters = bestClusters; }
+
+    public String getDecompositionName() { return decompositionName; }
+
+    public void setDecompositionName(String decompositionName) { this.decompositionName = decompositionName; }
+}
@@ -0,0 +1,22 @@
+package pt.ist.socialsoftware.mono2micro.dto;
+
+// both bounds are inclusive, a null bound leaves that side open
+public class RangeDto {
+    private Double min;
+    private Double max;
+
+    public RangeDto() {}
+
+    public RangeDto(Double min, Double max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    public Double getMin() { return min; }
+
+    public void setMin(Double min) { this.min = min; }
+
+    public Double getMax() { return max; }
+
+    public void setMax(Double max) { this.max = max; }
+}
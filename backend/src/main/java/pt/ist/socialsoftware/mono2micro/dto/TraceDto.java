@@ -3,14 +3,17 @@ package pt.ist.socialsoftware.mono2micro.dto;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import pt.ist.socialsoftware.mono2micro.utils.Pair;
 
 import java.util.*;
 
 public class TraceDto {
+	public static final long EMPTY_CONTENT_HASH = 0xcbf29ce484222325L;
+	private static final long CONTENT_HASH_PRIME = 0x100000001b3L;
+
 	protected int id;
 	protected int frequency;
 	private List<ReducedTraceElementDto> elements; // either Rules or Accesses
+	private Long contentHash; // computed when first needed unless given by the trace store
 
 	public TraceDto() {}
 
@@ -38,110 +41,171 @@ public class TraceDto {
 	public void setElements(List<ReducedTraceElementDto> elements) { this.elements = elements; }
 
 	@JsonIgnore
-	public int getUncompressedSize() {
-		int counter = 0;
+	public boolean hasElements() { return elements != null && elements.size() > 0; }
+
+	/**
+	 * 64-bit hash of the elements of a trace, so that identical traces of a controller are only evaluated once.
+	 * It has the FNV offset basis and prime, but xors and multiplies whole values instead of single bytes, so
+	 * it is weaker than FNV-1a: equal hashes only point to traces that may be equal, see hasSameElements.
+	 * An access is hashed as its entity ID and mode and a rule as its count and mode 0, with the occurrences.
+	 */
+	public static long hashElement(
+		long hash,
+		int value,
+		byte mode,
+		int occurrences
+	) {
+		hash = (hash ^ value) * CONTENT_HASH_PRIME;
+		hash = (hash ^ mode) * CONTENT_HASH_PRIME;
+		return (hash ^ occurrences) * CONTENT_HASH_PRIME;
+	}
 
-		if (elements == null) return counter;
+	@JsonIgnore
+	public long getContentHash() {
+		if (contentHash == null) {
+			long hash = EMPTY_CONTENT_HASH;
+
+			if (elements != null) {
+				for (ReducedTraceElementDto element : elements) {
+					if (element instanceof RuleDto) {
+						hash = hashElement(hash, ((RuleDto) element).getCount(), (byte) 0, element.getOccurrences());
+
+					} else {
+						AccessDto a = (AccessDto) element;
+						hash = hashElement(hash, a.getEntityID(), a.getMode(), element.getOccurrences());
+					}
+				}
+			}
 
-		LinkedList<Pair<Integer, RuleDto>> ll = new LinkedList<>();
+			contentHash = hash;
+		}
 
-		int elementsListSize = elements.size();
+		return contentHash;
+	}
 
-		for (int i = 0; i < elementsListSize; i++) {
-			while (ll.size() != 0) {
-				Pair<Integer, RuleDto> lastPair = ll.getLast();
+	public void setContentHash(long contentHash) { this.contentHash = contentHash; }
 
-				if (lastPair.getFirst() + lastPair.getSecond().getCount() < i) {
-					ll.removeLast();
-				}
+	// whether the traces have the same elements, which the content hash alone does not tell
+	public boolean hasSameElements(TraceDto other) {
+		if (getContentHash() != other.getContentHash())
+			return false;
 
-				else {
-					break;
+		List<ReducedTraceElementDto> elements = hasElements() ? getElements() : Collections.emptyList();
+		List<ReducedTraceElementDto> otherElements = other.hasElements() ? other.getElements() : Collections.emptyList();
 
-				}
-			}
+		if (elements.size() != otherElements.size())
+			return false;
 
-			if (elements.get(i) instanceof RuleDto)
-				ll.add(new Pair<>(i, (RuleDto) elements.get(i)));
+		for (int i = 0; i < elements.size(); i++) {
+			ReducedTraceElementDto element = elements.get(i);
+			ReducedTraceElementDto otherElement = otherElements.get(i);
 
-			else {
-				int multiplier = 1;
+			// the equals of an access leaves its occurrences out
+			if (!element.equals(otherElement) || element.getOccurrences() != otherElement.getOccurrences())
+				return false;
+		}
 
-				for (Pair<Integer, RuleDto> pair : ll)
-					multiplier *= pair.getSecond().getOccurrences();
+		return true;
+	}
 
-				counter += elements.get(i).getOccurrences() * multiplier;
-			}
-		}
+	public interface AccessVisitor {
+		void visit(short entityID, byte mode, int occurrences);
+	}
+
+	@JsonIgnore
+	public int getUncompressedSize() {
+		int[] counter = {0};
+
+		visitCompressedAccesses((entityID, mode, occurrences) -> counter[0] += occurrences);
 
-		return counter;
+		return counter[0];
 	}
 
-	private List<ReducedTraceElementDto> expand(
-		List<ReducedTraceElementDto> elements,
+	/**
+	 * Visits the accesses in the order of the uncompressed trace without building it: the body of a rule is
+	 * visited up to maxOccurrences times and the consecutive repetitions of an access are visited once, with
+	 * up to maxOccurrences occurrences.
+	 */
+	public void visitAccesses(
+		int maxOccurrences,
+		AccessVisitor visitor
+	) {
+		if (elements != null)
+			visitAccesses(0, elements.size(), maxOccurrences, visitor);
+	}
+
+	private void visitAccesses(
 		int from,
 		int to,
-		int maxOccurrences
+		int maxOccurrences,
+		AccessVisitor visitor
 	) {
-		List<ReducedTraceElementDto> accesses = new ArrayList<>();
-
-		if (elements == null || elements.size() == 0) return accesses;
-
 		int i = from;
 
 		while (i < to) {
 			ReducedTraceElementDto element = elements.get(i);
-
-			List<ReducedTraceElementDto> expandedElements = new ArrayList<>();
+			int occurrences = Math.min(element.getOccurrences(), maxOccurrences);
 
 			if (element instanceof RuleDto) {
-				RuleDto r = (RuleDto) element;
+				int count = ((RuleDto) element).getCount();
 
-				expandedElements.addAll(
-					expand(
-						elements,
-						i + 1,
-						i + 1 + r.getCount(),
-						maxOccurrences
-					)
-				);
+				for (int j = 0; j < occurrences; j++)
+					visitAccesses(i + 1, i + 1 + count, maxOccurrences, visitor);
 
-				i += 1 + r.getCount();
+				i += 1 + count;
 
 			} else {
 				AccessDto a = (AccessDto) element;
 
-				AccessDto newAccess = new AccessDto();
-				newAccess.setOccurrences(0);
-				newAccess.setEntityID(a.getEntityID());
-				newAccess.setMode(a.getMode());
+				if (occurrences > 0)
+					visitor.visit(a.getEntityID(), a.getMode(), occurrences);
 
-				expandedElements.add(newAccess);
 				i++;
 			}
-
-			int max = Math.min(element.getOccurrences(), maxOccurrences);
-
-			for (int j = 0; j < max; j++)
-				accesses.addAll(expandedElements);
 		}
+	}
 
-		return accesses;
+	/**
+	 * Visits every access of the compressed trace once, with its occurrences multiplied by the occurrences
+	 * of the rules that contain it, so that the cost is proportional to the compressed size.
+	 */
+	public void visitCompressedAccesses(AccessVisitor visitor) {
+		if (elements != null)
+			visitCompressedAccesses(0, elements.size(), 1, visitor);
 	}
 
-	@JsonIgnore
-	public List<AccessDto> expand(int maxOccurrences) {
-		return (List<AccessDto>) ((List<?>) this.expand(
-			elements,
-			0,
-			elements == null ? 0 : elements.size(),
-			maxOccurrences)
-		);
+	private void visitCompressedAccesses(
+		int from,
+		int to,
+		int multiplier,
+		AccessVisitor visitor
+	) {
+		int i = from;
+
+		while (i < to) {
+			ReducedTraceElementDto element = elements.get(i);
+
+			if (element instanceof RuleDto) {
+				int count = ((RuleDto) element).getCount();
+
+				visitCompressedAccesses(i + 1, i + 1 + count, multiplier * element.getOccurrences(), visitor);
+
+				i += 1 + count;
+
+			} else {
+				AccessDto a = (AccessDto) element;
+
+				visitor.visit(a.getEntityID(), a.getMode(), element.getOccurrences() * multiplier);
+
+				i++;
+			}
+		}
 	}
 
 	@JsonIgnore
 	public List<AccessDto> getAccesses() { // no decompression
 		List<AccessDto> accesses = new ArrayList<>();
+		List<ReducedTraceElementDto> elements = getElements();
 
 		if (elements != null) {
 			elements.forEach(e -> {
@@ -157,21 +221,15 @@ public class TraceDto {
 	public HashSet<String> getAccessesSet() {
 		HashSet<String> accessesSet = new HashSet<>();
 
-		if (elements != null) {
-			elements.forEach(e -> {
-				if (e instanceof AccessDto) {
-					AccessDto a = (AccessDto) e;
-
-					String accessString = String.join(
-						"-",
-						String.valueOf(a.getEntityID()),
-						String.valueOf(a.getMode())
-					);
+		visitCompressedAccesses((entityID, mode, occurrences) -> {
+			String accessString = String.join(
+				"-",
+				String.valueOf(entityID),
+				String.valueOf(mode)
+			);
 
-					accessesSet.add(accessString);
-				}
-			});
-		}
+			accessesSet.add(accessString);
+		});
 
 		return accessesSet;
 	}
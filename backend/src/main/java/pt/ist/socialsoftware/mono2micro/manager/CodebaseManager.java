@@ -5,16 +5,22 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.core.util.DefaultIndenter;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
 import com.fasterxml.jackson.databind.*;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.springframework.web.multipart.MultipartFile;
 import pt.ist.socialsoftware.mono2micro.domain.Codebase;
-import pt.ist.socialsoftware.mono2micro.domain.Controller;
 import pt.ist.socialsoftware.mono2micro.domain.Dendrogram;
 import pt.ist.socialsoftware.mono2micro.domain.Decomposition;
 import pt.ist.socialsoftware.mono2micro.dto.*;
+import pt.ist.socialsoftware.mono2micro.utils.AnalyserResultsIndex;
+import pt.ist.socialsoftware.mono2micro.utils.DatafileIndex;
+import pt.ist.socialsoftware.mono2micro.utils.DendrogramImage;
+import pt.ist.socialsoftware.mono2micro.utils.HierarchicalClustering;
+import pt.ist.socialsoftware.mono2micro.utils.Linkage;
+import pt.ist.socialsoftware.mono2micro.utils.SimilarityMatrix;
+import pt.ist.socialsoftware.mono2micro.utils.TraceStore;
 import pt.ist.socialsoftware.mono2micro.utils.Utils;
 
 import javax.management.openmbean.KeyAlreadyExistsException;
@@ -23,10 +29,13 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static pt.ist.socialsoftware.mono2micro.utils.Constants.CODEBASES_PATH;
+import static pt.ist.socialsoftware.mono2micro.utils.Constants.DOCUMENT_CACHE_FLUSH_DELAY;
+import static pt.ist.socialsoftware.mono2micro.utils.Constants.DOCUMENT_CACHE_MAX_ENTRIES;
+import static pt.ist.socialsoftware.mono2micro.utils.Constants.DOCUMENT_CACHE_MAX_SIZE;
 
 public class CodebaseManager {
 
@@ -34,12 +43,25 @@ public class CodebaseManager {
 
     private ObjectMapper objectMapper = null;
 
+	private final Set<String> migratedCodebases = new HashSet<>();
+
+	private final DocumentCache documentCache;
+
 	private CodebaseManager() {
 		objectMapper = new ObjectMapper();
 		objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+
+		documentCache = new DocumentCache(
+			DOCUMENT_CACHE_MAX_ENTRIES,
+			DOCUMENT_CACHE_MAX_SIZE,
+			DOCUMENT_CACHE_FLUSH_DELAY
+		);
+
+		// pending writes would otherwise be lost when the server stops
+		Runtime.getRuntime().addShutdownHook(new Thread(documentCache::flushAll));
 	}
 	
-	public static CodebaseManager getInstance() {
+	public static synchronized CodebaseManager getInstance() {
         if (instance == null)
         	instance = new CodebaseManager(); 
         return instance; 
@@ -82,20 +104,19 @@ public class CodebaseManager {
 	)
 		throws IOException
 	{
-		ObjectMapper objectMapper = new ObjectMapper();
-
-		objectMapper.setInjectableValues(
-			new InjectableValues.Std().addValue("codebaseDeserializableFields", deserializableFields)
-		);
-
-		ObjectReader reader = objectMapper.readerFor(Codebase.class);
-
-		File codebaseJSONFile = new File(CODEBASES_PATH + codebaseName + "/codebase.json");
+		String codebaseJSONPath = CODEBASES_PATH + codebaseName + "/codebase.json";
 
-		if (!codebaseJSONFile.exists())
+		if (!documentExists(codebaseJSONPath))
 			return null;
 
-		return reader.readValue(codebaseJSONFile);
+		migrateLegacyCodebaseFile(codebaseName);
+
+		return readDocumentWithFields(
+			codebaseJSONPath,
+			Codebase.class,
+			new InjectableValues.Std().addValue("codebaseDeserializableFields", deserializableFields),
+			deserializableFields
+		);
 	}
 
 	public List<Dendrogram> getCodebaseDendrogramsWithFields(
@@ -104,24 +125,22 @@ public class CodebaseManager {
 	)
 		throws IOException
 	{
-		ObjectMapper objectMapper = new ObjectMapper();
 		dendrogramDeserializableFields.add("name");
 
-		objectMapper.setInjectableValues(
-			new InjectableValues.Std()
-				.addValue("codebaseDeserializableFields", new HashSet<String>() {{ add("dendrograms"); }})
-				.addValue("dendrogramDeserializableFields", dendrogramDeserializableFields)
+		Codebase cb = getCodebaseWithFields(
+			codebaseName,
+			new HashSet<String>() {{ add("dendrogramNames"); }}
 		);
 
-		File codebaseJSONFile = new File(CODEBASES_PATH + codebaseName + "/codebase.json");
-
-		if (!codebaseJSONFile.exists())
+		if (cb == null)
 			return null;
 
-		ObjectReader reader = objectMapper.readerFor(Codebase.class);
-		Codebase cb = reader.readValue(codebaseJSONFile);
+		List<Dendrogram> dendrograms = new ArrayList<>();
 
-		return cb.getDendrograms();
+		for (String dendrogramName : cb.getDendrogramNames())
+			dendrograms.add(getDendrogramWithFields(codebaseName, dendrogramName, dendrogramDeserializableFields));
+
+		return dendrograms;
 	}
 
 	public Dendrogram getCodebaseDendrogramWithFields(
@@ -131,14 +150,14 @@ public class CodebaseManager {
 	)
 		throws Exception
 	{
-		return getCodebaseDendrogramsWithFields(
-			codebaseName,
-			dendrogramDeserializableFields
-		)
-			.stream()
-			.filter(dendrogram -> dendrogram.getName().equals(dendrogramName))
-			.findFirst()
-			.orElseThrow(() -> new Exception("Dendrogram " + dendrogramName + " not found"));
+		dendrogramDeserializableFields.add("name");
+
+		migrateLegacyCodebaseFile(codebaseName);
+
+		if (!documentExists(CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/dendrogram.json"))
+			throw new Exception("Dendrogram " + dendrogramName + " not found");
+
+		return getDendrogramWithFields(codebaseName, dendrogramName, dendrogramDeserializableFields);
 	}
 
 	public List<Decomposition> getCodebaseDecompositionsWithFields(
@@ -147,27 +166,26 @@ public class CodebaseManager {
 	)
 		throws Exception
 	{
-		ObjectMapper objectMapper = new ObjectMapper();
-
-		objectMapper.setInjectableValues(
-			new InjectableValues.Std()
-				.addValue("codebaseDeserializableFields", new HashSet<String>() {{ add("dendrograms"); }})
-				.addValue("dendrogramDeserializableFields", new HashSet<String>() {{ add("decompositions"); }})
-				.addValue("decompositionDeserializableFields", decompositionDeserializableFields)
+		List<Dendrogram> dendrograms = getCodebaseDendrogramsWithFields(
+			codebaseName,
+			new HashSet<String>() {{ add("decompositionNames"); }}
 		);
 
-		File codebaseJSONFile = new File(CODEBASES_PATH + codebaseName + "/codebase.json");
-
-		if (!codebaseJSONFile.exists())
+		if (dendrograms == null)
 			return null;
 
-		ObjectReader reader = objectMapper.readerFor(Codebase.class);
-		Codebase cb = reader.readValue(codebaseJSONFile);
+		List<Decomposition> decompositions = new ArrayList<>();
+
+		for (Dendrogram dendrogram : dendrograms)
+			for (String decompositionName : dendrogram.getDecompositionNames())
+				decompositions.add(getDecompositionWithFields(
+					codebaseName,
+					dendrogram.getName(),
+					decompositionName,
+					decompositionDeserializableFields
+				));
 
-		return cb.getDendrograms()
-			.stream()
-			.flatMap(dendrogram -> dendrogram.getDecompositions().stream())
-			.collect(Collectors.toList());
+		return decompositions;
 	}
 
 	public List<Decomposition> getDendrogramDecompositionsWithFields(
@@ -177,31 +195,25 @@ public class CodebaseManager {
 	)
 		throws Exception
 	{
-		ObjectMapper objectMapper = new ObjectMapper();
 		decompositionDeserializableFields.add("name");
 
-		objectMapper.setInjectableValues(
-			new InjectableValues.Std()
-				.addValue("codebaseDeserializableFields", new HashSet<String>() {{ add("dendrograms"); }})
-				.addValue("dendrogramDeserializableFields", new HashSet<String>() {{ add("name"); add("decompositions"); }})
-				.addValue("decompositionDeserializableFields", decompositionDeserializableFields)
+		Dendrogram d = getCodebaseDendrogramWithFields(
+			codebaseName,
+			dendrogramName,
+			new HashSet<String>() {{ add("decompositionNames"); }}
 		);
 
-		File codebaseJSONFile = new File(CODEBASES_PATH + codebaseName + "/codebase.json");
-
-		if (!codebaseJSONFile.exists())
-			return null;
-
-		ObjectReader reader = objectMapper.readerFor(Codebase.class);
-		Codebase cb = reader.readValue(codebaseJSONFile);
+		List<Decomposition> decompositions = new ArrayList<>();
 
-		Dendrogram d = cb.getDendrograms()
-							.stream()
-							.filter(dendrogram -> dendrogram.getName().equals(dendrogramName))
-							.findFirst()
-							.orElseThrow(() -> new Exception("Dendrogram " + dendrogramName + " not found"));
+		for (String decompositionName : d.getDecompositionNames())
+			decompositions.add(getDecompositionWithFields(
+				codebaseName,
+				dendrogramName,
+				decompositionName,
+				decompositionDeserializableFields
+			));
 
-		return d.getDecompositions();
+		return decompositions;
 	}
 
 	public Decomposition getDendrogramDecompositionWithFields(
@@ -212,15 +224,19 @@ public class CodebaseManager {
 	)
 		throws Exception
 	{
-		return getDendrogramDecompositionsWithFields(
+		decompositionDeserializableFields.add("name");
+
+		migrateLegacyCodebaseFile(codebaseName);
+
+		if (!documentExists(CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/" + decompositionName + "/decomposition.json"))
+			throw new Exception("Decomposition " + decompositionName + " not found");
+
+		return getDecompositionWithFields(
 			codebaseName,
 			dendrogramName,
+			decompositionName,
 			decompositionDeserializableFields
-		)
-			.stream()
-			.filter(decomposition -> decomposition.getName().equals(decompositionName))
-			.findFirst()
-			.orElseThrow(() -> new Exception("Decomposition " + decompositionName + " not found"));
+		);
 	}
 
 	public Decomposition getDecompositionWithControllersAndClustersWithFields(
@@ -232,38 +248,209 @@ public class CodebaseManager {
 	)
 		throws Exception
 	{
-		ObjectMapper objectMapper = new ObjectMapper();
+		Set<String> decompositionDeserializableFields = new HashSet<String>() {{ add("name"); add("controllers"); add("clusters"); }};
+
+		migrateLegacyCodebaseFile(codebaseName);
+
+		String decompositionJSONPath = CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/" + decompositionName + "/decomposition.json";
+
+		if (!documentExists(decompositionJSONPath))
+			throw new Exception("Decomposition " + decompositionName + " not found");
 
-		objectMapper.setInjectableValues(
+		return readDocumentWithFields(
+			decompositionJSONPath,
+			Decomposition.class,
 			new InjectableValues.Std()
-				.addValue("codebaseDeserializableFields", new HashSet<String>() {{ add("dendrograms"); }})
-				.addValue("dendrogramDeserializableFields", new HashSet<String>() {{ add("name"); add("decompositions"); }})
-				.addValue("decompositionDeserializableFields", new HashSet<String>() {{ add("name"); add("controllers"); add("clusters"); }})
+				.addValue("decompositionDeserializableFields", decompositionDeserializableFields)
 				.addValue("controllerDeserializableFields", controllerDeserializableFields)
-				.addValue("clusterDeserializableFields", clusterDeserializableFields)
+				.addValue("clusterDeserializableFields", clusterDeserializableFields),
+			decompositionDeserializableFields,
+			controllerDeserializableFields,
+			clusterDeserializableFields
 		);
+	}
 
-		File codebaseJSONFile = new File(CODEBASES_PATH + codebaseName + "/codebase.json");
+	public Decomposition getDecompositionWithClustersWithFields(
+		String codebaseName,
+		String dendrogramName,
+		String decompositionName,
+		Set<String> clusterDeserializableFields
+	)
+		throws Exception
+	{
+		Set<String> decompositionDeserializableFields = new HashSet<String>() {{ add("name"); add("clusters"); }};
 
-		if (!codebaseJSONFile.exists())
-			return null;
+		migrateLegacyCodebaseFile(codebaseName);
+
+		String decompositionJSONPath = CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/" + decompositionName + "/decomposition.json";
+
+		if (!documentExists(decompositionJSONPath))
+			throw new Exception("Decomposition " + decompositionName + " not found");
+
+		return readDocumentWithFields(
+			decompositionJSONPath,
+			Decomposition.class,
+			new InjectableValues.Std()
+				.addValue("decompositionDeserializableFields", decompositionDeserializableFields)
+				.addValue("clusterDeserializableFields", clusterDeserializableFields),
+			decompositionDeserializableFields,
+			clusterDeserializableFields
+		);
+	}
+
+	private Dendrogram getDendrogramWithFields(
+		String codebaseName,
+		String dendrogramName,
+		Set<String> deserializableFields
+	)
+		throws IOException
+	{
+		migrateLegacyCodebaseFile(codebaseName);
+
+		return readDocumentWithFields(
+			CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/dendrogram.json",
+			Dendrogram.class,
+			new InjectableValues.Std().addValue("dendrogramDeserializableFields", deserializableFields),
+			deserializableFields
+		);
+	}
 
-		ObjectReader reader = objectMapper.readerFor(Codebase.class);
-		Codebase cb = reader.readValue(codebaseJSONFile);
+	private Decomposition getDecompositionWithFields(
+		String codebaseName,
+		String dendrogramName,
+		String decompositionName,
+		Set<String> deserializableFields
+	)
+		throws IOException
+	{
+		return readDocumentWithFields(
+			CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/" + decompositionName + "/decomposition.json",
+			Decomposition.class,
+			new InjectableValues.Std().addValue("decompositionDeserializableFields", deserializableFields),
+			deserializableFields
+		);
+	}
+
+	/**
+	 * Projections are cached apart from the full documents. The injectable values only hold the field sets,
+	 * which also identify the projection in the cache. As with the full documents, every caller gets its own
+	 * copy of the projection.
+	 */
+	private <T> T readDocumentWithFields(
+		String path,
+		Class<T> type,
+		InjectableValues injectableValues,
+		Set<String>... fieldSets
+	)
+		throws IOException
+	{
+		String key = DocumentCache.projectionKey(path, fieldSets);
+		ObjectReader reader = objectMapper.readerFor(type).with(injectableValues);
+		Object cached = documentCache.get(key);
+
+		if (cached == null) {
+			// taken before the disk is read, so that a projection of a document written meanwhile is not cached
+			long generation = documentCache.getGeneration(path);
+
+			// a pending write must reach the disk before the document is read again from it
+			documentCache.flush(path);
+
+			File file = new File(path);
+			cached = reader.readValue(file);
+			documentCache.put(path, key, generation, cached, file.length()); // a projection is never larger than its document
+		}
+
+		return copyDocument(type.cast(cached), reader);
+	}
+
+	/**
+	 * Every caller gets its own copy of the cached document, which it may change. The changes only reach the
+	 * cache, and the disk, once the copy is written, so a change that fails halfway is simply dropped.
+	 */
+	private <T> T readDocument(
+		String path,
+		Class<T> type
+	)
+		throws IOException
+	{
+		ObjectReader reader = objectMapper.readerFor(type);
+		Object cached = documentCache.get(path);
+
+		if (cached == null) {
+			// taken before the disk is read, so that a document written meanwhile is not replaced by the old one
+			long generation = documentCache.getGeneration(path);
+			byte[] content = Files.readAllBytes(Paths.get(path));
+
+			cached = reader.readValue(content);
+			documentCache.put(path, path, generation, cached, content.length);
+		}
+
+		return copyDocument(type.cast(cached), reader);
+	}
+
+	// the cache keeps its own copy of the document, so the caller may go on changing the one it wrote
+	private <T> void writeDocument(
+		String path,
+		T document,
+		Class<T> type
+	)
+		throws IOException
+	{
+		byte[] content = objectMapper.writeValueAsBytes(document);
+
+		T cached = objectMapper.readerFor(type).readValue(content);
+		copyMetricsState(document, cached);
+
+		// the graphs of the metrics state are usually far larger than the json of the decomposition
+		long size = content.length;
+
+		if (cached instanceof Decomposition)
+			size += ((Decomposition) cached).getMetricsStateEstimatedSize();
+
+		documentCache.putDirty(path, cached, content, size);
+	}
+
+	// the reader must be the one the document was read with, so that a projection is copied with the same fields
+	private <T> T copyDocument(
+		T document,
+		ObjectReader reader
+	)
+		throws IOException
+	{
+		TokenBuffer buffer = new TokenBuffer(objectMapper, false);
+		objectMapper.writeValue(buffer, document);
+
+		T copy = reader.readValue(buffer.asParser(objectMapper));
+		copyMetricsState(document, copy);
+
+		return copy;
+	}
+
+	// the state of the last metrics calculation is not persisted, but the copies keep it for the next update
+	private void copyMetricsState(Object from, Object to) {
+		if (from instanceof Decomposition)
+			((Decomposition) to).copyMetricsStateFrom((Decomposition) from);
+	}
+
+	private boolean documentExists(String path) {
+		return documentCache.contains(path) || new File(path).exists();
+	}
+
+	public void evictDocuments(String pathPrefix) {
+		documentCache.evict(pathPrefix);
+	}
 
-		Dendrogram d = cb.getDendrograms()
-						 .stream()
-						 .filter(dendrogram -> dendrogram.getName().equals(dendrogramName))
-						 .findFirst()
-						 .orElseThrow(() -> new Exception("Dendrogram " + dendrogramName + " not found"));
+	public void flushDocuments() {
+		documentCache.flushAll();
+	}
 
-		return d.getDecompositions().stream()
-				.filter(decomposition -> decomposition.getName().equals(decompositionName))
-				.findFirst()
-				.orElseThrow(() -> new Exception("Decomposition " + decompositionName + " not found"));
+	public DocumentCache.Statistics getDocumentCacheStatistics() {
+		return documentCache.getStatistics();
 	}
 
-	public void deleteCodebase(String codebaseName) throws IOException {
+	public synchronized void deleteCodebase(String codebaseName) throws IOException {
+		migratedCodebases.remove(codebaseName);
+		documentCache.evict(CODEBASES_PATH + codebaseName + "/");
 		FileUtils.deleteDirectory(new File(CODEBASES_PATH + codebaseName));
 	}
 
@@ -273,9 +460,7 @@ public class CodebaseManager {
 	)
 		throws IOException
 	{
-		File codebaseJSONFile = new File(CODEBASES_PATH + codebaseName + "/codebase.json");
-
-		if (codebaseJSONFile.exists())
+		if (documentExists(CODEBASES_PATH + codebaseName + "/codebase.json"))
 			throw new KeyAlreadyExistsException();
 
 		File codebasesPath = new File(CODEBASES_PATH);
@@ -316,6 +501,11 @@ public class CodebaseManager {
 
 		codebase.addProfile("Generic", Utils.getJsonFileKeys(datafileFile));
 
+		// built once here so that the traces of a controller can later be read directly from its offset,
+		// or from the binary trace store when it is enabled
+		if (TraceStore.forDatafile(codebase.getDatafilePath()) == null)
+			DatafileIndex.forDatafile(codebase.getDatafilePath());
+
 		return codebase;
 	}
 
@@ -324,21 +514,127 @@ public class CodebaseManager {
 	)
 		throws IOException
 	{
-		InputStream is = new FileInputStream(CODEBASES_PATH + codebaseName + "/codebase.json");
+		migrateLegacyCodebaseFile(codebaseName);
 
-		Codebase codebase = objectMapper.readerFor(Codebase.class).readValue(is);
-		is.close();
-
-		return codebase;
+		return readDocument(CODEBASES_PATH + codebaseName + "/codebase.json", Codebase.class);
 	}
 
 	public void writeCodebase(Codebase codebase) throws IOException {
-		objectMapper.writeValue(
-			new File(CODEBASES_PATH + codebase.getName() + "/codebase.json"),
-			codebase
+		writeDocument(CODEBASES_PATH + codebase.getName() + "/codebase.json", codebase, Codebase.class);
+	}
+
+	public Dendrogram getDendrogram(
+		String codebaseName,
+		String dendrogramName
+	)
+		throws IOException
+	{
+		migrateLegacyCodebaseFile(codebaseName);
+
+		return readDocument(CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/dendrogram.json", Dendrogram.class);
+	}
+
+	public void writeDendrogram(Dendrogram dendrogram) throws IOException {
+		writeDocument(
+			CODEBASES_PATH + dendrogram.getCodebaseName() + "/" + dendrogram.getName() + "/dendrogram.json",
+			dendrogram,
+			Dendrogram.class
 		);
 	}
 
+	public Decomposition getDecomposition(
+		String codebaseName,
+		String dendrogramName,
+		String decompositionName
+	)
+		throws IOException
+	{
+		migrateLegacyCodebaseFile(codebaseName);
+
+		return readDocument(
+			CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/" + decompositionName + "/decomposition.json",
+			Decomposition.class
+		);
+	}
+
+	public void writeDecomposition(Decomposition decomposition) throws IOException {
+		File decompositionPath = new File(CODEBASES_PATH + decomposition.getCodebaseName() + "/" + decomposition.getDendrogramName() + "/" + decomposition.getName());
+		if (!decompositionPath.exists()) {
+			decompositionPath.mkdir();
+		}
+
+		writeDocument(
+			CODEBASES_PATH + decomposition.getCodebaseName() + "/" + decomposition.getDendrogramName() + "/" + decomposition.getName() + "/decomposition.json",
+			decomposition,
+			Decomposition.class
+		);
+	}
+
+	/**
+	 * Codebases created before dendrograms and decompositions had their own documents keep everything
+	 * nested inside codebase.json. They are split once into the new layout the first time they are accessed.
+	 */
+	private synchronized void migrateLegacyCodebaseFile(String codebaseName) throws IOException {
+		if (migratedCodebases.contains(codebaseName))
+			return;
+
+		File codebaseJSONFile = new File(CODEBASES_PATH + codebaseName + "/codebase.json");
+
+		if (!codebaseJSONFile.exists())
+			return;
+
+		JsonNode codebaseNode = objectMapper.readTree(codebaseJSONFile);
+
+		if (codebaseNode.has("dendrograms")) {
+			System.out.println("Splitting legacy codebase.json of " + codebaseName + "...");
+
+			ArrayNode dendrogramNames = objectMapper.createArrayNode();
+
+			for (JsonNode dendrogramNode : codebaseNode.get("dendrograms")) {
+				String dendrogramName = dendrogramNode.get("name").asText();
+				File dendrogramPath = new File(CODEBASES_PATH + codebaseName + "/" + dendrogramName);
+				if (!dendrogramPath.exists()) {
+					dendrogramPath.mkdir();
+				}
+
+				ArrayNode decompositionNames = objectMapper.createArrayNode();
+
+				if (dendrogramNode.has("decompositions")) {
+					for (JsonNode decompositionNode : dendrogramNode.get("decompositions")) {
+						String decompositionName = decompositionNode.get("name").asText();
+						File decompositionPath = new File(dendrogramPath, decompositionName);
+						if (!decompositionPath.exists()) {
+							decompositionPath.mkdir();
+						}
+
+						((ObjectNode) decompositionNode).put("codebaseName", codebaseName);
+						((ObjectNode) decompositionNode).put("dendrogramName", dendrogramName);
+						objectMapper.writeValue(new File(decompositionPath, "decomposition.json"), decompositionNode);
+
+						decompositionNames.add(decompositionName);
+					}
+				}
+
+				((ObjectNode) dendrogramNode).remove("decompositions");
+				((ObjectNode) dendrogramNode).put("codebaseName", codebaseName);
+				((ObjectNode) dendrogramNode).set("decompositionNames", decompositionNames);
+				objectMapper.writeValue(new File(dendrogramPath, "dendrogram.json"), dendrogramNode);
+
+				dendrogramNames.add(dendrogramName);
+			}
+
+			((ObjectNode) codebaseNode).remove("dendrograms");
+			((ObjectNode) codebaseNode).set("dendrogramNames", dendrogramNames);
+
+			// the legacy file is only replaced once the new one is complete, so an interrupted migration is run again
+			File temporaryFile = new File(codebaseJSONFile.getPath() + ".tmp");
+			objectMapper.writeValue(temporaryFile, codebaseNode);
+			Files.move(temporaryFile.toPath(), codebaseJSONFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		migratedCodebases.add(codebaseName);
+	}
+
 	public HashMap<String, ControllerDto> getDatafile(
 		Codebase codebase
 	)
@@ -355,19 +651,49 @@ public class CodebaseManager {
 		return datafile;
 	}
 
-	public JSONObject getSimilarityMatrix(
+	public SimilarityMatrix getSimilarityMatrix(
 		String codebaseName,
 		String dendrogramName
 	)
-		throws IOException, JSONException
+		throws IOException
 	{
-		InputStream is = new FileInputStream(CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/similarityMatrix.json");
+		String dendrogramPath = CODEBASES_PATH + codebaseName + "/" + dendrogramName;
+		File similarityMatrixFile = new File(dendrogramPath + "/similarityMatrix.bin");
 
-		JSONObject similarityMatrixJSON = new JSONObject(IOUtils.toString(is, "UTF-8"));
+		if (!similarityMatrixFile.exists())
+			convertLegacySimilarityMatrix(new File(dendrogramPath + "/similarityMatrix.json"), similarityMatrixFile);
 
-		is.close();
+		return SimilarityMatrix.read(similarityMatrixFile);
+	}
+
+	// dendrograms created before the binary format only have the indented json matrix
+	private void convertLegacySimilarityMatrix(
+		File legacyFile,
+		File similarityMatrixFile
+	)
+		throws IOException
+	{
+		JsonNode legacyNode = objectMapper.readTree(legacyFile);
+
+		Set<Short> entities = new LinkedHashSet<>();
+		for (JsonNode entityNode : legacyNode.get("entities"))
+			entities.add(entityNode.shortValue());
+
+		JsonNode matrixNode = legacyNode.get("matrix");
+
+		SimilarityMatrix similarityMatrix = new SimilarityMatrix(
+			entities,
+			legacyNode.get("linkageType").asText(),
+			1,
+			false
+		);
+
+		for (int i = 0; i < entities.size(); i++)
+			for (int j = 0; j < entities.size(); j++)
+				similarityMatrix.set(i, j, matrixNode.get(i).get(j).floatValue());
 
-		return similarityMatrixJSON;
+		similarityMatrix.write(similarityMatrixFile);
+		legacyFile.delete();
 	}
 
 	public void writeDatafile(
@@ -385,44 +711,103 @@ public class CodebaseManager {
 	public void writeDendrogramSimilarityMatrix(
 		String codebaseName,
 		String dendrogramName,
-		JSONObject similarityMatrix
+		SimilarityMatrix similarityMatrix
 	)
-		throws IOException, JSONException
+		throws IOException
 	{
-		FileWriter file = new FileWriter(CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/similarityMatrix.json");
-		file.write(similarityMatrix.toString(4));
-		file.close();
+		similarityMatrix.write(new File(CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/similarityMatrix.bin"));
 	}
 
-	public byte[] getDendrogramImage(
+	public void writeDendrogramImage(
+		String codebaseName,
+		String dendrogramName,
+		Linkage linkage
+	)
+		throws IOException
+	{
+		DendrogramImage.write(
+			linkage,
+			linkage.getEntities(),
+			new File(CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/dendrogramImage.png")
+		);
+	}
+
+	public void writeDendrogramLinkage(
+		String codebaseName,
+		String dendrogramName,
+		Linkage linkage
+	)
+		throws IOException
+	{
+		linkage.write(new File(CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/linkage.bin"));
+	}
+
+	public Linkage getDendrogramLinkage(
 		String codebaseName,
 		String dendrogramName
 	)
 		throws IOException
 	{
-		String filePathname = CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/dendrogramImage.png";
-		Path filePath = Paths.get(filePathname);
+		File linkageFile = new File(CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/linkage.bin");
 
-		if (Files.exists(filePath)) return Files.readAllBytes(filePath);
+		// dendrograms created before the linkage was stored
+		if (!linkageFile.exists()) {
+			Linkage linkage = HierarchicalClustering.createDendrogramLinkage(
+				getSimilarityMatrix(codebaseName, dendrogramName)
+			);
 
-		throw new FileNotFoundException("File: " + filePathname + " not found");
+			linkage.write(linkageFile);
+			return linkage;
+		}
 
+		return Linkage.read(linkageFile);
 	}
 
-	public JSONObject getClusters(
+	/**
+	 * Silhouette score of a cut of the dendrogram, calculated from the similarity matrix the first time its
+	 * number of clusters is cut, O(n^2), and then kept in the linkage file.
+	 */
+	public double getDendrogramSilhouetteScore(
 		String codebaseName,
 		String dendrogramName,
-		String decompositionName
+		Linkage linkage,
+		int[] labels
 	)
-		throws IOException, JSONException
+		throws IOException
 	{
-		InputStream is = new FileInputStream(CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/" + decompositionName + "/clusters.json");
+		int numberOfClusters = Linkage.getNumberOfClusters(labels);
+		double silhouetteScore = linkage.getSilhouetteScore(numberOfClusters);
 
-		JSONObject clustersJSON = new JSONObject(IOUtils.toString(is, StandardCharsets.UTF_8));
+		if (!Double.isNaN(silhouetteScore))
+			return silhouetteScore;
 
-		is.close();
+		SimilarityMatrix similarityMatrix = getSimilarityMatrix(codebaseName, dendrogramName);
+
+		silhouetteScore = HierarchicalClustering.silhouetteScore(
+			HierarchicalClustering.getDistances(similarityMatrix),
+			similarityMatrix.getSize(),
+			labels
+		);
+
+		linkage.setSilhouetteScore(numberOfClusters, silhouetteScore);
+		writeDendrogramLinkage(codebaseName, dendrogramName, linkage);
+
+		return silhouetteScore;
+	}
+
+	public byte[] getDendrogramImage(
+		String codebaseName,
+		String dendrogramName
+	)
+		throws IOException
+	{
+		String filePathname = CODEBASES_PATH + codebaseName + "/" + dendrogramName + "/dendrogramImage.png";
+		Path filePath = Paths.get(filePathname);
+
+		if (Files.exists(filePath)) return Files.readAllBytes(filePath);
+
+		throw new FileNotFoundException("File: " + filePathname + " not found");
 
-		return clustersJSON;
 	}
 
 	public HashMap<String, CutInfoDto> getAnalyserResults(
@@ -442,6 +827,20 @@ public class CodebaseManager {
 		return analyserResults;
 	}
 
+	// filtered and sorted through AnalyserResultsIndex.query, instead of deserializing every cut's controller specs
+	public AnalyserResultsIndex getAnalyserResultsIndex(
+		String codebaseName
+	)
+		throws IOException
+	{
+		String filePath = CODEBASES_PATH + codebaseName + "/analyser/analyserResult.json";
+
+		if (!new File(filePath).exists())
+			throw new FileNotFoundException("File: " + filePath + " not found");
+
+		return AnalyserResultsIndex.forFile(filePath);
+	}
+
 	public boolean analyserResultFileAlreadyExists(
 		String codebaseName
 	) {
@@ -460,216 +859,47 @@ public class CodebaseManager {
 		writer.writeValue(new File(CODEBASES_PATH + codebaseName + "/analyser/analyserResult.json"), analyserJSON);
 	}
 
-	public HashMap<String, HashMap<String, Set<Short>>> getAnalyserCut(
+	public void writeAnalyserCut(
 		String codebaseName,
-		String cutName
+		String cutName,
+		Map<String, List<Short>> clusters
 	)
 		throws IOException
 	{
-		InputStream is = new FileInputStream(CODEBASES_PATH + codebaseName + "/analyser/cuts/" + cutName + ".json");
+		Map<String, Map<String, List<Short>>> analyserCut = new HashMap<>();
+		analyserCut.put("clusters", clusters);
 
-		HashMap<String, HashMap<String, Set<Short>>> value = objectMapper.readValue(
-			is,
-			new TypeReference<HashMap<String, HashMap<String, Set<Short>>>>() {}
+		objectMapper.writerWithDefaultPrettyPrinter().writeValue(
+			new File(CODEBASES_PATH + codebaseName + "/analyser/cuts/" + cutName + ".json"),
+			analyserCut
 		);
-
-		is.close();
-		return value;
 	}
 
 	public void writeAnalyserSimilarityMatrix(
 		String codebaseName,
-		SimilarityMatrixDto similarityMatrix
+		SimilarityMatrix similarityMatrix
 	)
 		throws IOException
 	{
-		DefaultPrettyPrinter pp = new DefaultPrettyPrinter();
-		pp.indentArraysWith( DefaultIndenter.SYSTEM_LINEFEED_INSTANCE );
-		ObjectWriter writer = objectMapper.writer(pp);
-
-		OutputStream os = new FileOutputStream(CODEBASES_PATH + codebaseName + "/analyser/similarityMatrix.json");
-
-		writer.writeValue(os, similarityMatrix);
-		os.close();
+		similarityMatrix.write(new File(CODEBASES_PATH + codebaseName + "/analyser/similarityMatrix.bin"));
 	}
 
 	public boolean analyserSimilarityMatrixFileAlreadyExists(
 		String codebaseName
 	) {
-		return new File(CODEBASES_PATH + codebaseName + "/analyser/similarityMatrix.json").exists();
+		return new File(CODEBASES_PATH + codebaseName + "/analyser/similarityMatrix.bin").exists();
 	}
 
-	public SimilarityMatrixDto getSimilarityMatrixDtoWithFields(
-		String codebaseName,
-		Set<String> deserializableFields
+	public SimilarityMatrix getAnalyserSimilarityMatrix(
+		String codebaseName
 	)
 		throws IOException
 	{
-		ObjectMapper objectMapper = new ObjectMapper();
-
-		objectMapper.setInjectableValues(
-			new InjectableValues.Std().addValue(
-				"similarityMatrixDtoDeserializableFields",
-				deserializableFields
-			)
-		);
-
-		ObjectReader reader = objectMapper.readerFor(SimilarityMatrixDto.class);
-
-		File similarityMatrixFile = new File(CODEBASES_PATH + codebaseName + "/analyser/similarityMatrix.json");
+		File similarityMatrixFile = new File(CODEBASES_PATH + codebaseName + "/analyser/similarityMatrix.bin");
 
 		if (!similarityMatrixFile.exists())
 			return null;
 
-		return reader.readValue(similarityMatrixFile);
-	}
-
-	public Map<String, Controller> getControllersWithCostlyAccesses(
-		Codebase codebase,
-		String profile,
-		Map<Short, String> entityIDToClusterName
-	)
-		throws IOException
-	{
-		System.out.println("Getting controllers with costly accesses...");
-
-		Map<String, Controller> controllers = new HashMap<>();
-
-		File jsonFile = new File(codebase.getDatafilePath());
-
-		Set<String> profileControllers = codebase.getProfile(profile);
-		JsonFactory jsonfactory = objectMapper.getFactory();
-
-		JsonParser jsonParser = jsonfactory.createParser(jsonFile);
-		JsonToken jsonToken = jsonParser.nextValue(); // JsonToken.START_OBJECT
-
-		if (jsonToken != JsonToken.START_OBJECT) {
-			Utils.print("Json must start with a left curly brace", Utils.lineno());
-			System.exit(-1);
-		}
-
-		while (jsonParser.nextValue() != JsonToken.END_OBJECT) {
-			if (jsonParser.getCurrentToken() == JsonToken.START_OBJECT) {
-//				Utils.print("Controller name: " + jsonParser.getCurrentName(), Utils.lineno());
-
-				if (!profileControllers.contains(jsonParser.getCurrentName())) { // FIXME TEST ME
-					jsonParser.skipChildren();
-					continue;
-				}
-
-				Controller controller = new Controller(jsonParser.getCurrentName());
-
-				while (jsonParser.nextValue() != JsonToken.END_OBJECT) {
-//					Utils.print("field name: " + jsonParser.getCurrentName(), Utils.lineno());
-
-					switch (jsonParser.getCurrentName()) {
-						case "f":
-							break;
-						case "t": // array of traces
-
-							while (jsonParser.nextValue() != JsonToken.END_ARRAY) { // iterate over trace objects
-								while (jsonParser.nextValue() != JsonToken.END_OBJECT) { // iterate over trace object fields
-
-									switch (jsonParser.getCurrentName()) {
-										case "id":
-										case "f":
-											break;
-
-										case "a":
-											Map<Short, Byte> entityIDToMode = new HashMap<>();
-											String previousCluster = "";
-											int i = 0;
-
-											while (jsonParser.nextValue() != JsonToken.END_ARRAY) {
-												ReducedTraceElementDto rte = jsonParser.readValueAs(
-													ReducedTraceElementDto.class
-												);
-
-												if (rte instanceof AccessDto) {
-													AccessDto access = (AccessDto) rte;
-													short entityID = access.getEntityID();
-													byte mode = access.getMode();
-													String cluster;
-
-													cluster = entityIDToClusterName.get(entityID);
-
-													if (cluster == null) {
-														System.err.println("Entity " + entityID + " is not assign to a cluster.");
-														System.exit(-1);
-													}
-
-													if (i == 0) {
-														entityIDToMode.put(entityID, mode);
-														controller.addEntity(entityID, mode);
-
-													} else {
-
-														if (cluster.equals(previousCluster)) {
-															boolean hasCost = false;
-															Byte savedMode = entityIDToMode.get(entityID);
-
-															if (savedMode == null) {
-																hasCost = true;
-
-															} else {
-																if (savedMode == 1 && mode == 2) // "R" -> 1, "W" -> 2
-																	hasCost = true;
-															}
-
-															if (hasCost) {
-																entityIDToMode.put(entityID, mode);
-																controller.addEntity(entityID, mode);
-															}
-
-														} else {
-															controller.addEntity(entityID, mode);
-
-															entityIDToMode.clear();
-															entityIDToMode.put(entityID, mode);
-
-														}
-													}
-
-													previousCluster = cluster;
-													i++;
-												}
-											}
-
-											break;
-
-										default:
-											Utils.print(
-												"Unexpected field name when parsing Trace: " + jsonParser.getCurrentName(),
-												Utils.lineno()
-											);
-
-											System.exit(-1);
-									}
-								}
-							}
-
-
-							break;
-
-						default:
-							Utils.print(
-								"Unexpected field name when parsing Controller: " + jsonParser.getCurrentName(),
-								Utils.lineno()
-							);
-							System.exit(-1);
-					}
-				}
-
-				// only consider controllers that touch domain entities
-				if (!controller.getEntities().isEmpty()) {
-					controllers.put(
-						controller.getName(),
-						controller
-					);
-				}
-			}
-		}
-
-		return controllers;
+		return SimilarityMatrix.read(similarityMatrixFile);
 	}
 }
@@ -0,0 +1,291 @@
+package pt.ist.socialsoftware.mono2micro.manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * LRU cache of the deserialized codebase, dendrogram and decomposition documents.
+ *
+ * Entries are keyed by the path of the json file they come from. Projections (documents read with only
+ * some of their fields) are kept under the path followed by the requested fields, so that they never
+ * shadow the full document. The cache is bounded both by its number of entries and by the size of the json
+ * they were read from, plus an estimate of what a written document keeps that is not in its json. Written documents are marked dirty, with the json they are written as, and flushed
+ * to disk in the background through a temporary file that replaces the document's file.
+ *
+ * The cached documents are shared by every caller and must not be changed, the CodebaseManager hands out
+ * copies of them. A document read from disk is only cached if its path was not written or evicted since the
+ * reader took its generation, so a slow read never replaces a newer document.
+ */
+public class DocumentCache {
+
+	public static class Statistics {
+		public long hits;
+		public long misses;
+		public int entries;
+		public long size; // bytes of json the entries were read from, plus the estimates of their extra state
+		public int dirtyEntries;
+		public long flushes;
+		public long flushFailures;
+		public double averageFlushMillis;
+		public double maxFlushMillis;
+	}
+
+	private static class Entry {
+		private final Object document;
+		private final long size;
+
+		private Entry(Object document, long size) {
+			this.document = document;
+			this.size = size;
+		}
+	}
+
+	// a new holder is created on every write, so a flush can tell if the document was written again meanwhile
+	private static class DirtyDocument {
+		private final Object document;
+		private final byte[] content;
+
+		private DirtyDocument(Object document, byte[] content) {
+			this.document = document;
+			this.content = content;
+		}
+	}
+
+	private static final String PROJECTION_SEPARATOR = "?";
+
+	private final int maxEntries;
+	private final long maxSize;
+	private final long flushDelay;
+
+	// in access order, the least recently used first
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long size = 0;
+	private final Map<String, DirtyDocument> dirtyDocuments = new LinkedHashMap<>();
+	private final Map<String, Long> generations = new HashMap<>(); // <path, number of writes and evictions>
+	private boolean flushScheduled = false;
+
+	private final Object writeLock = new Object();
+
+	private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "document-cache-flusher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong flushes = new AtomicLong();
+	private final AtomicLong flushFailures = new AtomicLong();
+	private final AtomicLong totalFlushNanos = new AtomicLong();
+	private final AtomicLong maxFlushNanos = new AtomicLong();
+
+	public DocumentCache(
+		int maxEntries,
+		long maxSize,
+		long flushDelay
+	) {
+		this.maxEntries = maxEntries;
+		this.maxSize = maxSize;
+		this.flushDelay = flushDelay;
+	}
+
+	public static String projectionKey(String path, Set<String>... fieldSets) {
+		StringBuilder key = new StringBuilder(path).append(PROJECTION_SEPARATOR);
+
+		for (Set<String> fields : fieldSets)
+			key.append(fields == null ? "*" : new TreeSet<>(fields)).append(";");
+
+		return key.toString();
+	}
+
+	public synchronized Object get(String key) {
+		Entry entry = entries.get(key);
+		Object document = entry == null ? null : entry.document;
+
+		if (document == null && dirtyDocuments.containsKey(key))
+			document = dirtyDocuments.get(key).document;
+
+		if (document == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+		return document;
+	}
+
+	public synchronized boolean contains(String path) {
+		return entries.containsKey(path) || dirtyDocuments.containsKey(path);
+	}
+
+	// to be taken before the document is read from disk, and given back to put
+	public synchronized long getGeneration(String path) {
+		return generations.computeIfAbsent(path, p -> 0L); // kept, so that an eviction also moves it
+	}
+
+	/**
+	 * Caches a document, or a projection of it, read from disk. The size is the number of bytes of json it was
+	 * read from. It is dropped if its path was written or evicted after the generation was taken, or is still
+	 * waiting to be flushed, as what was read is then older than what the cache has.
+	 */
+	public synchronized void put(String path, String key, long generation, Object document, long size) {
+		if (generation != generations.getOrDefault(path, 0L) || dirtyDocuments.containsKey(path))
+			return;
+
+		putEntry(key, new Entry(document, size));
+	}
+
+	// the document is written as the content, which must be its json, and the size counts what it keeps besides it
+	public synchronized void putDirty(String path, Object document, byte[] content, long size) {
+		nextGeneration(path);
+		removeProjections(path);
+		putEntry(path, new Entry(document, size));
+		dirtyDocuments.put(path, new DirtyDocument(document, content));
+		scheduleFlush();
+	}
+
+	public synchronized void evict(String pathPrefix) {
+		// the generations are kept, so that the documents being read meanwhile are not cached either
+		generations.replaceAll((path, generation) -> path.startsWith(pathPrefix) ? generation + 1 : generation);
+		removeEntries(key -> key.startsWith(pathPrefix));
+		dirtyDocuments.keySet().removeIf(key -> key.startsWith(pathPrefix));
+	}
+
+	public void flush(String path) {
+		DirtyDocument dirtyDocument;
+
+		synchronized (this) {
+			dirtyDocument = dirtyDocuments.get(path);
+		}
+
+		if (dirtyDocument != null)
+			write(path, dirtyDocument);
+	}
+
+	public void flushAll() {
+		Map<String, DirtyDocument> documents;
+
+		synchronized (this) {
+			flushScheduled = false;
+			documents = new LinkedHashMap<>(dirtyDocuments);
+		}
+
+		for (Map.Entry<String, DirtyDocument> entry : documents.entrySet())
+			write(entry.getKey(), entry.getValue());
+	}
+
+	public synchronized Statistics getStatistics() {
+		Statistics statistics = new Statistics();
+		statistics.hits = hits.get();
+		statistics.misses = misses.get();
+		statistics.entries = entries.size();
+		statistics.size = size;
+		statistics.dirtyEntries = dirtyDocuments.size();
+		statistics.flushes = flushes.get();
+		statistics.flushFailures = flushFailures.get();
+		statistics.averageFlushMillis = statistics.flushes == 0 ? 0 : totalFlushNanos.get() / 1e6 / statistics.flushes;
+		statistics.maxFlushMillis = maxFlushNanos.get() / 1e6;
+		return statistics;
+	}
+
+	private void write(String path, DirtyDocument dirtyDocument) {
+		File file = new File(path);
+
+		synchronized (writeLock) {
+			// the directory was deleted after the document was written
+			if (!file.getParentFile().exists()) {
+				synchronized (this) {
+					dirtyDocuments.remove(path, dirtyDocument);
+				}
+				return;
+			}
+
+			long start = System.nanoTime();
+
+			// a reader never finds the file half written, and a failed write leaves the previous one in place
+			File temporaryFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+			try {
+				Files.write(temporaryFile.toPath(), dirtyDocument.content);
+				Files.move(
+					temporaryFile.toPath(),
+					file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE
+				);
+
+			} catch (IOException e) {
+				e.printStackTrace();
+				flushFailures.incrementAndGet();
+
+				synchronized (this) {
+					scheduleFlush();
+				}
+				return;
+			}
+
+			long elapsed = System.nanoTime() - start;
+			flushes.incrementAndGet();
+			totalFlushNanos.addAndGet(elapsed);
+			maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+		}
+
+		// the document stays dirty if it was written again in the meantime
+		synchronized (this) {
+			dirtyDocuments.remove(path, dirtyDocument);
+		}
+	}
+
+	private void nextGeneration(String path) {
+		generations.merge(path, 1L, Long::sum);
+	}
+
+	private void scheduleFlush() {
+		if (!flushScheduled) {
+			flushScheduled = true;
+			flusher.schedule(this::flushAll, flushDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// dirty documents stay reachable through dirtyDocuments until they are flushed
+	private void putEntry(String key, Entry entry) {
+		Entry previous = entries.put(key, entry);
+
+		if (previous != null)
+			size -= previous.size;
+
+		size += entry.size;
+
+		Iterator<Entry> iterator = entries.values().iterator();
+
+		while ((entries.size() > maxEntries || size > maxSize) && iterator.hasNext()) {
+			size -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+
+	private void removeEntries(Predicate<String> keyFilter) {
+		Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+		while (iterator.hasNext()) {
+			Map.Entry<String, Entry> entry = iterator.next();
+
+			if (keyFilter.test(entry.getKey())) {
+				size -= entry.getValue().size;
+				iterator.remove();
+			}
+		}
+	}
+
+	private void removeProjections(String path) {
+		removeEntries(key -> key.startsWith(path + PROJECTION_SEPARATOR));
+	}
+}
@@ -0,0 +1,307 @@
+package pt.ist.socialsoftware.mono2micro.manager;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pt.ist.socialsoftware.mono2micro.dto.JobDto;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A long running operation submitted to the JobManager.
+ *
+ * The operation reports its progress and checks for cancellation through the job. Cancelling a job that is
+ * running interrupts its thread and runs its cancel listeners, so operations stop at their next blocking call,
+ * interrupt check or call to checkCancelled. Every change of status or progress is sent to the job's SSE
+ * emitters, which are completed when the job finishes.
+ */
+public class Job {
+	public enum Status {
+		QUEUED,
+		RUNNING,
+		DONE,
+		FAILED,
+		CANCELLED,
+	}
+
+	public interface Task {
+		Object run(Job job) throws Exception; // returns the result of the job
+	}
+
+	private final String id;
+	private final String codebaseName;
+	private final String type;
+	private final Task task;
+
+	private Status status = Status.QUEUED;
+	private int done;
+	private int total;
+	private String error;
+	private Object result;
+	private final long createdTime = System.currentTimeMillis();
+	private long startedTime;
+	private long finishedTime;
+
+	private volatile boolean cancelRequested = false;
+	private final List<Runnable> cancelListeners = new ArrayList<>();
+	private Future<?> future; // set once the job is given to the executor, before it runs
+
+	private final CompletableFuture<Object> completion = new CompletableFuture<>();
+	private final List<SseEmitter> emitters = new ArrayList<>();
+	// held while the emitters are sent to, instead of the job's lock, so a slow client never blocks the job
+	private final Object publishLock = new Object();
+
+	Job(
+		String id,
+		String codebaseName,
+		String type,
+		Task task
+	) {
+		this.id = id;
+		this.codebaseName = codebaseName;
+		this.type = type;
+		this.task = task;
+	}
+
+	public String getId() { return id; }
+
+	public String getCodebaseName() { return codebaseName; }
+
+	public Task getTask() { return task; }
+
+	public synchronized Status getStatus() { return status; }
+
+	public synchronized Object getResult() { return result; }
+
+	public synchronized boolean isFinished() {
+		return status == Status.DONE || status == Status.FAILED || status == Status.CANCELLED;
+	}
+
+	synchronized long getFinishedTime() { return finishedTime; }
+
+	public synchronized JobDto getDto() {
+		JobDto jobDto = new JobDto();
+		jobDto.setId(id);
+		jobDto.setCodebaseName(codebaseName);
+		jobDto.setType(type);
+		jobDto.setStatus(status.name());
+		jobDto.setDone(done);
+		jobDto.setTotal(total);
+		jobDto.setError(error);
+		jobDto.setCreatedTime(createdTime);
+		jobDto.setStartedTime(startedTime);
+		jobDto.setFinishedTime(finishedTime);
+		return jobDto;
+	}
+
+	public void setProgress(int done, int total) {
+		synchronized (this) {
+			this.done = done;
+			this.total = total;
+		}
+
+		publish();
+	}
+
+	public boolean isCancelRequested() { return cancelRequested; }
+
+	// throws when the job was cancelled, for operations to stop before doing something that is not undone
+	public void checkCancelled() {
+		if (cancelRequested || Thread.currentThread().isInterrupted())
+			throw new CancellationException("Job " + id + " was cancelled");
+	}
+
+	// the listener runs in the thread that cancels the job, or right away if it already was
+	public void onCancel(Runnable listener) {
+		synchronized (this) {
+			if (!cancelRequested) {
+				cancelListeners.add(listener);
+				return;
+			}
+		}
+
+		listener.run();
+	}
+
+	/**
+	 * Waits for the job to finish and returns its result, throwing the exception of the operation if it failed
+	 * and a CancellationException if it was cancelled.
+	 */
+	public Object waitFor() throws Exception {
+		try {
+			return completion.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	// the emitter gets the current state of the job first, and is completed right away if it already finished
+	public void addEmitter(SseEmitter emitter) {
+		emitter.onCompletion(() -> removeEmitter(emitter));
+		emitter.onTimeout(() -> removeEmitter(emitter));
+
+		synchronized (publishLock) {
+			JobDto jobDto;
+			boolean finished;
+
+			synchronized (this) {
+				jobDto = getDto();
+				finished = isFinished();
+
+				if (!finished)
+					emitters.add(emitter);
+			}
+
+			try {
+				emitter.send(SseEmitter.event().name("job").data(jobDto));
+			} catch (IOException | IllegalStateException e) { // the client went away
+				removeEmitter(emitter);
+				return;
+			}
+
+			if (finished)
+				emitter.complete();
+		}
+	}
+
+	private synchronized void removeEmitter(SseEmitter emitter) {
+		emitters.remove(emitter);
+	}
+
+	/**
+	 * Cancels the job. A queued job finishes right away, and never runs, while a running one is interrupted
+	 * and finishes when its operation stops. Returns false if the job had already finished.
+	 */
+	boolean cancel() {
+		List<Runnable> listeners = null;
+		Future<?> future = null;
+		boolean wasQueued;
+
+		synchronized (this) {
+			if (isFinished())
+				return false;
+
+			cancelRequested = true;
+			wasQueued = status == Status.QUEUED;
+
+			if (wasQueued) {
+				finish(Status.CANCELLED, null, null);
+
+			} else {
+				listeners = new ArrayList<>(cancelListeners);
+				cancelListeners.clear();
+				future = this.future;
+			}
+		}
+
+		if (wasQueued) {
+			publishFinished();
+			return true;
+		}
+
+		for (Runnable listener : listeners)
+			listener.run();
+
+		future.cancel(true);
+
+		return true;
+	}
+
+	// run() waits for the lock, so the job does not start before its future is set
+	synchronized void submit(ExecutorService executor, Runnable runner) {
+		future = executor.submit(runner);
+	}
+
+	// runs in a thread of the JobManager's executor
+	void run() {
+		synchronized (this) {
+			if (isFinished()) // cancelled while queued
+				return;
+
+			status = Status.RUNNING;
+			startedTime = System.currentTimeMillis();
+		}
+
+		publish();
+
+		try {
+			Object result = task.run(this);
+
+			synchronized (this) {
+				finish(cancelRequested ? Status.CANCELLED : Status.DONE, result, null);
+			}
+
+		} catch (Throwable e) {
+			synchronized (this) {
+				if (cancelRequested)
+					finish(Status.CANCELLED, null, null);
+				else
+					finish(Status.FAILED, null, e);
+			}
+		}
+
+		publishFinished();
+	}
+
+	// called with the job's lock held, the job is then published with publishFinished once it is released
+	private void finish(Status status, Object result, Throwable e) {
+		this.status = status;
+		this.result = result;
+		this.finishedTime = System.currentTimeMillis();
+
+		if (status == Status.DONE) {
+			completion.complete(result);
+
+		} else if (status == Status.FAILED) {
+			error = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+			e.printStackTrace();
+			completion.completeExceptionally(e);
+
+		} else {
+			completion.completeExceptionally(new CancellationException("Job " + id + " was cancelled"));
+		}
+	}
+
+	// a job that finished is not changed again, so it is published with its emitters completed
+	private void publishFinished() {
+		synchronized (publishLock) {
+			publish();
+
+			List<SseEmitter> finishedEmitters;
+
+			synchronized (this) {
+				finishedEmitters = new ArrayList<>(emitters);
+				emitters.clear();
+			}
+
+			for (SseEmitter emitter : finishedEmitters)
+				emitter.complete();
+		}
+	}
+
+	// the state is taken after the publish lock, so the emitters never get an older state after a newer one
+	private void publish() {
+		synchronized (publishLock) {
+			JobDto jobDto;
+			List<SseEmitter> publishedEmitters;
+
+			synchronized (this) {
+				jobDto = getDto();
+				publishedEmitters = new ArrayList<>(emitters);
+			}
+
+			for (SseEmitter emitter : publishedEmitters) {
+				try {
+					emitter.send(SseEmitter.event().name("job").data(jobDto));
+				} catch (IOException | IllegalStateException e) { // the client went away
+					removeEmitter(emitter);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package pt.ist.socialsoftware.mono2micro.manager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static pt.ist.socialsoftware.mono2micro.utils.Constants.JOBS_RETENTION;
+import static pt.ist.socialsoftware.mono2micro.utils.Constants.JOBS_THREADS;
+
+/**
+ * Runs the long running operations in the background, outside of the request threads.
+ *
+ * At most JOBS_THREADS jobs run at a time and the jobs of a codebase run one at a time, in the order they were
+ * submitted, since they read and write the same documents. Each codebase has a queue of jobs whose head is the
+ * only one given to the executor, and the next one is given when it finishes. Finished jobs are kept for
+ * JOBS_RETENTION milliseconds, so that their results can be fetched.
+ */
+public class JobManager {
+
+	private static JobManager instance = null;
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(JOBS_THREADS, r -> {
+		Thread thread = new Thread(r, "job-" + threadCount.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Map<String, Job> jobs = new ConcurrentHashMap<>(); // <jobID, Job>
+	private final Map<String, Deque<Job>> codebasesJobs = new HashMap<>(); // <codebaseName, unfinished jobs>
+
+	private JobManager() {}
+
+	public static synchronized JobManager getInstance() {
+		if (instance == null)
+			instance = new JobManager();
+		return instance;
+	}
+
+	public Job submit(
+		String codebaseName,
+		String type,
+		Job.Task task
+	) {
+		removeExpiredJobs();
+
+		Job job = new Job(UUID.randomUUID().toString(), codebaseName, type, task);
+		jobs.put(job.getId(), job);
+
+		synchronized (codebasesJobs) {
+			Deque<Job> codebaseJobs = codebasesJobs.computeIfAbsent(codebaseName, name -> new ArrayDeque<>());
+			codebaseJobs.addLast(job);
+
+			if (codebaseJobs.size() == 1)
+				start(job);
+		}
+
+		return job;
+	}
+
+	private void start(Job job) {
+		job.submit(executor, () -> {
+			try {
+				job.run();
+			} finally {
+				startNext(job);
+			}
+		});
+	}
+
+	private void startNext(Job job) {
+		synchronized (codebasesJobs) {
+			Deque<Job> codebaseJobs = codebasesJobs.get(job.getCodebaseName());
+			codebaseJobs.removeFirst();
+
+			if (codebaseJobs.isEmpty())
+				codebasesJobs.remove(job.getCodebaseName());
+			else
+				start(codebaseJobs.getFirst());
+		}
+	}
+
+	public Job getJob(String jobID) {
+		removeExpiredJobs();
+
+		return jobs.get(jobID);
+	}
+
+	// every job kept, or only the ones of the codebase, oldest first
+	public List<Job> getJobs(String codebaseName) {
+		removeExpiredJobs();
+
+		List<Job> codebaseJobs = new ArrayList<>();
+
+		for (Job job : jobs.values())
+			if (codebaseName == null || codebaseName.equals(job.getCodebaseName()))
+				codebaseJobs.add(job);
+
+		codebaseJobs.sort(Comparator.comparingLong(job -> job.getDto().getCreatedTime()));
+
+		return codebaseJobs;
+	}
+
+	// false if there is no such job or it already finished
+	public boolean cancel(String jobID) {
+		Job job = jobs.get(jobID);
+
+		return job != null && job.cancel();
+	}
+
+	private void removeExpiredJobs() {
+		long now = System.currentTimeMillis();
+
+		jobs.values().removeIf(job -> job.isFinished() && now - job.getFinishedTime() > JOBS_RETENTION);
+	}
+}
@@ -0,0 +1,98 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cuts explored by the analyser: every combination of the access, write, read and sequence weights in steps
+ * of 10%, each cut into 3 up to 3, 5 or 10 clusters depending on the number of entities, plus a last cut
+ * with one cluster per entity to discover the max complexity possible.
+ *
+ * The cuts of a weight combination share the same linkage, so they are grouped by combination.
+ */
+public class AnalyserCuts {
+	private static final int INTERVAL = 10;
+	private static final int MULTIPLIER = 10;
+	private static final int MIN_CLUSTERS = 3;
+	private static final int CLUSTER_STEP = 1;
+
+	public static class WeightCombination {
+		private final int[] weights; // access, write, read and sequence, in percentage
+		private final List<Integer> numbersOfClusters = new ArrayList<>();
+
+		private WeightCombination(int accessWeight, int writeWeight, int readWeight, int sequenceWeight) {
+			this.weights = new int[] {accessWeight, writeWeight, readWeight, sequenceWeight};
+		}
+
+		public int[] getWeights() { return weights; }
+
+		public float[] getMeasureWeights() {
+			return new float[] {weights[0] / 100f, weights[1] / 100f, weights[2] / 100f, weights[3] / 100f};
+		}
+
+		public List<Integer> getNumbersOfClusters() { return numbersOfClusters; }
+
+		public String getCutName(int numberOfClusters) {
+			return weights[0] + "," + weights[1] + "," + weights[2] + "," + weights[3] + "," + numberOfClusters;
+		}
+	}
+
+	private AnalyserCuts() {}
+
+	public static List<WeightCombination> getWeightCombinations(int totalNumberOfEntities)
+		throws Exception
+	{
+		int maxClusters;
+
+		if (3 < totalNumberOfEntities && totalNumberOfEntities < 10)
+			maxClusters = 3;
+		else if (10 <= totalNumberOfEntities && totalNumberOfEntities < 20)
+			maxClusters = 5;
+		else if (20 <= totalNumberOfEntities)
+			maxClusters = 10;
+		else
+			throw new Exception("Number of entities is too small (less than 4)");
+
+		List<WeightCombination> weightCombinations = new ArrayList<>();
+
+		for (int a = INTERVAL; a >= 0; a--) {
+			int remainder = INTERVAL - a;
+
+			for (int w = remainder; w >= 0; w--) {
+				int remainder2 = remainder - w;
+
+				for (int r = remainder2; r >= 0; r--) {
+					int s = remainder2 - r;
+
+					WeightCombination weightCombination = new WeightCombination(
+						a * MULTIPLIER,
+						w * MULTIPLIER,
+						r * MULTIPLIER,
+						s * MULTIPLIER
+					);
+
+					for (int n = MIN_CLUSTERS; n <= maxClusters; n += CLUSTER_STEP)
+						weightCombination.numbersOfClusters.add(n);
+
+					weightCombinations.add(weightCombination);
+				}
+			}
+		}
+
+		// last cut to discover the max complexity possible (each cluster is a singleton)
+		WeightCombination singletons = new WeightCombination(INTERVAL * MULTIPLIER, 0, 0, 0);
+		singletons.numbersOfClusters.add(totalNumberOfEntities);
+		weightCombinations.add(singletons);
+
+		return weightCombinations;
+	}
+
+	public static int getNumberOfCuts(List<WeightCombination> weightCombinations) {
+		int numberOfCuts = 0;
+
+		for (WeightCombination weightCombination : weightCombinations)
+			numberOfCuts += weightCombination.numbersOfClusters.size();
+
+		return numberOfCuts;
+	}
+}
@@ -0,0 +1,329 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import pt.ist.socialsoftware.mono2micro.dto.AnalyserResultDto;
+import pt.ist.socialsoftware.mono2micro.dto.AnalyserResultsQueryDto;
+import pt.ist.socialsoftware.mono2micro.dto.CutInfoDto;
+import pt.ist.socialsoftware.mono2micro.dto.RangeDto;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Columnar index of an analyser results file, so that its cuts can be filtered and sorted without
+ * deserializing the controller specs of every cut.
+ *
+ * The values of each metric are kept in an array of their own, with a row per cut, and the controller specs
+ * of a cut are only read from the file, at the byte offset where they start, for the cuts that are returned.
+ * The index is kept in memory and is rebuilt whenever the file size or modification date no longer match the
+ * ones it was built from. A file still being written by the analyser is indexed up to its last complete cut.
+ */
+public class AnalyserResultsIndex {
+
+	public static class Result {
+		public int total; // rows that are in every range
+		public int[] rows; // the ones after the offset and up to the limit, in the order asked for
+	}
+
+	// in the order they are written by the CutInfoDtoSerializer
+	public static final List<String> METRICS = Collections.unmodifiableList(Arrays.asList(
+		"accessWeight",
+		"writeWeight",
+		"readWeight",
+		"sequenceWeight",
+		"numberClusters",
+		"maxClusterSize",
+		"cohesion",
+		"coupling",
+		"complexity",
+		"performance",
+		"accuracy",
+		"precision",
+		"recall",
+		"specificity",
+		"fmeasure",
+		"mojoCommon",
+		"mojoBiggest",
+		"mojoNew",
+		"mojoSingletons"
+	));
+
+	private static final Map<String, AnalyserResultsIndex> indexes = new ConcurrentHashMap<>();
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final File file;
+	private final long fileSize;
+	private final long fileLastModified;
+
+	private int size = 0;
+	private String[] cutNames = new String[64];
+	private double[][] columns = new double[METRICS.size()][64]; // [metric][row], NaN when the cut does not have it
+	private long[] controllerSpecsOffsets = new long[64]; // -1 when the cut does not have them
+
+	private AnalyserResultsIndex(File file) {
+		this.file = file;
+		this.fileSize = file.length();
+		this.fileLastModified = file.lastModified();
+	}
+
+	public int getSize() { return size; }
+
+	public String getCutName(int row) { return cutNames[row]; }
+
+	public double getValue(String metric, int row) { return columns[getMetricIndex(metric)][row]; }
+
+	private boolean isUpToDate() {
+		return fileSize == file.length() && fileLastModified == file.lastModified();
+	}
+
+	public static AnalyserResultsIndex forFile(String filePath) throws IOException {
+		AnalyserResultsIndex index = indexes.get(filePath);
+
+		if (index != null && index.isUpToDate())
+			return index;
+
+		index = build(new File(filePath));
+		indexes.put(filePath, index);
+
+		return index;
+	}
+
+	public static AnalyserResultsIndex build(File file) throws IOException {
+		AnalyserResultsIndex index = new AnalyserResultsIndex(file);
+		JsonFactory jsonfactory = mapper.getFactory();
+
+		try (JsonParser jsonParser = jsonfactory.createParser(file)) {
+			if (jsonParser.nextToken() != JsonToken.START_OBJECT)
+				throw new IOException("Json must start with a left curly brace");
+
+			try {
+				while (jsonParser.nextValue() == JsonToken.START_OBJECT)
+					index.addCut(jsonParser);
+
+			} catch (JsonParseException e) { // the analyser did not finish writing the file yet
+				System.err.println("Analyser results " + file.getPath() + " indexed up to cut " + index.size + ": " + e.getOriginalMessage());
+			}
+		}
+
+		return index;
+	}
+
+	// the parser is at the START_OBJECT of the cut, the row is only added once its END_OBJECT is read
+	private void addCut(JsonParser jsonParser) throws IOException {
+		String cutName = jsonParser.getCurrentName();
+		double[] values = new double[METRICS.size()];
+		Arrays.fill(values, Double.NaN);
+		long controllerSpecsOffset = -1;
+
+		while (jsonParser.nextValue() != JsonToken.END_OBJECT) {
+			String fieldName = jsonParser.getCurrentName();
+			int metricIndex = METRICS.indexOf(fieldName);
+
+			if (metricIndex != -1 && jsonParser.getCurrentToken().isNumeric()) {
+				values[metricIndex] = jsonParser.getDoubleValue();
+
+			} else {
+				if ("controllerSpecs".equals(fieldName))
+					controllerSpecsOffset = jsonParser.getTokenLocation().getByteOffset();
+
+				jsonParser.skipChildren();
+			}
+		}
+
+		if (size == cutNames.length) {
+			int capacity = size * 2;
+
+			cutNames = Arrays.copyOf(cutNames, capacity);
+			controllerSpecsOffsets = Arrays.copyOf(controllerSpecsOffsets, capacity);
+			for (int i = 0; i < columns.length; i++)
+				columns[i] = Arrays.copyOf(columns[i], capacity);
+		}
+
+		cutNames[size] = cutName;
+		controllerSpecsOffsets[size] = controllerSpecsOffset;
+		for (int i = 0; i < columns.length; i++)
+			columns[i][size] = values[i];
+
+		size++;
+	}
+
+	private static int getMetricIndex(String metric) {
+		int metricIndex = METRICS.indexOf(metric);
+
+		if (metricIndex == -1)
+			throw new IllegalArgumentException("Unknown analyser metric: " + metric);
+
+		return metricIndex;
+	}
+
+	/**
+	 * The rows whose values are in every range of the query, sorted by its metric with ties kept in file order
+	 * and NaN values last. With a limit, only the first offset + limit rows are selected, through a heap, instead
+	 * of sorting every row that matches.
+	 */
+	public Result query(AnalyserResultsQueryDto query) {
+		int[] matches = new int[size];
+		int total = 0;
+
+		List<Map.Entry<String, RangeDto>> ranges = new ArrayList<>(query.getRanges().entrySet());
+		int[] rangeMetrics = new int[ranges.size()];
+		for (int i = 0; i < rangeMetrics.length; i++)
+			rangeMetrics[i] = getMetricIndex(ranges.get(i).getKey());
+
+		rows:
+		for (int row = 0; row < size; row++) {
+			for (int i = 0; i < rangeMetrics.length; i++) {
+				RangeDto range = ranges.get(i).getValue();
+				double value = columns[rangeMetrics[i]][row];
+
+				// NaN is never in a range with a bound
+				if (range.getMin() != null && !(value >= range.getMin()))
+					continue rows;
+				if (range.getMax() != null && !(value <= range.getMax()))
+					continue rows;
+			}
+
+			matches[total++] = row;
+		}
+
+		int from = Math.min(Math.max(query.getOffset(), 0), total);
+		int to = query.getLimit() > 0 ? (int) Math.min((long) from + query.getLimit(), total) : total;
+
+		Result result = new Result();
+		result.total = total;
+
+		if (query.getSortBy() == null) {
+			result.rows = Arrays.copyOfRange(matches, from, to);
+			return result;
+		}
+
+		double[] column = columns[getMetricIndex(query.getSortBy())];
+		boolean ascending = query.isAscending();
+
+		Comparator<Integer> comparator = (row1, row2) -> {
+			double value1 = column[row1];
+			double value2 = column[row2];
+
+			if (Double.isNaN(value1) || Double.isNaN(value2)) {
+				if (Double.isNaN(value1) != Double.isNaN(value2))
+					return Double.isNaN(value1) ? 1 : -1;
+			} else {
+				int comparison = ascending ? Double.compare(value1, value2) : Double.compare(value2, value1);
+				if (comparison != 0)
+					return comparison;
+			}
+
+			return Integer.compare(row1, row2);
+		};
+
+		Integer[] sortedRows;
+
+		if (to < total) {
+			// keeps the best "to" rows, with the worst of them at the head to be replaced
+			PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(to, 1), comparator.reversed());
+
+			for (int i = 0; i < total; i++) {
+				if (heap.size() < to) {
+					heap.add(matches[i]);
+				} else if (to > 0 && comparator.compare(matches[i], heap.peek()) < 0) {
+					heap.poll();
+					heap.add(matches[i]);
+				}
+			}
+
+			sortedRows = heap.toArray(new Integer[0]);
+
+		} else {
+			sortedRows = new Integer[total];
+			for (int i = 0; i < total; i++)
+				sortedRows[i] = matches[i];
+		}
+
+		Arrays.sort(sortedRows, comparator);
+
+		result.rows = new int[to - from];
+		for (int i = from; i < to; i++)
+			result.rows[i - from] = sortedRows[i];
+
+		return result;
+	}
+
+	// <cutName, CutInfoDto> in the order of the rows, with a null controllerSpecs unless they are asked for
+	public LinkedHashMap<String, CutInfoDto> getCutInfos(
+		int[] rows,
+		boolean includeControllerSpecs
+	)
+		throws IOException
+	{
+		LinkedHashMap<String, CutInfoDto> cutInfos = new LinkedHashMap<>();
+
+		if (!includeControllerSpecs) {
+			for (int row : rows)
+				cutInfos.put(cutNames[row], getCutInfo(row));
+
+			return cutInfos;
+		}
+
+		if (!isUpToDate())
+			throw new IOException("Analyser results " + file.getPath() + " changed since they were indexed");
+
+		JsonFactory jsonfactory = mapper.getFactory();
+
+		try (FileInputStream is = new FileInputStream(file)) {
+			for (int row : rows) {
+				CutInfoDto cutInfo = getCutInfo(row);
+
+				if (controllerSpecsOffsets[row] != -1) {
+					is.getChannel().position(controllerSpecsOffsets[row]);
+
+					// the parser is not closed, as that would close the stream of the next rows
+					JsonParser jsonParser = jsonfactory.createParser(is);
+					jsonParser.nextToken();
+
+					cutInfo.setControllerSpecs(jsonParser.readValueAs(new TypeReference<HashMap<String, HashMap<String, Float>>>() {}));
+				}
+
+				cutInfos.put(cutNames[row], cutInfo);
+			}
+		}
+
+		return cutInfos;
+	}
+
+	private CutInfoDto getCutInfo(int row) {
+		AnalyserResultDto analyserResultDto = new AnalyserResultDto();
+		analyserResultDto.setAccessWeight((float) getValue("accessWeight", row));
+		analyserResultDto.setWriteWeight((float) getValue("writeWeight", row));
+		analyserResultDto.setReadWeight((float) getValue("readWeight", row));
+		analyserResultDto.setSequenceWeight((float) getValue("sequenceWeight", row));
+		analyserResultDto.setNumberClusters((float) getValue("numberClusters", row));
+		analyserResultDto.setMaxClusterSize((int) getValue("maxClusterSize", row));
+		analyserResultDto.setCohesion((float) getValue("cohesion", row));
+		analyserResultDto.setCoupling((float) getValue("coupling", row));
+		analyserResultDto.setComplexity((float) getValue("complexity", row));
+		analyserResultDto.setPerformance((float) getValue("performance", row));
+		analyserResultDto.setAccuracy((float) getValue("accuracy", row));
+		analyserResultDto.setPrecision((float) getValue("precision", row));
+		analyserResultDto.setRecall((float) getValue("recall", row));
+		analyserResultDto.setSpecificity((float) getValue("specificity", row));
+		analyserResultDto.setFmeasure((float) getValue("fmeasure", row));
+		analyserResultDto.setMojoCommon(getValue("mojoCommon", row));
+		analyserResultDto.setMojoBiggest(getValue("mojoBiggest", row));
+		analyserResultDto.setMojoNew(getValue("mojoNew", row));
+		analyserResultDto.setMojoSingletons(getValue("mojoSingletons", row));
+
+		CutInfoDto cutInfo = new CutInfoDto();
+		cutInfo.setAnalyserResultDto(analyserResultDto);
+
+		return cutInfo;
+	}
+}
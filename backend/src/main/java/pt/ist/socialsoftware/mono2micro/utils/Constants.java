@@ -7,10 +7,21 @@ public final class Constants {
   
   public static String CODEBASES_PATH = "src/main/resources/codebases/";
   public static String RESOURCES_PATH = "src/main/resources/";
-  public static String MOJO_RESOURCES_PATH = "src/main/java/pt/ist/socialsoftware/mono2micro/utils/mojoCalculator/" +
-          "src/main/resources/";
-  public static String PYTHON = PropertiesManager.getProperties().getProperty("python");
   public static final String DEFAULT_REDESIGN_NAME = "Monolith Trace";
+  public static int DOCUMENT_CACHE_MAX_ENTRIES = Integer.parseInt(PropertiesManager.getProperties().getProperty("documentCache.maxEntries", "256"));
+  public static long DOCUMENT_CACHE_MAX_SIZE = Long.parseLong(PropertiesManager.getProperties().getProperty("documentCache.maxSize", String.valueOf(256L * 1024 * 1024))); // bytes of json
+  public static long DOCUMENT_CACHE_FLUSH_DELAY = Long.parseLong(PropertiesManager.getProperties().getProperty("documentCache.flushDelay", "1000")); // milliseconds
+  public static boolean ANALYSER_WRITE_CUTS = Boolean.parseBoolean(PropertiesManager.getProperties().getProperty("analyser.writeCuts", "false"));
+  public static int ANALYSER_THREADS = Integer.parseInt(PropertiesManager.getProperties().getProperty("analyser.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+  public static int SIMILARITY_MATRIX_THREADS = Integer.parseInt(PropertiesManager.getProperties().getProperty("similarityMatrix.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+  public static int MOVE_EVALUATION_THREADS = Integer.parseInt(PropertiesManager.getProperties().getProperty("moveEvaluation.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+  public static int OPTIMISER_THREADS = Integer.parseInt(PropertiesManager.getProperties().getProperty("optimiser.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+  public static int COMPARISON_THREADS = Integer.parseInt(PropertiesManager.getProperties().getProperty("comparison.threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+  public static int JOBS_THREADS = Integer.parseInt(PropertiesManager.getProperties().getProperty("jobs.threads", "2"));
+  public static long JOBS_RETENTION = Long.parseLong(PropertiesManager.getProperties().getProperty("jobs.retention", "3600000")); // milliseconds
+  public static boolean WEIGHT_BY_FREQUENCY = Boolean.parseBoolean(PropertiesManager.getProperties().getProperty("metrics.weightByFrequency", "false"));
+  public static boolean INCREMENTAL_METRICS = Boolean.parseBoolean(PropertiesManager.getProperties().getProperty("metrics.incremental", "true"));
+  public static boolean TRACE_STORE_ENABLED = Boolean.parseBoolean(PropertiesManager.getProperties().getProperty("traceStore.enabled", "true"));
 
   public enum TraceType {
     ALL,
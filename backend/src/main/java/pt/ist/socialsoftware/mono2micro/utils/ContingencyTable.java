@@ -0,0 +1,308 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pair counting comparison of two decompositions over the entities they have in common.
+ *
+ * Every common entity is indexed by its cluster in each decomposition and the number of entities of each pair
+ * of clusters is kept in a table, so that the pairs in the same cluster in both decompositions are the sum of
+ * the pairs of every cell, without looking at the pairs of entities themselves. The pairs that are in the same
+ * cluster in only one of the decompositions are only listed when asked for, a page at a time.
+ */
+public class ContingencyTable {
+	private final String[] clusters1;
+	private final String[] clusters2;
+
+	private final short[] entities; // in the order of the clusters of the first decomposition
+	private final int[] entityCluster1;
+	private final int[] entityCluster2;
+
+	private final int[][] counts; // [cluster1][cluster2] -> number of entities
+	private final int[] clusterSizes1;
+	private final int[] clusterSizes2;
+
+	// positions of the entities of each cluster, in ascending order
+	private final int[][] clusterEntities1;
+	private final int[][] clusterEntities2;
+
+	private final long truePositive;
+	private final long falseNegative;
+	private final long falsePositive;
+	private final long trueNegative;
+
+	public ContingencyTable(
+		Map<String, Set<Short>> decomposition1,
+		Map<String, Set<Short>> decomposition2
+	) {
+		this(new Partitions(decomposition1, decomposition2));
+	}
+
+	/**
+	 * Comparison over the entities with a cluster in both partitions, which are indexed by entity and hold the
+	 * position of the entity's cluster in the cluster names, or -1 when it has none.
+	 */
+	public ContingencyTable(
+		short[] entityIDs,
+		String[] clusters1,
+		int[] partition1,
+		String[] clusters2,
+		int[] partition2
+	) {
+		this.clusters1 = clusters1;
+		this.clusters2 = clusters2;
+
+		int n = 0;
+
+		for (int i = 0; i < entityIDs.length; i++)
+			if (partition1[i] >= 0 && partition2[i] >= 0)
+				n++;
+
+		entities = new short[n];
+		entityCluster1 = new int[n];
+		entityCluster2 = new int[n];
+		counts = new int[clusters1.length][clusters2.length];
+		clusterSizes1 = new int[clusters1.length];
+		clusterSizes2 = new int[clusters2.length];
+
+		int position = 0;
+
+		for (int i = 0; i < entityIDs.length; i++) {
+			int c1 = partition1[i];
+			int c2 = partition2[i];
+
+			if (c1 < 0 || c2 < 0)
+				continue;
+
+			entities[position] = entityIDs[i];
+			entityCluster1[position] = c1;
+			entityCluster2[position] = c2;
+
+			counts[c1][c2]++;
+			clusterSizes1[c1]++;
+			clusterSizes2[c2]++;
+			position++;
+		}
+
+		clusterEntities1 = groupByCluster(entityCluster1, clusterSizes1);
+		clusterEntities2 = groupByCluster(entityCluster2, clusterSizes2);
+
+		long sameCluster1 = 0;
+		long sameCluster2 = 0;
+		long sameCluster1And2 = 0;
+
+		for (int c1 = 0; c1 < clusters1.length; c1++) {
+			sameCluster1 += pairs(clusterSizes1[c1]);
+
+			for (int c2 = 0; c2 < clusters2.length; c2++)
+				sameCluster1And2 += pairs(counts[c1][c2]);
+		}
+
+		for (int c2 = 0; c2 < clusters2.length; c2++)
+			sameCluster2 += pairs(clusterSizes2[c2]);
+
+		truePositive = sameCluster1And2;
+		falseNegative = sameCluster1 - sameCluster1And2;
+		falsePositive = sameCluster2 - sameCluster1And2;
+		trueNegative = pairs(n) - truePositive - falseNegative - falsePositive;
+	}
+
+	private ContingencyTable(Partitions partitions) {
+		this(
+			partitions.entityIDs,
+			partitions.clusters1,
+			partitions.partition1,
+			partitions.clusters2,
+			partitions.partition2
+		);
+	}
+
+	// the entities in the order of the clusters of the first decomposition, then the ones only in the second
+	private static class Partitions {
+		final String[] clusters1;
+		final String[] clusters2;
+		final short[] entityIDs;
+		final int[] partition1;
+		final int[] partition2;
+
+		Partitions(
+			Map<String, Set<Short>> decomposition1,
+			Map<String, Set<Short>> decomposition2
+		) {
+			clusters1 = decomposition1.keySet().toArray(new String[0]);
+			clusters2 = decomposition2.keySet().toArray(new String[0]);
+
+			// an entity in more than one cluster belongs to the last one
+			Map<Short, Integer> entityIDToCluster1 = new LinkedHashMap<>();
+			Map<Short, Integer> entityIDToCluster2 = new HashMap<>();
+
+			for (int c1 = 0; c1 < clusters1.length; c1++)
+				for (short entityID : decomposition1.get(clusters1[c1]))
+					entityIDToCluster1.put(entityID, c1);
+
+			for (int c2 = 0; c2 < clusters2.length; c2++)
+				for (short entityID : decomposition2.get(clusters2[c2]))
+					entityIDToCluster2.put(entityID, c2);
+
+			int n = entityIDToCluster1.size();
+
+			for (short entityID : entityIDToCluster2.keySet())
+				if (!entityIDToCluster1.containsKey(entityID))
+					n++;
+
+			entityIDs = new short[n];
+			partition1 = new int[n];
+			partition2 = new int[n];
+
+			int i = 0;
+
+			for (Map.Entry<Short, Integer> entry : entityIDToCluster1.entrySet()) {
+				entityIDs[i] = entry.getKey();
+				partition1[i] = entry.getValue();
+				partition2[i] = entityIDToCluster2.getOrDefault(entry.getKey(), -1);
+				i++;
+			}
+
+			for (Map.Entry<Short, Integer> entry : entityIDToCluster2.entrySet()) {
+				if (entityIDToCluster1.containsKey(entry.getKey()))
+					continue;
+
+				entityIDs[i] = entry.getKey();
+				partition1[i] = -1;
+				partition2[i] = entry.getValue();
+				i++;
+			}
+		}
+	}
+
+	private static long pairs(long n) {
+		return n * (n - 1) / 2;
+	}
+
+	private static int[][] groupByCluster(
+		int[] entityCluster,
+		int[] clusterSizes
+	) {
+		int[][] clusterEntities = new int[clusterSizes.length][];
+		int[] filled = new int[clusterSizes.length];
+
+		for (int c = 0; c < clusterSizes.length; c++)
+			clusterEntities[c] = new int[clusterSizes[c]];
+
+		for (int position = 0; position < entityCluster.length; position++) {
+			int c = entityCluster[position];
+			clusterEntities[c][filled[c]++] = position;
+		}
+
+		return clusterEntities;
+	}
+
+	public int getNumberOfEntities() { return entities.length; }
+
+	// pairs in the same cluster in both decompositions
+	public long getTruePositive() { return truePositive; }
+
+	// pairs in the same cluster in the first decomposition only
+	public long getFalseNegative() { return falseNegative; }
+
+	// pairs in the same cluster in the second decomposition only
+	public long getFalsePositive() { return falsePositive; }
+
+	// pairs in different clusters in both decompositions
+	public long getTrueNegative() { return trueNegative; }
+
+	public long getNumberOfFalsePairs() { return falseNegative + falsePositive; }
+
+	/**
+	 * Up to limit pairs in the same cluster in only one of the decompositions, skipping the first offset ones.
+	 * A pair is [e1ID, e1ClusterG1, e1ClusterG2, e2ID, e2ClusterG1, e2ClusterG2], with e1 before e2 in the
+	 * order of the entities, and the pairs are ordered by e1 and then by e2.
+	 *
+	 * The pairs of an entity are the ones with the entities after it in its cluster of one decomposition and
+	 * not in its cluster of the other, so they are counted from the remaining entities of its clusters and
+	 * only listed for the entities the page reaches.
+	 */
+	public List<String[]> getFalsePairs(
+		long offset,
+		int limit
+	) {
+		List<String[]> falsePairs = new ArrayList<>();
+
+		if (limit <= 0)
+			return falsePairs;
+
+		// entities after the current one, by cluster
+		int[] remaining1 = clusterSizes1.clone();
+		int[] remaining2 = clusterSizes2.clone();
+		int[][] remaining = new int[counts.length][];
+		for (int c1 = 0; c1 < counts.length; c1++)
+			remaining[c1] = counts[c1].clone();
+
+		// index of the first entity after the current one in clusterEntities1 and clusterEntities2
+		int[] next1 = new int[clusters1.length];
+		int[] next2 = new int[clusters2.length];
+
+		long skipped = 0;
+
+		for (int p = 0; p < entities.length && falsePairs.size() < limit; p++) {
+			int c1 = entityCluster1[p];
+			int c2 = entityCluster2[p];
+
+			remaining1[c1]--;
+			remaining2[c2]--;
+			remaining[c1][c2]--;
+			next1[c1]++;
+			next2[c2]++;
+
+			long entityFalsePairs = remaining1[c1] + remaining2[c2] - 2L * remaining[c1][c2];
+
+			if (skipped + entityFalsePairs <= offset) {
+				skipped += entityFalsePairs;
+				continue;
+			}
+
+			// both lists are ascending and only share the entities of the same cell, which are not false pairs
+			int[] sameCluster1 = clusterEntities1[c1];
+			int[] sameCluster2 = clusterEntities2[c2];
+			int i = next1[c1];
+			int j = next2[c2];
+
+			while ((i < sameCluster1.length || j < sameCluster2.length) && falsePairs.size() < limit) {
+				int q;
+
+				if (j == sameCluster2.length || (i < sameCluster1.length && sameCluster1[i] < sameCluster2[j])) {
+					q = sameCluster1[i++];
+
+				} else if (i == sameCluster1.length || sameCluster2[j] < sameCluster1[i]) {
+					q = sameCluster2[j++];
+
+				} else {
+					i++;
+					j++;
+					continue;
+				}
+
+				if (skipped < offset) {
+					skipped++;
+					continue;
+				}
+
+				falsePairs.add(new String[] {
+					String.valueOf(entities[p]),
+					clusters1[c1],
+					clusters2[c2],
+					String.valueOf(entities[q]),
+					clusters1[entityCluster1[q]],
+					clusters2[entityCluster2[q]]
+				});
+			}
+		}
+
+		return falsePairs;
+	}
+}
@@ -12,6 +12,12 @@ import java.util.*;
 
 public class ControllerTracesIterator {
 	private JsonParser jsonParser;
+	private JsonFactory jsonfactory;
+	private DatafileIndex index; // null means controllers are found by scanning the datafile
+	private TraceStore traceStore; // when present, traces are read from it instead of the json datafile
+	private Iterator<String> traceStoreControllers;
+	private int currentTrace;
+	private int endTrace;
 	private int limit = 0; // 0 means no limit aka all traces will be parsed
 	private int tracesCounter; // #traces
 	String filePath;
@@ -22,6 +28,10 @@ public class ControllerTracesIterator {
 	) throws IOException {
 		this.limit = limit;
 		this.filePath = filePath;
+		this.traceStore = TraceStore.forDatafile(filePath);
+
+		if (traceStore == null)
+			this.index = DatafileIndex.forDatafile(filePath);
 
 		init();
 	}
@@ -29,8 +39,14 @@ public class ControllerTracesIterator {
 	private void init() throws IOException {
 		this.tracesCounter = 0;
 
+		if (traceStore != null) {
+			traceStoreControllers = traceStore.getControllerNames().iterator();
+			currentTrace = endTrace = 0;
+			return;
+		}
+
 		ObjectMapper mapper = new ObjectMapper();
-		JsonFactory jsonfactory = mapper.getFactory();
+		jsonfactory = mapper.getFactory();
 
 		jsonParser = jsonfactory.createParser(new FileInputStream(filePath));
 
@@ -46,20 +62,23 @@ public class ControllerTracesIterator {
 	}
 
 	public void reset() throws IOException {
-		if (!jsonParser.isClosed())
+		if (jsonParser != null && !jsonParser.isClosed())
 			jsonParser.close();
 
 		init();
 	}
 
 	public TraceDto nextTrace() throws IOException {
+		if (traceStore != null)
+			return nextTraceStoreTrace();
+
 		if (jsonParser.getCurrentToken() == JsonToken.END_ARRAY || jsonParser.getCurrentToken() == JsonToken.END_OBJECT)
 			return null;
 
 		TraceDto t = jsonParser.readValueAs(TraceDto.class);
 		jsonParser.nextValue();
 
-		if (t.getElements() != null && t.getElements().size() > 0)
+		if (t.hasElements())
 			tracesCounter++;
 
 		return t;
@@ -72,24 +91,16 @@ public class ControllerTracesIterator {
 	{
 		tracesCounter = 0;
 
-		while (true) {
-			if (jsonParser.getCurrentToken() == JsonToken.START_OBJECT) {
-				if (
-					jsonParser.getCurrentName() != null &&
-					(controllerName == null || jsonParser.getCurrentName().equals(controllerName)) // null means every controller is acceptable
-				) {
-					break;
-				}
-
-				jsonParser.skipChildren();
-
-			} else if (jsonParser.getCurrentToken() == JsonToken.START_ARRAY) {
-				jsonParser.skipChildren();
-			}
-
-			jsonParser.nextValue();
+		if (traceStore != null) {
+			seekTraceStoreController(controllerName);
+			return;
 		}
 
+		if (controllerName != null && index != null)
+			seekController(controllerName);
+		else
+			scanController(controllerName);
+
 		findTraceFieldLoop:
 		while (jsonParser.nextValue() != JsonToken.END_OBJECT) {
 			switch (jsonParser.getCurrentName()) {
@@ -111,11 +122,93 @@ public class ControllerTracesIterator {
 		}
 	}
 
+	private void scanController(
+		String controllerName
+	)
+		throws IOException
+	{
+		while (true) {
+			if (jsonParser.getCurrentToken() == JsonToken.START_OBJECT) {
+				if (
+					jsonParser.getCurrentName() != null &&
+					(controllerName == null || jsonParser.getCurrentName().equals(controllerName)) // null means every controller is acceptable
+				) {
+					break;
+				}
+
+				jsonParser.skipChildren();
+
+			} else if (jsonParser.getCurrentToken() == JsonToken.START_ARRAY) {
+				jsonParser.skipChildren();
+			}
+
+			jsonParser.nextValue();
+		}
+	}
+
+	private void seekController(
+		String controllerName
+	)
+		throws IOException
+	{
+		if (!jsonParser.isClosed())
+			jsonParser.close();
+
+		DatafileIndex.ControllerEntry entry = index.getController(controllerName);
+
+		if (entry == null) { // the controller has no traces in this datafile
+			jsonParser = jsonfactory.createParser("{}");
+			jsonParser.nextToken();
+			return;
+		}
+
+		FileInputStream is = new FileInputStream(filePath);
+		is.getChannel().position(entry.getOffset());
+
+		jsonParser = jsonfactory.createParser(is);
+		jsonParser.nextToken(); // JsonToken.START_OBJECT of the controller
+	}
+
+	private void seekTraceStoreController(
+		String controllerName
+	) {
+		if (controllerName == null) // null means every controller is acceptable
+			controllerName = traceStoreControllers.hasNext() ? traceStoreControllers.next() : null;
+
+		TraceStore.ControllerEntry entry = controllerName == null ? null : traceStore.getController(controllerName);
+
+		if (entry == null) { // the controller has no traces in this datafile
+			currentTrace = endTrace = 0;
+			return;
+		}
+
+		currentTrace = entry.getFirstTrace();
+		endTrace = entry.getFirstTrace() + entry.getTracesCount();
+	}
+
+	private TraceDto nextTraceStoreTrace() {
+		if (currentTrace >= endTrace)
+			return null;
+
+		TraceDto t = traceStore.getTrace(currentTrace++);
+
+		if (t.hasElements())
+			tracesCounter++;
+
+		return t;
+	}
+
 	public boolean hasMoreControllers() {
+		if (traceStore != null)
+			return traceStoreControllers.hasNext();
+
 		return jsonParser.getCurrentToken() != JsonToken.END_OBJECT; // FIXME TEST ME
 	}
 
 	public boolean hasMoreTraces() {
+		if (traceStore != null)
+			return currentTrace < endTrace && (limit == 0 || tracesCounter < limit);
+
 		return (
 			jsonParser.getCurrentToken() != JsonToken.END_ARRAY &&
 			jsonParser.getCurrentToken() != JsonToken.END_OBJECT &&
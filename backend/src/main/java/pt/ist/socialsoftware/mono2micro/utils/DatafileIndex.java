@@ -0,0 +1,177 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Byte offset and length of every controller object in a datafile, so that a controller's traces
+ * can be read without parsing the controllers that come before it.
+ *
+ * The index of datafile.json is kept next to it in datafileIndex.json and is rebuilt whenever the
+ * datafile size or modification date no longer match the ones it was built from. A datafile is indexed by one
+ * thread at a time, and the index file is replaced at once, so it is never read half written.
+ */
+public class DatafileIndex {
+
+	public static class ControllerEntry {
+		private long offset;
+		private long length;
+		private int tracesCount;
+
+		public ControllerEntry() {}
+
+		public ControllerEntry(long offset, long length, int tracesCount) {
+			this.offset = offset;
+			this.length = length;
+			this.tracesCount = tracesCount;
+		}
+
+		public long getOffset() { return offset; }
+
+		public void setOffset(long offset) { this.offset = offset; }
+
+		public long getLength() { return length; }
+
+		public void setLength(long length) { this.length = length; }
+
+		public int getTracesCount() { return tracesCount; }
+
+		public void setTracesCount(int tracesCount) { this.tracesCount = tracesCount; }
+	}
+
+	private static final Map<String, DatafileIndex> indexes = new ConcurrentHashMap<>();
+	private static final Map<String, Object> locks = new ConcurrentHashMap<>(); // <datafilePath, lock>
+
+	private long datafileSize;
+	private long datafileLastModified;
+	private Map<String, ControllerEntry> controllers = new HashMap<>();
+
+	public DatafileIndex() {}
+
+	public long getDatafileSize() { return datafileSize; }
+
+	public void setDatafileSize(long datafileSize) { this.datafileSize = datafileSize; }
+
+	public long getDatafileLastModified() { return datafileLastModified; }
+
+	public void setDatafileLastModified(long datafileLastModified) { this.datafileLastModified = datafileLastModified; }
+
+	public Map<String, ControllerEntry> getControllers() { return controllers; }
+
+	public void setControllers(Map<String, ControllerEntry> controllers) { this.controllers = controllers; }
+
+	public ControllerEntry getController(String controllerName) { return controllers.get(controllerName); }
+
+	private boolean isUpToDate(File datafile) {
+		return datafileSize == datafile.length() && datafileLastModified == datafile.lastModified();
+	}
+
+	public static DatafileIndex forDatafile(String datafilePath) throws IOException {
+		File datafile = new File(datafilePath);
+		DatafileIndex index = indexes.get(datafilePath);
+
+		if (index != null && index.isUpToDate(datafile))
+			return index;
+
+		synchronized (locks.computeIfAbsent(datafilePath, path -> new Object())) {
+			// another thread may have indexed it while this one waited
+			index = indexes.get(datafilePath);
+
+			if (index != null && index.isUpToDate(datafile))
+				return index;
+
+			index = readOrBuild(datafile);
+			indexes.put(datafilePath, index);
+
+			return index;
+		}
+	}
+
+	private static DatafileIndex readOrBuild(File datafile) throws IOException {
+		DatafileIndex index = null;
+		ObjectMapper mapper = new ObjectMapper();
+		File indexFile = getIndexFile(datafile);
+
+		if (indexFile.exists()) {
+			index = mapper.readValue(indexFile, DatafileIndex.class);
+
+			if (!index.isUpToDate(datafile))
+				index = null;
+		}
+
+		if (index == null) {
+			index = build(datafile);
+
+			File temporaryFile = new File(indexFile.getPath() + ".tmp");
+
+			try {
+				mapper.writeValue(temporaryFile, index);
+				Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				// the datafile may live in a read only directory, the index is then only kept in memory
+				System.err.println("Could not write datafile index " + indexFile.getPath() + ": " + e.getMessage());
+			}
+		}
+
+		return index;
+	}
+
+	public static File getIndexFile(File datafile) {
+		String name = datafile.getName();
+		String baseName = name.endsWith(".json") ? name.substring(0, name.length() - 5) : name;
+
+		return new File(datafile.getAbsoluteFile().getParentFile(), baseName + "Index.json");
+	}
+
+	public static DatafileIndex build(File datafile) throws IOException {
+		System.out.println("Indexing datafile " + datafile.getPath() + "...");
+
+		DatafileIndex index = new DatafileIndex();
+		index.setDatafileSize(datafile.length());
+		index.setDatafileLastModified(datafile.lastModified());
+
+		JsonFactory jsonfactory = new ObjectMapper().getFactory();
+
+		try (JsonParser jsonParser = jsonfactory.createParser(datafile)) {
+			if (jsonParser.nextToken() != JsonToken.START_OBJECT)
+				throw new IOException("Json must start with a left curly brace");
+
+			while (jsonParser.nextValue() == JsonToken.START_OBJECT) {
+				String controllerName = jsonParser.getCurrentName();
+				long offset = jsonParser.getTokenLocation().getByteOffset();
+				int tracesCount = 0;
+
+				while (jsonParser.nextValue() != JsonToken.END_OBJECT) {
+					if ("t".equals(jsonParser.getCurrentName()) && jsonParser.getCurrentToken() == JsonToken.START_ARRAY) {
+						while (jsonParser.nextToken() != JsonToken.END_ARRAY) {
+							jsonParser.skipChildren();
+							tracesCount++;
+						}
+
+					} else {
+						jsonParser.skipChildren();
+					}
+				}
+
+				long end = jsonParser.getTokenLocation().getByteOffset() + 1; // right after the closing curly brace
+
+				index.getControllers().put(
+					controllerName,
+					new ControllerEntry(offset, end - offset, tracesCount)
+				);
+			}
+		}
+
+		return index;
+	}
+}
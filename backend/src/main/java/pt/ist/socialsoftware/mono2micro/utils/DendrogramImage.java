@@ -0,0 +1,263 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Draws a linkage as scipy's dendrogram(linkage, labels=entities, distance_sort='descending') would: the child
+ * with the highest merge goes first, leaves are 10 units apart and the subtrees merged below 70% of the
+ * highest merge are coloured.
+ */
+public class DendrogramImage {
+	private static final int WIDTH = 2500;
+	private static final int HEIGHT = 1000;
+	private static final int MARGIN = 60;
+	private static final float POINTS_TO_PIXELS = 100f / 72;
+
+	// matplotlib's g, r, c, m, y and k, and b for the merges above the threshold
+	private static final Color[] CLUSTER_COLORS = {
+		new Color(0, 128, 0),
+		new Color(255, 0, 0),
+		new Color(0, 191, 191),
+		new Color(191, 0, 191),
+		new Color(191, 191, 0),
+		new Color(0, 0, 0)
+	};
+	private static final Color ABOVE_THRESHOLD_COLOR = new Color(0, 0, 255);
+
+	private DendrogramImage() {}
+
+	public static void write(
+		Linkage linkage,
+		short[] entities,
+		File file
+	)
+		throws IOException
+	{
+		int n = linkage.getSize();
+		int merges = linkage.getMergesCount();
+
+		// leaves order, children with the highest merge first
+		int[] leavesOrder = new int[n];
+		int leaves = 0;
+		Deque<Integer> stack = new ArrayDeque<>();
+		if (n > 0)
+			stack.push(n + merges - 1);
+
+		while (!stack.isEmpty()) {
+			int node = stack.pop();
+
+			if (node < n) {
+				leavesOrder[leaves++] = node;
+				continue;
+			}
+
+			stack.push(getSecondChild(linkage, node - n));
+			stack.push(getFirstChild(linkage, node - n));
+		}
+
+		double[] x = new double[n + merges];
+		for (int position = 0; position < n; position++)
+			x[leavesOrder[position]] = 5 + 10 * position;
+
+		for (int k = 0; k < merges; k++)
+			x[n + k] = (x[linkage.getLeft(k)] + x[linkage.getRight(k)]) / 2;
+
+		Color[] colors = getMergeColors(linkage);
+
+		double maxHeight = linkage.getMaxHeight() == 0 ? 1 : linkage.getMaxHeight();
+		double yLimit = maxHeight * 1.05;
+		double xLimit = Math.max(10, n * 10);
+
+		float labelsFontSize = getLabelsFontSize(n) * POINTS_TO_PIXELS;
+		double labelsRotation = Math.toRadians(getLabelsRotation(n));
+
+		BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		graphics.setColor(Color.WHITE);
+		graphics.fillRect(0, 0, WIDTH, HEIGHT);
+
+		Font labelsFont = graphics.getFont().deriveFont(labelsFontSize);
+		int labelsSpace = getLabelsSpace(graphics, labelsFont, entities, labelsRotation);
+
+		int plotLeft = MARGIN + 20;
+		int plotTop = MARGIN / 2;
+		int plotWidth = WIDTH - plotLeft - MARGIN / 2;
+		int plotHeight = HEIGHT - plotTop - labelsSpace - 10;
+
+		// axes
+		graphics.setColor(Color.BLACK);
+		graphics.drawRect(plotLeft, plotTop, plotWidth, plotHeight);
+		graphics.setFont(labelsFont.deriveFont(10 * POINTS_TO_PIXELS));
+		FontMetrics tickMetrics = graphics.getFontMetrics();
+
+		double tickStep = getTickStep(yLimit);
+		for (double tick = 0; tick <= yLimit; tick += tickStep) {
+			int tickY = plotTop + plotHeight - (int) Math.round(tick / yLimit * plotHeight);
+			String tickLabel = formatTick(tick);
+
+			graphics.drawLine(plotLeft - 5, tickY, plotLeft, tickY);
+			graphics.drawString(
+				tickLabel,
+				plotLeft - 8 - tickMetrics.stringWidth(tickLabel),
+				tickY + tickMetrics.getAscent() / 2
+			);
+		}
+
+		// merges
+		graphics.setStroke(new BasicStroke(1.5f));
+
+		for (int k = 0; k < merges; k++) {
+			int a = linkage.getLeft(k);
+			int b = linkage.getRight(k);
+
+			double xa = plotLeft + x[a] / xLimit * plotWidth;
+			double xb = plotLeft + x[b] / xLimit * plotWidth;
+			double ya = plotTop + plotHeight - getHeight(linkage, a) / yLimit * plotHeight;
+			double yb = plotTop + plotHeight - getHeight(linkage, b) / yLimit * plotHeight;
+			double y = plotTop + plotHeight - linkage.getHeight(k) / yLimit * plotHeight;
+
+			graphics.setColor(colors[k]);
+			graphics.draw(new Line2D.Double(xa, ya, xa, y));
+			graphics.draw(new Line2D.Double(xa, y, xb, y));
+			graphics.draw(new Line2D.Double(xb, y, xb, yb));
+		}
+
+		// leaves labels
+		graphics.setColor(Color.BLACK);
+		graphics.setFont(labelsFont);
+		FontMetrics labelsMetrics = graphics.getFontMetrics();
+		AffineTransform transform = graphics.getTransform();
+
+		for (int position = 0; position < n; position++) {
+			String label = String.valueOf(entities[leavesOrder[position]]);
+			double labelX = plotLeft + (5 + 10 * position) / xLimit * plotWidth;
+			int labelY = plotTop + plotHeight + 6;
+
+			graphics.translate(labelX, labelY);
+			graphics.rotate(-labelsRotation);
+			graphics.drawString(
+				label,
+				-labelsMetrics.stringWidth(label) * (labelsRotation == 0 ? 0.5f : 1f),
+				labelsRotation == 0 ? labelsMetrics.getAscent() : labelsMetrics.getAscent() / 2f
+			);
+			graphics.setTransform(transform);
+		}
+
+		graphics.dispose();
+
+		ImageIO.write(image, "png", file);
+	}
+
+	private static double getHeight(Linkage linkage, int node) {
+		return node < linkage.getSize() ? 0 : linkage.getHeight(node - linkage.getSize());
+	}
+
+	private static int getFirstChild(Linkage linkage, int merge) {
+		int a = linkage.getLeft(merge);
+		int b = linkage.getRight(merge);
+
+		return getHeight(linkage, a) > getHeight(linkage, b) ? a : b;
+	}
+
+	private static int getSecondChild(Linkage linkage, int merge) {
+		int a = linkage.getLeft(merge);
+		int b = linkage.getRight(merge);
+
+		return getHeight(linkage, a) > getHeight(linkage, b) ? b : a;
+	}
+
+	// each subtree merged below the threshold gets the next colour, in the order the subtrees are drawn
+	private static Color[] getMergeColors(Linkage linkage) {
+		int n = linkage.getSize();
+		int merges = linkage.getMergesCount();
+		double threshold = 0.7 * linkage.getMaxHeight();
+
+		Color[] colors = new Color[merges];
+		int nextColor = 0;
+
+		Deque<Integer> stack = new ArrayDeque<>();
+		if (merges > 0)
+			stack.push(merges - 1);
+
+		while (!stack.isEmpty()) {
+			int merge = stack.pop();
+
+			if (colors[merge] == null) {
+				if (linkage.getHeight(merge) < threshold) {
+					colors[merge] = CLUSTER_COLORS[nextColor++ % CLUSTER_COLORS.length];
+				} else {
+					colors[merge] = ABOVE_THRESHOLD_COLOR;
+				}
+			}
+
+			for (int child : new int[] {getSecondChild(linkage, merge), getFirstChild(linkage, merge)}) {
+				if (child >= n) {
+					// below the threshold the whole subtree shares its root colour
+					if (colors[merge] != ABOVE_THRESHOLD_COLOR)
+						colors[child - n] = colors[merge];
+
+					stack.push(child - n);
+				}
+			}
+		}
+
+		return colors;
+	}
+
+	// scipy's leaf font sizes and rotations for the number of leaves
+	private static float getLabelsFontSize(int leaves) {
+		if (leaves <= 20) return 12;
+		if (leaves <= 30) return 10;
+		if (leaves <= 50) return 8;
+		if (leaves <= 85) return 6;
+		return 5;
+	}
+
+	private static int getLabelsRotation(int leaves) {
+		if (leaves <= 20) return 0;
+		if (leaves <= 40) return 45;
+		return 90;
+	}
+
+	private static int getLabelsSpace(
+		Graphics2D graphics,
+		Font labelsFont,
+		short[] entities,
+		double labelsRotation
+	) {
+		FontMetrics metrics = graphics.getFontMetrics(labelsFont);
+		int maxWidth = 0;
+
+		for (short entityID : entities)
+			maxWidth = Math.max(maxWidth, metrics.stringWidth(String.valueOf(entityID)));
+
+		return (int) Math.ceil(maxWidth * Math.sin(labelsRotation) + metrics.getHeight()) + 10;
+	}
+
+	private static double getTickStep(double limit) {
+		double rawStep = limit / 6;
+		double magnitude = Math.pow(10, Math.floor(Math.log10(rawStep)));
+
+		for (double multiplier : new double[] {1, 2, 2.5, 5, 10})
+			if (multiplier * magnitude >= rawStep)
+				return multiplier * magnitude;
+
+		return 10 * magnitude;
+	}
+
+	private static String formatTick(double tick) {
+		return new BigDecimal(tick).setScale(6, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+	}
+}
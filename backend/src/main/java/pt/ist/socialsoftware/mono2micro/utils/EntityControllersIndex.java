@@ -0,0 +1,86 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import pt.ist.socialsoftware.mono2micro.domain.Cluster;
+import pt.ist.socialsoftware.mono2micro.domain.Controller;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the controllers of a decomposition by the entities they touch, used by the complexity metric.
+ *
+ * Controllers are numbered densely and, for every entity and access mode, the index keeps the bitset of the
+ * controllers that span more than one cluster and touch the entity in a different mode, so that the cost of
+ * a local transaction is the cardinality of the union of the bitsets of its accesses.
+ */
+public class EntityControllersIndex {
+	private static final int MODES = 4; // "R" -> 1, "W" -> 2, "RW" -> 3
+	private static final BitSet EMPTY = new BitSet();
+
+	private final Map<String, Integer> controllerIDs = new HashMap<>();
+	private final Map<Short, BitSet[]> entityControllers = new HashMap<>(); // indexed by mode
+
+	public EntityControllersIndex(
+		Collection<Controller> controllers,
+		Map<String, Set<Cluster>> controllersClusters
+	) {
+		for (Controller controller : controllers) {
+			int controllerID = controllerIDs.size();
+			controllerIDs.put(controller.getName(), controllerID);
+
+			Set<Cluster> controllerClusters = controllersClusters.get(controller.getName());
+
+			if (controllerClusters == null || controllerClusters.size() <= 1)
+				continue;
+
+			for (Map.Entry<Short, Byte> entry : controller.getEntities().entrySet()) {
+				BitSet[] modeControllers = entityControllers.computeIfAbsent(entry.getKey(), k -> newModeControllers());
+				byte savedMode = entry.getValue();
+
+				for (int mode = 0; mode < MODES; mode++)
+					if (savedMode != mode)
+						modeControllers[mode].set(controllerID);
+			}
+		}
+	}
+
+	private static BitSet[] newModeControllers() {
+		BitSet[] modeControllers = new BitSet[MODES];
+
+		for (int mode = 0; mode < MODES; mode++)
+			modeControllers[mode] = new BitSet();
+
+		return modeControllers;
+	}
+
+	public int getControllerID(String controllerName) {
+		Integer controllerID = controllerIDs.get(controllerName);
+
+		if (controllerID == null)
+			throw new Error("Controller: " + controllerName + " is not indexed");
+
+		return controllerID;
+	}
+
+	/**
+	 * Controllers with more than one cluster that touch the entity in a mode other than the given one.
+	 * The returned bitset must not be modified.
+	 */
+	public BitSet getControllersThatTouchEntityInOtherMode(
+		short entityID,
+		byte mode
+	) {
+		BitSet[] modeControllers = entityControllers.get(entityID);
+
+		if (modeControllers == null)
+			return EMPTY;
+
+		if (mode < 0 || mode >= MODES)
+			return modeControllers[0]; // every mode is other than an unknown one
+
+		return modeControllers[mode];
+	}
+}
@@ -0,0 +1,93 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+/**
+ * Number of times each ordered pair of entities is accessed consecutively in the traces of a profile.
+ *
+ * The entities are only known while the traces are read, so the counts are kept in an open addressing table
+ * keyed by both entity IDs packed in an int, without any boxing or string keys.
+ */
+public class EntityPairCounts {
+	private static final int INITIAL_CAPACITY = 1024; // power of 2
+
+	private int[] keys = new int[INITIAL_CAPACITY];
+	private int[] counts = new int[INITIAL_CAPACITY]; // 0 means the slot is free
+	private int size;
+	private int maxCount;
+
+	private static int getKey(short e1ID, short e2ID) {
+		return (e1ID << 16) | (e2ID & 0xFFFF);
+	}
+
+	private static int getSlot(int key, int mask) {
+		int hash = key * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	public void increment(short e1ID, short e2ID) {
+		increment(e1ID, e2ID, 1);
+	}
+
+	public void increment(short e1ID, short e2ID, int amount) {
+		if (2 * (size + 1) > keys.length)
+			resize();
+
+		int key = getKey(e1ID, e2ID);
+		int mask = keys.length - 1;
+		int slot = getSlot(key, mask);
+
+		while (counts[slot] != 0 && keys[slot] != key)
+			slot = (slot + 1) & mask;
+
+		if (counts[slot] == 0) {
+			keys[slot] = key;
+			size++;
+		}
+
+		int count = counts[slot] += amount;
+
+		if (count > maxCount)
+			maxCount = count;
+	}
+
+	public int get(short e1ID, short e2ID) {
+		int key = getKey(e1ID, e2ID);
+		int mask = keys.length - 1;
+		int slot = getSlot(key, mask);
+
+		while (counts[slot] != 0) {
+			if (keys[slot] == key)
+				return counts[slot];
+
+			slot = (slot + 1) & mask;
+		}
+
+		return 0;
+	}
+
+	public int size() { return size; }
+
+	// 0 when no controller accesses more than one entity
+	public int getMaxCount() { return maxCount; }
+
+	private void resize() {
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+
+		keys = new int[2 * oldKeys.length];
+		counts = new int[2 * oldCounts.length];
+		int mask = keys.length - 1;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldCounts[i] == 0)
+				continue;
+
+			int slot = getSlot(oldKeys[i], mask);
+
+			while (counts[slot] != 0)
+				slot = (slot + 1) & mask;
+
+			keys[slot] = oldKeys[i];
+			counts[slot] = oldCounts[i];
+		}
+	}
+}
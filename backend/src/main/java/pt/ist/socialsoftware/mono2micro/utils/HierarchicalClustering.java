@@ -0,0 +1,350 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hierarchical agglomerative clustering of the entities of a similarity matrix, giving the same results as
+ * scipy's linkage(y=matrix, method=linkageType): every matrix row is an observation and observations are
+ * compared with the euclidean distance.
+ *
+ * Distances are kept in a condensed array, where the distance between i < j is at condensedIndex(n, i, j),
+ * and the merges are found with the nearest-neighbour-chain algorithm, which is exact for the reducible
+ * linkage types below.
+ */
+public class HierarchicalClustering {
+
+	public enum LinkageType {
+		SINGLE,
+		COMPLETE,
+		AVERAGE,
+		WEIGHTED;
+
+		public static LinkageType fromName(String linkageType) {
+			return LinkageType.valueOf(linkageType.toUpperCase());
+		}
+
+		private double update(
+			double distanceXI,
+			double distanceYI,
+			int sizeX,
+			int sizeY
+		) {
+			switch (this) {
+				case SINGLE:
+					return Math.min(distanceXI, distanceYI);
+				case COMPLETE:
+					return Math.max(distanceXI, distanceYI);
+				case AVERAGE:
+					return (sizeX * distanceXI + sizeY * distanceYI) / (sizeX + sizeY);
+				case WEIGHTED:
+					return (distanceXI + distanceYI) / 2;
+				default:
+					throw new Error("Unknown linkage type " + this);
+			}
+		}
+	}
+
+	private HierarchicalClustering() {}
+
+	public static int condensedIndex(int n, int i, int j) {
+		if (i > j) {
+			int temp = i;
+			i = j;
+			j = temp;
+		}
+
+		return n * i - (i * (i + 1) / 2) + (j - i - 1);
+	}
+
+	public static double[] getDistances(SimilarityMatrix similarityMatrix) {
+		float[] measureWeights = new float[similarityMatrix.getMeasures()];
+		measureWeights[0] = 1;
+
+		return getDistances(similarityMatrix, measureWeights);
+	}
+
+	/**
+	 * Euclidean distances between the rows of the matrix, after combining its measures with the given weights.
+	 */
+	public static double[] getDistances(
+		SimilarityMatrix similarityMatrix,
+		float[] measureWeights
+	) {
+		int n = similarityMatrix.getSize();
+		double[][] rows = new double[n][n];
+
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				double value = 0;
+
+				for (int measure = 0; measure < measureWeights.length; measure++)
+					if (measureWeights[measure] != 0)
+						value += similarityMatrix.get(i, j, measure) * (double) measureWeights[measure];
+
+				rows[i][j] = value;
+			}
+		}
+
+		double[] distances = new double[n * (n - 1) / 2];
+		int index = 0;
+
+		for (int i = 0; i < n; i++) {
+			double[] rowI = rows[i];
+
+			for (int j = i + 1; j < n; j++) {
+				double[] rowJ = rows[j];
+				double sum = 0;
+
+				for (int k = 0; k < n; k++) {
+					double difference = rowI[k] - rowJ[k];
+					sum += difference * difference;
+				}
+
+				distances[index++] = Math.sqrt(sum);
+			}
+		}
+
+		return distances;
+	}
+
+	public static Linkage linkage(
+		double[] condensedDistances,
+		int n,
+		LinkageType linkageType
+	) {
+		double[] distances = condensedDistances.clone(); // updated in place while clusters are merged
+
+		int merges = Math.max(0, n - 1);
+
+		int[] mergeX = new int[merges];
+		int[] mergeY = new int[merges];
+		double[] mergeHeights = new double[merges];
+
+		int[] sizes = new int[n];
+		for (int i = 0; i < n; i++)
+			sizes[i] = 1;
+
+		int[] chain = new int[n];
+		int chainLength = 0;
+
+		for (int k = 0; k < merges; k++) {
+			if (chainLength == 0) {
+				for (int i = 0; i < n; i++) {
+					if (sizes[i] > 0) {
+						chain[chainLength++] = i;
+						break;
+					}
+				}
+			}
+
+			int x;
+			int y;
+			double currentMin;
+
+			// walk the chain of nearest neighbours until two of them are mutual nearest neighbours
+			while (true) {
+				x = chain[chainLength - 1];
+
+				// the previous element of the chain is preferred on ties, so that the chain never cycles
+				if (chainLength > 1) {
+					y = chain[chainLength - 2];
+					currentMin = distances[condensedIndex(n, x, y)];
+				} else {
+					y = -1;
+					currentMin = Double.POSITIVE_INFINITY;
+				}
+
+				for (int i = 0; i < n; i++) {
+					if (sizes[i] == 0 || i == x)
+						continue;
+
+					double distance = distances[condensedIndex(n, x, i)];
+
+					if (distance < currentMin) {
+						currentMin = distance;
+						y = i;
+					}
+				}
+
+				if (chainLength > 1 && y == chain[chainLength - 2])
+					break;
+
+				chain[chainLength++] = y;
+			}
+
+			chainLength -= 2;
+
+			if (x > y) {
+				int temp = x;
+				x = y;
+				y = temp;
+			}
+
+			int sizeX = sizes[x];
+			int sizeY = sizes[y];
+
+			mergeX[k] = x;
+			mergeY[k] = y;
+			mergeHeights[k] = currentMin;
+
+			sizes[x] = 0; // x is dropped and y becomes the merged cluster
+			sizes[y] = sizeX + sizeY;
+
+			for (int i = 0; i < n; i++) {
+				if (sizes[i] == 0 || i == y)
+					continue;
+
+				distances[condensedIndex(n, i, y)] = linkageType.update(
+					distances[condensedIndex(n, i, x)],
+					distances[condensedIndex(n, i, y)],
+					sizeX,
+					sizeY
+				);
+			}
+		}
+
+		return label(n, mergeX, mergeY, mergeHeights);
+	}
+
+	public static Linkage linkage(
+		SimilarityMatrix similarityMatrix,
+		float[] measureWeights,
+		String linkageType
+	) {
+		return linkage(
+			getDistances(similarityMatrix, measureWeights),
+			similarityMatrix.getSize(),
+			LinkageType.fromName(linkageType)
+		);
+	}
+
+	public static Linkage linkage(SimilarityMatrix similarityMatrix) {
+		return linkage(
+			getDistances(similarityMatrix),
+			similarityMatrix.getSize(),
+			LinkageType.fromName(similarityMatrix.getLinkageType())
+		);
+	}
+
+	/**
+	 * Linkage of a dendrogram, with its entities, so that it can be cut without the similarity matrix. The
+	 * silhouette scores are left to be calculated for the numbers of clusters that are cut.
+	 */
+	public static Linkage createDendrogramLinkage(SimilarityMatrix similarityMatrix) {
+		Linkage linkage = linkage(similarityMatrix);
+		linkage.setEntities(similarityMatrix.getEntityIDs());
+		linkage.setSilhouetteScores(Linkage.noSilhouetteScores(similarityMatrix.getSize()));
+
+		return linkage;
+	}
+
+	// sorts the merges by height (stable) and renames the clusters as scipy does, size + k for merge k
+	private static Linkage label(
+		int n,
+		int[] mergeX,
+		int[] mergeY,
+		double[] mergeHeights
+	) {
+		int merges = mergeHeights.length;
+
+		Integer[] order = new Integer[merges];
+		for (int k = 0; k < merges; k++)
+			order[k] = k;
+
+		Arrays.sort(order, (k1, k2) -> Double.compare(mergeHeights[k1], mergeHeights[k2]));
+
+		int[] parent = new int[2 * n];
+		for (int i = 0; i < parent.length; i++)
+			parent[i] = i;
+
+		int[] left = new int[merges];
+		int[] right = new int[merges];
+		double[] heights = new double[merges];
+		int[] counts = new int[merges];
+		int[] clusterSizes = new int[2 * n];
+		for (int i = 0; i < n; i++)
+			clusterSizes[i] = 1;
+
+		for (int k = 0; k < merges; k++) {
+			int merge = order[k];
+			int x = find(parent, mergeX[merge]);
+			int y = find(parent, mergeY[merge]);
+
+			left[k] = Math.min(x, y);
+			right[k] = Math.max(x, y);
+			heights[k] = mergeHeights[merge];
+			counts[k] = clusterSizes[x] + clusterSizes[y];
+
+			int cluster = n + k;
+			clusterSizes[cluster] = counts[k];
+			parent[x] = cluster;
+			parent[y] = cluster;
+		}
+
+		return new Linkage(n, left, right, heights, counts);
+	}
+
+	private static int find(int[] parent, int cluster) {
+		int root = cluster;
+
+		while (parent[root] != root)
+			root = parent[root];
+
+		while (parent[cluster] != root) {
+			int next = parent[cluster];
+			parent[cluster] = root;
+			cluster = next;
+		}
+
+		return root;
+	}
+
+	/**
+	 * Mean silhouette coefficient, as sklearn's silhouette_score, or 0 when there is a single cluster or one
+	 * cluster per observation.
+	 */
+	public static double silhouetteScore(
+		double[] distances,
+		int n,
+		int[] labels
+	) {
+		int numberOfClusters = Linkage.getNumberOfClusters(labels);
+
+		if (numberOfClusters < 2 || numberOfClusters > n - 1)
+			return 0;
+
+		int[] clusterSizes = new int[numberOfClusters];
+		for (int label : labels)
+			clusterSizes[label]++;
+
+		double[] clusterDistances = new double[numberOfClusters];
+		double sum = 0;
+
+		for (int i = 0; i < n; i++) {
+			Arrays.fill(clusterDistances, 0);
+
+			for (int j = 0; j < n; j++)
+				if (i != j)
+					clusterDistances[labels[j]] += distances[condensedIndex(n, i, j)];
+
+			int ownCluster = labels[i];
+
+			if (clusterSizes[ownCluster] == 1)
+				continue; // the silhouette of a singleton is 0
+
+			double a = clusterDistances[ownCluster] / (clusterSizes[ownCluster] - 1);
+			double b = Double.POSITIVE_INFINITY;
+
+			for (int cluster = 0; cluster < numberOfClusters; cluster++)
+				if (cluster != ownCluster)
+					b = Math.min(b, clusterDistances[cluster] / clusterSizes[cluster]);
+
+			double max = Math.max(a, b);
+
+			if (max > 0)
+				sum += (b - a) / max;
+		}
+
+		return sum / n;
+	}
+}
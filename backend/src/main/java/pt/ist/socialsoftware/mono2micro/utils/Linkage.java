@@ -0,0 +1,276 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Merge tree of a hierarchical clustering, in the same layout as a scipy linkage matrix: merges are sorted
+ * by height, observations are the clusters 0..size-1 and the cluster created by merge k is size + k.
+ *
+ * A dendrogram's linkage is computed once and stored in linkage.bin, together with the entity of each
+ * observation, so that cuts never need the matrix. The silhouette score of a number of clusters is NaN until
+ * a cut with that number of clusters calculates it, and is then stored as well:
+ *
+ *  magic "M2ML" | version | size | merges count | flags   (int32 each)
+ *  entity IDs (int16 * size) | padding | left, right (int32 * merges) | heights (float64 * merges)
+ *  counts (int32 * merges) | padding | silhouette scores (float64 * (size + 1))
+ */
+public class Linkage {
+	private static final byte[] MAGIC = "M2ML".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	private static final int HAS_ENTITIES = 1;
+	private static final int HAS_SILHOUETTE_SCORES = 2;
+
+	private final int size;
+	private final int[] left;
+	private final int[] right;
+	private final double[] heights;
+	private final int[] counts;
+	private short[] entities;
+	private double[] silhouetteScores; // indexed by number of clusters, NaN when not calculated yet
+
+	public Linkage(
+		int size,
+		int[] left,
+		int[] right,
+		double[] heights,
+		int[] counts
+	) {
+		this.size = size;
+		this.left = left;
+		this.right = right;
+		this.heights = heights;
+		this.counts = counts;
+	}
+
+	public int getSize() { return size; }
+
+	public int getMergesCount() { return heights.length; }
+
+	public int getLeft(int merge) { return left[merge]; }
+
+	public int getRight(int merge) { return right[merge]; }
+
+	public double getHeight(int merge) { return heights[merge]; }
+
+	public int getCount(int merge) { return counts[merge]; }
+
+	public double getMaxHeight() { return heights.length == 0 ? 0 : heights[heights.length - 1]; }
+
+	public short[] getEntities() { return entities; }
+
+	public void setEntities(short[] entities) { this.entities = entities; }
+
+	public double[] getSilhouetteScores() { return silhouetteScores; }
+
+	public void setSilhouetteScores(double[] silhouetteScores) { this.silhouetteScores = silhouetteScores; }
+
+	public double getSilhouetteScore(int numberOfClusters) {
+		return silhouetteScores == null ? Double.NaN : silhouetteScores[numberOfClusters];
+	}
+
+	public void setSilhouetteScore(int numberOfClusters, double silhouetteScore) {
+		if (silhouetteScores == null)
+			silhouetteScores = noSilhouetteScores(size);
+
+		silhouetteScores[numberOfClusters] = silhouetteScore;
+	}
+
+	public static double[] noSilhouetteScores(int size) {
+		double[] silhouetteScores = new double[size + 1];
+		Arrays.fill(silhouetteScores, Double.NaN);
+
+		return silhouetteScores;
+	}
+
+	/**
+	 * Same labels as scipy's cut_tree(n_clusters=numberOfClusters): clusters are numbered 0..n-1 in the
+	 * order of their first observation.
+	 */
+	public int[] cutByNumberOfClusters(int numberOfClusters) {
+		numberOfClusters = Math.max(1, Math.min(size, numberOfClusters));
+
+		return cut(size - numberOfClusters);
+	}
+
+	/**
+	 * Same labels as scipy's cut_tree(height=height): only the merges strictly below the height are applied.
+	 */
+	public int[] cutByHeight(double height) {
+		int merges = 0;
+
+		while (merges < heights.length && heights[merges] < height)
+			merges++;
+
+		return cut(merges);
+	}
+
+	public static int getNumberOfClusters(int[] labels) {
+		int max = -1;
+
+		for (int label : labels)
+			max = Math.max(max, label);
+
+		return max + 1;
+	}
+
+	private int[] cut(int merges) {
+		int[] parent = new int[size + merges];
+
+		for (int i = 0; i < parent.length; i++)
+			parent[i] = i;
+
+		for (int k = 0; k < merges; k++) {
+			parent[left[k]] = size + k;
+			parent[right[k]] = size + k;
+		}
+
+		int[] roots = new int[size];
+
+		for (int i = 0; i < size; i++) {
+			int root = i;
+
+			while (parent[root] != root)
+				root = parent[root];
+
+			roots[i] = root;
+		}
+
+		int[] rootLabels = new int[size + merges];
+		Arrays.fill(rootLabels, -1);
+
+		int[] labels = new int[size];
+		int nextLabel = 0;
+
+		for (int i = 0; i < size; i++) {
+			if (rootLabels[roots[i]] == -1)
+				rootLabels[roots[i]] = nextLabel++;
+
+			labels[i] = rootLabels[roots[i]];
+		}
+
+		return labels;
+	}
+
+	public void write(File file) throws IOException {
+		int merges = heights.length;
+		int flags = (entities != null ? HAS_ENTITIES : 0) | (silhouetteScores != null ? HAS_SILHOUETTE_SCORES : 0);
+
+		int entitiesEnd = 24 + (entities != null ? 2 * size : 0);
+		int mergesOffset = align(entitiesEnd, 8);
+		int countsEnd = mergesOffset + merges * (4 + 4 + 8 + 4);
+		int silhouetteScoresOffset = align(countsEnd, 8);
+		int length = silhouetteScoresOffset + (silhouetteScores != null ? 8 * (size + 1) : 0);
+
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(size);
+		buffer.putInt(merges);
+		buffer.putInt(flags);
+		buffer.putInt(0); // reserved
+
+		if (entities != null)
+			for (short entityID : entities)
+				buffer.putShort(entityID);
+
+		buffer.position(mergesOffset);
+		for (int k = 0; k < merges; k++) buffer.putInt(left[k]);
+		for (int k = 0; k < merges; k++) buffer.putInt(right[k]);
+		for (int k = 0; k < merges; k++) buffer.putDouble(heights[k]);
+		for (int k = 0; k < merges; k++) buffer.putInt(counts[k]);
+
+		if (silhouetteScores != null) {
+			buffer.position(silhouetteScoresOffset);
+			for (double silhouetteScore : silhouetteScores)
+				buffer.putDouble(silhouetteScore);
+		}
+
+		buffer.clear();
+
+		// rewritten when a silhouette score is added, so it replaces the file at once for the readers
+		File temporaryFile = new File(file.getPath() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(
+			temporaryFile.toPath(),
+			StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING,
+			StandardOpenOption.WRITE
+		)) {
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public static Linkage read(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+			buffer.flip();
+
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+
+			if (!Arrays.equals(magic, MAGIC))
+				throw new IOException(file.getPath() + " is not a linkage file");
+
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported linkage version " + version);
+
+			int size = buffer.getInt();
+			int merges = buffer.getInt();
+			int flags = buffer.getInt();
+			buffer.getInt(); // reserved
+
+			short[] entities = null;
+			if ((flags & HAS_ENTITIES) != 0) {
+				entities = new short[size];
+				for (int i = 0; i < size; i++)
+					entities[i] = buffer.getShort();
+			}
+
+			buffer.position(align(buffer.position(), 8));
+
+			int[] left = new int[merges];
+			int[] right = new int[merges];
+			double[] heights = new double[merges];
+			int[] counts = new int[merges];
+
+			for (int k = 0; k < merges; k++) left[k] = buffer.getInt();
+			for (int k = 0; k < merges; k++) right[k] = buffer.getInt();
+			for (int k = 0; k < merges; k++) heights[k] = buffer.getDouble();
+			for (int k = 0; k < merges; k++) counts[k] = buffer.getInt();
+
+			Linkage linkage = new Linkage(size, left, right, heights, counts);
+			linkage.setEntities(entities);
+
+			if ((flags & HAS_SILHOUETTE_SCORES) != 0) {
+				buffer.position(align(buffer.position(), 8));
+
+				double[] silhouetteScores = new double[size + 1];
+				for (int i = 0; i <= size; i++)
+					silhouetteScores[i] = buffer.getDouble();
+
+				linkage.setSilhouetteScores(silhouetteScores);
+			}
+
+			return linkage;
+		}
+	}
+
+	private static int align(int offset, int alignment) {
+		return (offset + alignment - 1) / alignment * alignment;
+	}
+}
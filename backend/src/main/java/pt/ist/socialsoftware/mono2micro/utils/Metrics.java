@@ -114,6 +114,7 @@ public class Metrics {
 	 	Decomposition decomposition,
 		String controllerName,
 	 	Map<String, Set<Cluster>> controllerClusters,
+		EntityControllersIndex entityControllersIndex,
 		DirectedAcyclicGraph<LocalTransaction, DefaultEdge> localTransactionsGraph
 	) {
 		Set<LocalTransaction> allLocalTransactions = Decomposition.getAllLocalTransactions(localTransactionsGraph);
@@ -122,54 +123,30 @@ public class Metrics {
 			return 0;
 
 		} else {
-			// < entity + mode, List<controllerName>> controllersThatTouchSameEntities for a given mode
-			Map<String, List<String>> cache = new HashMap<>();
+			int controllerID = entityControllersIndex.getControllerID(controllerName);
+			BitSet controllersThatTouchSameEntities = new BitSet();
 
 			float controllerComplexity = 0;
 
+			calculateClusterDependencies(
+				decomposition,
+				localTransactionsGraph
+			);
+
 			for (LocalTransaction lt : allLocalTransactions) {
-				// ClusterDependencies
 				short clusterID = lt.getClusterID();
 				if (clusterID != -1) { // not root node
-					Cluster fromCluster = decomposition.getCluster(String.valueOf(clusterID));
-
-					List<LocalTransaction> nextLocalTransactions = Decomposition.getNextLocalTransactions(
-						localTransactionsGraph,
-						lt
-					);
-
-					for (LocalTransaction nextLt : nextLocalTransactions)
-						fromCluster.addCouplingDependencies(
-							String.valueOf(nextLt.getClusterID()),
-							nextLt.getFirstAccessedEntityIDs()
-						);
-
-					Set<String> controllersThatTouchSameEntities = new HashSet<>();
+					controllersThatTouchSameEntities.clear();
 					Set<AccessDto> clusterAccesses = lt.getClusterAccesses();
 
-					for (AccessDto a : clusterAccesses) {
-						short entityID = a.getEntityID();
-						byte mode = a.getMode();
-
-						String key = String.join("-", String.valueOf(entityID), String.valueOf(mode));
-						List<String> controllersThatTouchThisEntityAndMode = cache.get(key);
-
-						if (controllersThatTouchThisEntityAndMode == null) {
-							controllersThatTouchThisEntityAndMode = costOfAccess(
-								controllerName,
-								entityID,
-								mode,
-								decomposition.getControllers().values(),
-								controllerClusters
-							);
-
-							cache.put(key, controllersThatTouchThisEntityAndMode);
-						}
+					for (AccessDto a : clusterAccesses)
+						controllersThatTouchSameEntities.or(
+							entityControllersIndex.getControllersThatTouchEntityInOtherMode(a.getEntityID(), a.getMode())
+						);
 
-						controllersThatTouchSameEntities.addAll(controllersThatTouchThisEntityAndMode);
-					}
+					controllersThatTouchSameEntities.clear(controllerID);
 
-					controllerComplexity += controllersThatTouchSameEntities.size();
+					controllerComplexity += controllersThatTouchSameEntities.cardinality();
 				}
 			}
 
@@ -177,32 +154,27 @@ public class Metrics {
 		}
 	}
 
-	private static List<String> costOfAccess(
-		String controllerName,
-		short entityID,
-		byte mode,
-		Collection<Controller> controllers,
-		Map<String, Set<Cluster>> controllerClusters
+	public static void calculateClusterDependencies(
+		Decomposition decomposition,
+		DirectedAcyclicGraph<LocalTransaction, DefaultEdge> localTransactionsGraph
 	) {
-		List<String> controllersThatTouchThisEntityAndMode = new ArrayList<>();
-
-		for (Controller otherController : controllers) {
-			String otherControllerName = otherController.getName();
-
-			if (!otherControllerName.equals(controllerName) && controllerClusters.containsKey(otherControllerName)) {
-				Byte savedMode = otherController.getEntities().get(entityID);
+		for (LocalTransaction lt : Decomposition.getAllLocalTransactions(localTransactionsGraph)) {
+			short clusterID = lt.getClusterID();
+			if (clusterID != -1) { // not root node
+				Cluster fromCluster = decomposition.getCluster(String.valueOf(clusterID));
+
+				List<LocalTransaction> nextLocalTransactions = Decomposition.getNextLocalTransactions(
+					localTransactionsGraph,
+					lt
+				);
 
-				if (
-					savedMode != null &&
-					savedMode != mode &&
-					controllerClusters.get(otherControllerName).size() > 1
-				) {
-					controllersThatTouchThisEntityAndMode.add(otherControllerName);
-				}
+				for (LocalTransaction nextLt : nextLocalTransactions)
+					fromCluster.addCouplingDependencies(
+						String.valueOf(nextLt.getClusterID()),
+						nextLt.getFirstAccessedEntityIDs()
+					);
 			}
 		}
-
-		return controllersThatTouchThisEntityAndMode;
 	}
 
     public static void calculateClusterComplexityAndCohesion(
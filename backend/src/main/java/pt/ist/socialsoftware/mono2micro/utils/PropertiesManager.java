@@ -1,6 +1,7 @@
 package pt.ist.socialsoftware.mono2micro.utils;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Properties;
 
 public class PropertiesManager {
@@ -9,7 +10,11 @@ public class PropertiesManager {
 	static {
 		try {
             properties.load(PropertiesManager.class.getResourceAsStream("/application.properties"));
-			properties.load(PropertiesManager.class.getResourceAsStream("/specific.properties"));
+
+			// optional local overrides
+			InputStream specificProperties = PropertiesManager.class.getResourceAsStream("/specific.properties");
+			if (specificProperties != null)
+				properties.load(specificProperties);
 		} catch (IOException e) {
 			throw new RuntimeException("Unable to load properties files.", e);
 		}
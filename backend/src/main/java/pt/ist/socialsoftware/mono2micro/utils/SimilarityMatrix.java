@@ -0,0 +1,215 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Similarity matrix between entities, with one or more measures per pair of entities.
+ *
+ * On disk it is a header followed by little-endian float32 values, in row-major order and with the measures
+ * of a pair stored contiguously, so that it can be memory mapped from java and read with numpy.memmap:
+ *
+ *  magic "M2MS" | version | size | measures | flags | data offset | linkage type length   (int32 each)
+ *  linkage type (utf-8) | entity IDs (int16 * size) | padding | values (float32)
+ *
+ * When the UPPER_TRIANGLE flag is set only the pairs i <= j are stored, which is enough for symmetric measures.
+ */
+public class SimilarityMatrix {
+	private static final byte[] MAGIC = "M2MS".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	private static final int UPPER_TRIANGLE = 1;
+	private static final int FIXED_HEADER_SIZE = 28;
+
+	private final short[] entities;
+	private final String linkageType;
+	private final int measures;
+	private final boolean upperTriangle;
+	private final ByteBuffer data;
+	private final FloatBuffer values;
+
+	public SimilarityMatrix(
+		Set<Short> entities,
+		String linkageType,
+		int measures,
+		boolean upperTriangle
+	) {
+		this.entities = new short[entities.size()];
+		int i = 0;
+		for (short entityID : entities)
+			this.entities[i++] = entityID;
+
+		this.linkageType = linkageType;
+		this.measures = measures;
+		this.upperTriangle = upperTriangle;
+
+		long valuesCount = getValuesCount(this.entities.length, measures, upperTriangle);
+
+		if (valuesCount * 4 > Integer.MAX_VALUE)
+			throw new Error("Similarity matrix of " + this.entities.length + " entities is too big");
+
+		this.data = ByteBuffer.allocate((int) valuesCount * 4).order(ByteOrder.LITTLE_ENDIAN);
+		this.values = data.asFloatBuffer();
+	}
+
+	private SimilarityMatrix(
+		short[] entities,
+		String linkageType,
+		int measures,
+		boolean upperTriangle,
+		ByteBuffer data
+	) {
+		this.entities = entities;
+		this.linkageType = linkageType;
+		this.measures = measures;
+		this.upperTriangle = upperTriangle;
+		this.data = data;
+		this.values = data.asFloatBuffer();
+	}
+
+	private static long getValuesCount(int size, int measures, boolean upperTriangle) {
+		long pairs = upperTriangle ? (long) size * (size + 1) / 2 : (long) size * size;
+		return pairs * measures;
+	}
+
+	public int getSize() { return entities.length; }
+
+	public short[] getEntityIDs() { return entities; }
+
+	public Set<Short> getEntities() {
+		Set<Short> entitiesSet = new LinkedHashSet<>();
+
+		for (short entityID : entities)
+			entitiesSet.add(entityID);
+
+		return entitiesSet;
+	}
+
+	public String getLinkageType() { return linkageType; }
+
+	public int getMeasures() { return measures; }
+
+	public boolean isUpperTriangle() { return upperTriangle; }
+
+	private int getIndex(int i, int j, int measure) {
+		long pair;
+
+		if (upperTriangle) {
+			if (i > j) {
+				int temp = i;
+				i = j;
+				j = temp;
+			}
+
+			pair = (long) i * entities.length - (long) i * (i - 1) / 2 + (j - i);
+
+		} else {
+			pair = (long) i * entities.length + j;
+		}
+
+		return (int) (pair * measures + measure);
+	}
+
+	public float get(int i, int j, int measure) {
+		return values.get(getIndex(i, j, measure));
+	}
+
+	public float get(int i, int j) {
+		return get(i, j, 0);
+	}
+
+	// different cells can be set concurrently
+	public void set(int i, int j, int measure, float value) {
+		values.put(getIndex(i, j, measure), value);
+	}
+
+	public void set(int i, int j, float value) {
+		set(i, j, 0, value);
+	}
+
+	public void write(File file) throws IOException {
+		byte[] linkageTypeBytes = linkageType.getBytes(StandardCharsets.UTF_8);
+
+		int headerSize = FIXED_HEADER_SIZE + linkageTypeBytes.length + 2 * entities.length;
+		int dataOffset = (headerSize + 3) & ~3; // float32 aligned
+
+		ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(entities.length);
+		header.putInt(measures);
+		header.putInt(upperTriangle ? UPPER_TRIANGLE : 0);
+		header.putInt(dataOffset);
+		header.putInt(linkageTypeBytes.length);
+		header.put(linkageTypeBytes);
+
+		for (short entityID : entities)
+			header.putShort(entityID);
+
+		header.clear();
+
+		ByteBuffer body = data.duplicate();
+		body.clear();
+
+		try (FileChannel channel = FileChannel.open(
+			file.toPath(),
+			StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING,
+			StandardOpenOption.WRITE
+		)) {
+			while (header.hasRemaining())
+				channel.write(header);
+
+			while (body.hasRemaining())
+				channel.write(body);
+		}
+	}
+
+	public static SimilarityMatrix read(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+
+			for (int i = 0; i < MAGIC.length; i++)
+				if (magic[i] != MAGIC[i])
+					throw new IOException(file.getPath() + " is not a similarity matrix file");
+
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported similarity matrix version " + version);
+
+			int size = buffer.getInt();
+			int measures = buffer.getInt();
+			int flags = buffer.getInt();
+			int dataOffset = buffer.getInt();
+
+			byte[] linkageTypeBytes = new byte[buffer.getInt()];
+			buffer.get(linkageTypeBytes);
+
+			short[] entities = new short[size];
+			for (int i = 0; i < size; i++)
+				entities[i] = buffer.getShort();
+
+			buffer.position(dataOffset);
+			ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+			return new SimilarityMatrix(
+				entities,
+				new String(linkageTypeBytes, StandardCharsets.UTF_8),
+				measures,
+				(flags & UPPER_TRIANGLE) != 0,
+				data
+			);
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Access, write, read and sequence similarity between every pair of entities.
+ *
+ * The controllers are numbered densely and each entity keeps three bitsets over them: the controllers that
+ * access it, the ones that write it ("W" or "RW") and the ones that read it ("R" or "RW"). The controllers
+ * two entities have in common are then the popcount of the and of their bitsets.
+ */
+public class SimilarityMetrics {
+	public static final int MEASURES = 4; // access, write, read and sequence
+	private static final int ROWS_PER_TASK = 8;
+
+	public interface RowConsumer {
+		void accept(int i, float[] row);
+	}
+
+	private final short[] entities;
+	private final long[][] controllers;
+	private final long[][] writeControllers;
+	private final long[][] readControllers;
+	private final int[] controllersCount;
+	private final int[] writeControllersCount;
+	private final int[] readControllersCount;
+	private final EntityPairCounts e1e2PairCount;
+	private final int maxNumberOfPairs;
+
+	public SimilarityMetrics(
+		Set<Short> entityIDs,
+		EntityPairCounts e1e2PairCount,
+		Map<Short, List<Pair<String, Byte>>> entityControllers // entityID -> [<controllerName, accessMode>, ...]
+	) {
+		int n = entityIDs.size();
+
+		this.entities = new short[n];
+		int i = 0;
+		for (short entityID : entityIDs)
+			this.entities[i++] = entityID;
+
+		Map<String, Integer> controllerIDs = new HashMap<>();
+
+		for (short entityID : entities)
+			for (Pair<String, Byte> controllerPair : entityControllers.get(entityID))
+				controllerIDs.putIfAbsent(controllerPair.getFirst(), controllerIDs.size());
+
+		int words = (controllerIDs.size() + 63) >>> 6;
+
+		this.controllers = new long[n][words];
+		this.writeControllers = new long[n][words];
+		this.readControllers = new long[n][words];
+		this.controllersCount = new int[n];
+		this.writeControllersCount = new int[n];
+		this.readControllersCount = new int[n];
+
+		for (i = 0; i < n; i++) {
+			for (Pair<String, Byte> controllerPair : entityControllers.get(entities[i])) {
+				int controllerID = controllerIDs.get(controllerPair.getFirst());
+				int word = controllerID >>> 6;
+				long bit = 1L << controllerID;
+				byte mode = controllerPair.getSecond();
+
+				controllers[i][word] |= bit;
+				controllersCount[i]++;
+
+				if (mode != 1) { // != 1 == contains("W") -> "W" or "RW"
+					writeControllers[i][word] |= bit;
+					writeControllersCount[i]++;
+				}
+
+				if (mode != 2) { // != 2 == contains("R") -> "R" or "RW"
+					readControllers[i][word] |= bit;
+					readControllersCount[i]++;
+				}
+			}
+		}
+
+		this.e1e2PairCount = e1e2PairCount;
+		this.maxNumberOfPairs = e1e2PairCount.getMaxCount();
+	}
+
+	public int getSize() { return entities.length; }
+
+	public short[] getEntityIDs() { return entities; }
+
+	/**
+	 * Metrics between the entities at positions i and j, in the order of the entities given to the constructor.
+	 */
+	public float[] calculate(int i, int j) {
+		float[] metrics = new float[MEASURES];
+
+		calculate(i, j, metrics, 0);
+
+		return metrics;
+	}
+
+	/**
+	 * Metrics between the entity at position i and every entity, with the measures of entity j at
+	 * row[j * MEASURES]. The similarity of an entity with itself is 1 in every measure.
+	 */
+	public void calculateRow(int i, float[] row) {
+		for (int j = 0; j < entities.length; j++) {
+			if (i == j) {
+				for (int measure = 0; measure < MEASURES; measure++)
+					row[j * MEASURES + measure] = 1;
+
+				continue;
+			}
+
+			calculate(i, j, row, j * MEASURES);
+		}
+	}
+
+	/**
+	 * Calculates every row, splitting the rows among a fork/join pool with the given parallelism. The
+	 * consumer is called concurrently for different rows and the row buffer is reused after it returns.
+	 * Every cell only depends on the entities' bitsets, so the rows are the same as calculateRow's.
+	 */
+	public void calculateRows(
+		int parallelism,
+		RowConsumer rowConsumer
+	) {
+		RowsTask task = new RowsTask(rowConsumer, 0, entities.length);
+
+		if (parallelism <= 1) {
+			task.calculateRows();
+			return;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try {
+			pool.invoke(task);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private class RowsTask extends RecursiveAction {
+		private final RowConsumer rowConsumer;
+		private final int from;
+		private final int to;
+
+		RowsTask(RowConsumer rowConsumer, int from, int to) {
+			this.rowConsumer = rowConsumer;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= ROWS_PER_TASK) {
+				calculateRows();
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+
+			invokeAll(
+				new RowsTask(rowConsumer, from, middle),
+				new RowsTask(rowConsumer, middle, to)
+			);
+		}
+
+		void calculateRows() {
+			float[] row = new float[entities.length * MEASURES];
+
+			for (int i = from; i < to; i++) {
+				calculateRow(i, row);
+				rowConsumer.accept(i, row);
+			}
+		}
+	}
+
+	private void calculate(int i, int j, float[] metrics, int offset) {
+		float inCommon = countInCommon(controllers[i], controllers[j]);
+		float inCommonW = countInCommon(writeControllers[i], writeControllers[j]);
+		float inCommonR = countInCommon(readControllers[i], readControllers[j]);
+
+		metrics[offset] = inCommon / controllersCount[i];
+		metrics[offset + 1] = writeControllersCount[i] == 0 ? 0 : inCommonW / writeControllersCount[i];
+		metrics[offset + 2] = readControllersCount[i] == 0 ? 0 : inCommonR / readControllersCount[i];
+
+		if (maxNumberOfPairs != 0) {
+			float e1e2Count = e1e2PairCount.get(entities[i], entities[j]);
+			metrics[offset + 3] = e1e2Count / maxNumberOfPairs;
+
+		} else { // nao ha controladores a aceder a mais do que uma entidade
+			metrics[offset + 3] = 0;
+		}
+	}
+
+	private static int countInCommon(long[] a, long[] b) {
+		int count = 0;
+
+		for (int word = 0; word < a.length; word++)
+			count += Long.bitCount(a[word] & b[word]);
+
+		return count;
+	}
+}
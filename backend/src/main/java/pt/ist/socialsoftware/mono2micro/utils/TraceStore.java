@@ -0,0 +1,643 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import pt.ist.socialsoftware.mono2micro.dto.AccessDto;
+import pt.ist.socialsoftware.mono2micro.dto.ReducedTraceElementDto;
+import pt.ist.socialsoftware.mono2micro.dto.RuleDto;
+import pt.ist.socialsoftware.mono2micro.dto.TraceDto;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static pt.ist.socialsoftware.mono2micro.utils.Constants.TRACE_STORE_ENABLED;
+
+/**
+ * Binary columnar copy of a datafile, kept next to it in the <name>Traces directory.
+ *
+ * header.json holds the controllers table (first trace and number of traces of each controller).
+ * The traces table and the trace elements are stored as little-endian primitive columns:
+ *  - traceIds.bin, traceFrequencies.bin, traceElementsCounts.bin (int) and traceFirstElements.bin (long)
+ *  - traceContentHashes.bin (long): TraceDto's content hash of the trace elements
+ *  - elementValues.bin (int): the entity ID of an access or the count of a rule
+ *  - elementModes.bin (byte): 1 (R) or 2 (W) for accesses, RULE for rules
+ *  - elementOccurrences.bin (int)
+ *
+ * The columns are memory mapped, so reading a trace element does not allocate, and the traces it returns
+ * visit their accesses straight from them.
+ *
+ * A datafile is imported by one thread at a time, into a temporary directory that only replaces the store
+ * directory once the import is complete.
+ */
+public class TraceStore {
+	public static final byte RULE = 0;
+	private static final int VERSION = 2;
+
+	private static final Map<String, TraceStore> stores = new ConcurrentHashMap<>();
+	private static final Map<String, Object> locks = new ConcurrentHashMap<>(); // <datafilePath, lock>
+
+	public static class ControllerEntry {
+		private int firstTrace;
+		private int tracesCount;
+
+		public ControllerEntry() {}
+
+		public ControllerEntry(int firstTrace, int tracesCount) {
+			this.firstTrace = firstTrace;
+			this.tracesCount = tracesCount;
+		}
+
+		public int getFirstTrace() { return firstTrace; }
+
+		public void setFirstTrace(int firstTrace) { this.firstTrace = firstTrace; }
+
+		public int getTracesCount() { return tracesCount; }
+
+		public void setTracesCount(int tracesCount) { this.tracesCount = tracesCount; }
+	}
+
+	public static class Header {
+		private int version;
+		private long datafileSize;
+		private long datafileLastModified;
+		private int tracesCount;
+		private long elementsCount;
+		private LinkedHashMap<String, ControllerEntry> controllers = new LinkedHashMap<>(); // in datafile order
+
+		public Header() {}
+
+		public int getVersion() { return version; }
+
+		public void setVersion(int version) { this.version = version; }
+
+		public long getDatafileSize() { return datafileSize; }
+
+		public void setDatafileSize(long datafileSize) { this.datafileSize = datafileSize; }
+
+		public long getDatafileLastModified() { return datafileLastModified; }
+
+		public void setDatafileLastModified(long datafileLastModified) { this.datafileLastModified = datafileLastModified; }
+
+		public int getTracesCount() { return tracesCount; }
+
+		public void setTracesCount(int tracesCount) { this.tracesCount = tracesCount; }
+
+		public long getElementsCount() { return elementsCount; }
+
+		public void setElementsCount(long elementsCount) { this.elementsCount = elementsCount; }
+
+		public LinkedHashMap<String, ControllerEntry> getControllers() { return controllers; }
+
+		public void setControllers(LinkedHashMap<String, ControllerEntry> controllers) { this.controllers = controllers; }
+	}
+
+	private final Header header;
+	private final MappedColumn traceIds;
+	private final MappedColumn traceFrequencies;
+	private final MappedColumn traceFirstElements;
+	private final MappedColumn traceElementsCounts;
+	private final MappedColumn traceContentHashes;
+	private final MappedColumn elementValues;
+	private final MappedColumn elementModes;
+	private final MappedColumn elementOccurrences;
+
+	private TraceStore(
+		File directory,
+		Header header
+	)
+		throws IOException
+	{
+		this.header = header;
+		this.traceIds = new MappedColumn(new File(directory, "traceIds.bin"));
+		this.traceFrequencies = new MappedColumn(new File(directory, "traceFrequencies.bin"));
+		this.traceFirstElements = new MappedColumn(new File(directory, "traceFirstElements.bin"));
+		this.traceElementsCounts = new MappedColumn(new File(directory, "traceElementsCounts.bin"));
+		this.traceContentHashes = new MappedColumn(new File(directory, "traceContentHashes.bin"));
+		this.elementValues = new MappedColumn(new File(directory, "elementValues.bin"));
+		this.elementModes = new MappedColumn(new File(directory, "elementModes.bin"));
+		this.elementOccurrences = new MappedColumn(new File(directory, "elementOccurrences.bin"));
+	}
+
+	/**
+	 * Returns the trace store of the datafile, importing it if it does not exist yet or is out of date.
+	 * Returns null when the store is disabled or cannot be written, in which case the json datafile is used.
+	 */
+	public static TraceStore forDatafile(String datafilePath) {
+		if (!TRACE_STORE_ENABLED)
+			return null;
+
+		File datafile = new File(datafilePath);
+		TraceStore store = stores.get(datafilePath);
+
+		if (store != null && store.isUpToDate(datafile))
+			return store;
+
+		synchronized (locks.computeIfAbsent(datafilePath, path -> new Object())) {
+			// another thread may have imported it while this one waited
+			store = stores.get(datafilePath);
+
+			if (store != null && store.isUpToDate(datafile))
+				return store;
+
+			store = openOrImport(datafile);
+
+			if (store != null)
+				stores.put(datafilePath, store);
+
+			return store;
+		}
+	}
+
+	private static TraceStore openOrImport(File datafile) {
+		File directory = getStoreDirectory(datafile);
+		File headerFile = new File(directory, "header.json");
+		ObjectMapper mapper = new ObjectMapper();
+
+		try {
+			Header header = headerFile.exists() ? mapper.readValue(headerFile, Header.class) : null;
+
+			if (header == null || header.getVersion() != VERSION || header.getDatafileSize() != datafile.length() || header.getDatafileLastModified() != datafile.lastModified()) {
+				importDatafile(datafile, directory);
+				header = mapper.readValue(headerFile, Header.class);
+			}
+
+			return new TraceStore(directory, header);
+
+		} catch (IOException e) {
+			System.err.println("Could not use the trace store of " + datafile.getPath() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	public static File getStoreDirectory(File datafile) {
+		String name = datafile.getName();
+		String baseName = name.endsWith(".json") ? name.substring(0, name.length() - 5) : name;
+
+		return new File(datafile.getAbsoluteFile().getParentFile(), baseName + "Traces");
+	}
+
+	public static void importDatafile(
+		File datafile,
+		File directory
+	)
+		throws IOException
+	{
+		System.out.println("Importing datafile " + datafile.getPath() + " into the trace store...");
+
+		File importDirectory = new File(directory.getPath() + ".tmp");
+
+		if (importDirectory.exists())
+			FileUtils.deleteDirectory(importDirectory);
+
+		if (!importDirectory.mkdir())
+			throw new IOException("Could not create " + importDirectory.getPath());
+
+		try {
+			writeStore(datafile, importDirectory);
+		} catch (IOException e) {
+			FileUtils.deleteDirectory(importDirectory);
+			throw e;
+		}
+
+		// the columns of the previous store stay mapped by the threads that still read it
+		File previousDirectory = new File(directory.getPath() + ".old");
+
+		if (previousDirectory.exists())
+			FileUtils.deleteDirectory(previousDirectory);
+
+		if (directory.exists())
+			Files.move(directory.toPath(), previousDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		Files.move(importDirectory.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		if (previousDirectory.exists())
+			FileUtils.deleteDirectory(previousDirectory);
+	}
+
+	private static void writeStore(
+		File datafile,
+		File directory
+	)
+		throws IOException
+	{
+
+		Header header = new Header();
+		header.setVersion(VERSION);
+		header.setDatafileSize(datafile.length());
+		header.setDatafileLastModified(datafile.lastModified());
+
+		int tracesCount = 0;
+		long elementsCount = 0;
+
+		JsonFactory jsonfactory = new ObjectMapper().getFactory();
+
+		try (
+			JsonParser jsonParser = jsonfactory.createParser(datafile);
+			ColumnWriter traceIds = new ColumnWriter(new File(directory, "traceIds.bin"));
+			ColumnWriter traceFrequencies = new ColumnWriter(new File(directory, "traceFrequencies.bin"));
+			ColumnWriter traceFirstElements = new ColumnWriter(new File(directory, "traceFirstElements.bin"));
+			ColumnWriter traceElementsCounts = new ColumnWriter(new File(directory, "traceElementsCounts.bin"));
+			ColumnWriter traceContentHashes = new ColumnWriter(new File(directory, "traceContentHashes.bin"));
+			ColumnWriter elementValues = new ColumnWriter(new File(directory, "elementValues.bin"));
+			ColumnWriter elementModes = new ColumnWriter(new File(directory, "elementModes.bin"));
+			ColumnWriter elementOccurrences = new ColumnWriter(new File(directory, "elementOccurrences.bin"))
+		) {
+			if (jsonParser.nextToken() != JsonToken.START_OBJECT)
+				throw new IOException("Json must start with a left curly brace");
+
+			while (jsonParser.nextValue() == JsonToken.START_OBJECT) {
+				String controllerName = jsonParser.getCurrentName();
+				int firstTrace = tracesCount;
+
+				while (jsonParser.nextValue() != JsonToken.END_OBJECT) {
+					if (!"t".equals(jsonParser.getCurrentName())) {
+						jsonParser.skipChildren();
+						continue;
+					}
+
+					while (jsonParser.nextToken() != JsonToken.END_ARRAY) { // iterate over trace objects
+						int id = 0;
+						int frequency = 0;
+						int traceElementsCount = 0;
+						long contentHash = TraceDto.EMPTY_CONTENT_HASH;
+
+						while (jsonParser.nextValue() != JsonToken.END_OBJECT) { // iterate over trace object fields
+							switch (jsonParser.getCurrentName()) {
+								case "id":
+									id = jsonParser.getIntValue();
+									break;
+								case "f":
+									frequency = jsonParser.getIntValue();
+									break;
+								case "a":
+									while (jsonParser.nextToken() != JsonToken.END_ARRAY) { // iterate over elements
+										jsonParser.nextToken();
+
+										int value;
+										byte mode;
+
+										if (jsonParser.getCurrentToken() == JsonToken.VALUE_STRING) { // an access
+											mode = (byte) (jsonParser.getText().equals("R") ? 1 : 2);
+											jsonParser.nextToken();
+											value = jsonParser.getShortValue();
+
+										} else { // a rule
+											mode = RULE;
+											value = jsonParser.getIntValue();
+										}
+
+										int occurrences = 1;
+										if (jsonParser.nextToken() == JsonToken.VALUE_NUMBER_INT) {
+											occurrences = jsonParser.getIntValue();
+											jsonParser.nextToken();
+										}
+
+										elementValues.putInt(value);
+										elementModes.put(mode);
+										elementOccurrences.putInt(occurrences);
+										contentHash = TraceDto.hashElement(contentHash, value, mode, occurrences);
+										traceElementsCount++;
+									}
+									break;
+								default:
+									throw new IOException("Unexpected field name when parsing Trace: " + jsonParser.getCurrentName());
+							}
+						}
+
+						traceIds.putInt(id);
+						traceFrequencies.putInt(frequency);
+						traceFirstElements.putLong(elementsCount);
+						traceElementsCounts.putInt(traceElementsCount);
+						traceContentHashes.putLong(contentHash);
+
+						elementsCount += traceElementsCount;
+						tracesCount++;
+					}
+				}
+
+				header.getControllers().put(
+					controllerName,
+					new ControllerEntry(firstTrace, tracesCount - firstTrace)
+				);
+			}
+		}
+
+		header.setTracesCount(tracesCount);
+		header.setElementsCount(elementsCount);
+
+		// written last, so that an interrupted import is never taken as a valid store
+		new ObjectMapper().writeValue(new File(directory, "header.json"), header);
+	}
+
+	private boolean isUpToDate(File datafile) {
+		return header.getDatafileSize() == datafile.length() && header.getDatafileLastModified() == datafile.lastModified();
+	}
+
+	public Set<String> getControllerNames() { return header.getControllers().keySet(); }
+
+	public ControllerEntry getController(String controllerName) { return header.getControllers().get(controllerName); }
+
+	public int getTraceId(int trace) { return traceIds.getInt(trace); }
+
+	public int getTraceFrequency(int trace) { return traceFrequencies.getInt(trace); }
+
+	public long getTraceFirstElement(int trace) { return traceFirstElements.getLong(trace); }
+
+	public int getTraceElementsCount(int trace) { return traceElementsCounts.getInt(trace); }
+
+	public long getTraceContentHash(int trace) { return traceContentHashes.getLong(trace); }
+
+	public int getElementValue(long element) { return elementValues.getInt(element); }
+
+	public byte getElementMode(long element) { return elementModes.get(element); }
+
+	public int getElementOccurrences(long element) { return elementOccurrences.getInt(element); }
+
+	public boolean isRule(long element) { return elementModes.get(element) == RULE; }
+
+	// same as TraceDto.hasSameElements, over the columns
+	public boolean haveSameElements(
+		int trace1,
+		int trace2
+	) {
+		int elementsCount = getTraceElementsCount(trace1);
+
+		if (getTraceContentHash(trace1) != getTraceContentHash(trace2) || elementsCount != getTraceElementsCount(trace2))
+			return false;
+
+		long firstElement1 = getTraceFirstElement(trace1);
+		long firstElement2 = getTraceFirstElement(trace2);
+
+		for (int i = 0; i < elementsCount; i++) {
+			if (
+				getElementValue(firstElement1 + i) != getElementValue(firstElement2 + i) ||
+				getElementMode(firstElement1 + i) != getElementMode(firstElement2 + i) ||
+				getElementOccurrences(firstElement1 + i) != getElementOccurrences(firstElement2 + i)
+			)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * A trace backed by the store: its accesses are visited straight from the columns and its elements are only
+	 * built, once, when they are asked for.
+	 */
+	public TraceDto getTrace(int trace) {
+		return new StoredTrace(this, trace);
+	}
+
+	public List<ReducedTraceElementDto> getTraceElements(int trace) {
+		int elementsCount = getTraceElementsCount(trace);
+
+		if (elementsCount == 0)
+			return null;
+
+		List<ReducedTraceElementDto> elements = new ArrayList<>(elementsCount);
+		long firstElement = getTraceFirstElement(trace);
+
+		for (long e = firstElement; e < firstElement + elementsCount; e++) {
+			ReducedTraceElementDto element;
+
+			if (isRule(e)) {
+				RuleDto rule = new RuleDto();
+				rule.setCount(getElementValue(e));
+				element = rule;
+
+			} else {
+				AccessDto access = new AccessDto();
+				access.setEntityID((short) getElementValue(e));
+				access.setMode(getElementMode(e));
+				element = access;
+			}
+
+			element.setOccurrences(getElementOccurrences(e));
+			elements.add(element);
+		}
+
+		return elements;
+	}
+
+	// same as TraceDto.visitAccesses, over the columns
+	public void visitAccesses(
+		int trace,
+		int maxOccurrences,
+		TraceDto.AccessVisitor visitor
+	) {
+		long firstElement = getTraceFirstElement(trace);
+
+		visitAccesses(firstElement, firstElement + getTraceElementsCount(trace), maxOccurrences, visitor);
+	}
+
+	private void visitAccesses(
+		long from,
+		long to,
+		int maxOccurrences,
+		TraceDto.AccessVisitor visitor
+	) {
+		long e = from;
+
+		while (e < to) {
+			int occurrences = Math.min(getElementOccurrences(e), maxOccurrences);
+
+			if (isRule(e)) {
+				int count = getElementValue(e);
+
+				for (int j = 0; j < occurrences; j++)
+					visitAccesses(e + 1, e + 1 + count, maxOccurrences, visitor);
+
+				e += 1 + count;
+
+			} else {
+				if (occurrences > 0)
+					visitor.visit((short) getElementValue(e), getElementMode(e), occurrences);
+
+				e++;
+			}
+		}
+	}
+
+	// same as TraceDto.visitCompressedAccesses, over the columns
+	public void visitCompressedAccesses(
+		int trace,
+		TraceDto.AccessVisitor visitor
+	) {
+		long firstElement = getTraceFirstElement(trace);
+
+		visitCompressedAccesses(firstElement, firstElement + getTraceElementsCount(trace), 1, visitor);
+	}
+
+	private void visitCompressedAccesses(
+		long from,
+		long to,
+		int multiplier,
+		TraceDto.AccessVisitor visitor
+	) {
+		long e = from;
+
+		while (e < to) {
+			if (isRule(e)) {
+				int count = getElementValue(e);
+
+				visitCompressedAccesses(e + 1, e + 1 + count, multiplier * getElementOccurrences(e), visitor);
+
+				e += 1 + count;
+
+			} else {
+				visitor.visit((short) getElementValue(e), getElementMode(e), getElementOccurrences(e) * multiplier);
+
+				e++;
+			}
+		}
+	}
+
+	private static class StoredTrace extends TraceDto {
+		private final TraceStore store;
+		private final int trace;
+		private boolean elementsRead = false;
+
+		private StoredTrace(
+			TraceStore store,
+			int trace
+		) {
+			super(store.getTraceId(trace), store.getTraceFrequency(trace), null);
+			this.store = store;
+			this.trace = trace;
+			setContentHash(store.getTraceContentHash(trace));
+		}
+
+		@Override
+		public List<ReducedTraceElementDto> getElements() {
+			if (!elementsRead) {
+				setElements(store.getTraceElements(trace));
+				elementsRead = true;
+			}
+
+			return super.getElements();
+		}
+
+		@Override
+		public boolean hasElements() { return store.getTraceElementsCount(trace) > 0; }
+
+		@Override
+		public boolean hasSameElements(TraceDto other) {
+			if (other instanceof StoredTrace && ((StoredTrace) other).store == store)
+				return store.haveSameElements(trace, ((StoredTrace) other).trace);
+
+			return super.hasSameElements(other);
+		}
+
+		@Override
+		public void visitAccesses(
+			int maxOccurrences,
+			AccessVisitor visitor
+		) {
+			store.visitAccesses(trace, maxOccurrences, visitor);
+		}
+
+		@Override
+		public void visitCompressedAccesses(AccessVisitor visitor) {
+			store.visitCompressedAccesses(trace, visitor);
+		}
+	}
+
+	/**
+	 * A column may be larger than what a single MappedByteBuffer can address, so it is mapped in segments.
+	 * The segment size is a multiple of every value size, hence no value spans two segments.
+	 */
+	private static class MappedColumn {
+		private static final int SEGMENT_SHIFT = 30;
+		private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+		private final MappedByteBuffer[] segments;
+
+		private MappedColumn(File file) throws IOException {
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				long size = channel.size();
+				int segmentsCount = (int) (size >> SEGMENT_SHIFT) + 1;
+				segments = new MappedByteBuffer[segmentsCount];
+
+				for (int i = 0; i < segmentsCount; i++) {
+					long position = (long) i << SEGMENT_SHIFT;
+					segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(1L << SEGMENT_SHIFT, size - position));
+					segments[i].order(ByteOrder.LITTLE_ENDIAN);
+				}
+			}
+		}
+
+		private byte get(long index) {
+			return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+		}
+
+		private int getInt(long index) {
+			long position = index << 2;
+			return segments[(int) (position >>> SEGMENT_SHIFT)].getInt((int) (position & SEGMENT_MASK));
+		}
+
+		private long getLong(long index) {
+			long position = index << 3;
+			return segments[(int) (position >>> SEGMENT_SHIFT)].getLong((int) (position & SEGMENT_MASK));
+		}
+	}
+
+	private static class ColumnWriter implements Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+		private ColumnWriter(File file) throws IOException {
+			channel = FileChannel.open(
+				file.toPath(),
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE
+			);
+		}
+
+		private void put(byte value) throws IOException {
+			ensureRemaining(1);
+			buffer.put(value);
+		}
+
+		private void putInt(int value) throws IOException {
+			ensureRemaining(4);
+			buffer.putInt(value);
+		}
+
+		private void putLong(long value) throws IOException {
+			ensureRemaining(8);
+			buffer.putLong(value);
+		}
+
+		private void ensureRemaining(int bytes) throws IOException {
+			if (buffer.remaining() < bytes)
+				flush();
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+			channel.close();
+		}
+	}
+}
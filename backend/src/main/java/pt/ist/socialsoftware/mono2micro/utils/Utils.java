@@ -16,6 +16,7 @@ import java.io.InputStream;
 import java.util.*;
 
 import static org.jgrapht.Graphs.successorListOf;
+import static pt.ist.socialsoftware.mono2micro.utils.Constants.WEIGHT_BY_FREQUENCY;
 
 public class Utils {
 
@@ -60,86 +61,72 @@ public class Utils {
     // FIXME better name for this function pls
     public static void fillEntityDataStructures(
         Map<Short, List<Pair<String, Byte>>> entityControllers,
-        Map<String, Integer> e1e2PairCount,
-        List<AccessDto> accessesList,
-        String controllerName
+        EntityPairCounts e1e2PairCount,
+        TraceDto trace,
+        String controllerName,
+        int weight // number of times the pairs of the trace are counted
     ) {
+        int[] previousEntityID = {Integer.MIN_VALUE}; // no previous access
 
-        for (int i = 0; i < accessesList.size(); i++) {
-            AccessDto access = accessesList.get(i);
-            short entityID = access.getEntityID();
-            byte mode = access.getMode();
-
-            if (entityControllers.containsKey(entityID)) {
-                boolean containsController = false;
-
-                for (Pair<String, Byte> controllerPair : entityControllers.get(entityID)) {
-                    if (controllerPair.getFirst().equals(controllerName)) {
-                        containsController = true;
-
-                        if (controllerPair.getSecond() != 3 && controllerPair.getSecond() != mode)
-                            controllerPair.setSecond((byte) 3); // "RW" -> 3
-
-                        break;
-                    }
-                }
+        // a repeated sequence is visited twice, enough to count the pair between its end and its start
+        trace.visitAccesses(2, (entityID, mode, occurrences) -> {
+            addEntityController(entityControllers, entityID, mode, controllerName);
 
-                if (!containsController) {
-                    entityControllers.get(entityID).add(
-                        new Pair<>(
-                            controllerName,
-                            mode
-                        )
-                    );
-                }
+            if (previousEntityID[0] != Integer.MIN_VALUE && previousEntityID[0] != entityID) {
+                short previous = (short) previousEntityID[0];
 
-            } else {
-                List<Pair<String, Byte>> controllersPairs = new ArrayList<>();
-                controllersPairs.add(
-                    new Pair<>(
-                        controllerName,
-                        mode
-                    )
-                );
+                e1e2PairCount.increment(previous, entityID, weight);
+                e1e2PairCount.increment(entityID, previous, weight);
+            }
 
+            previousEntityID[0] = entityID;
+        });
+    }
 
-                entityControllers.put(entityID, controllersPairs);
-            }
+    // 1 unless the traces are weighted by their frequency
+    public static int getTraceWeight(TraceDto trace) {
+        return WEIGHT_BY_FREQUENCY ? Math.max(1, trace.getFrequency()) : 1;
+    }
 
-            if (i < accessesList.size() - 1) {
-                AccessDto nextAccess = accessesList.get(i + 1);
-                short nextEntityID = nextAccess.getEntityID();
+    private static void addEntityController(
+        Map<Short, List<Pair<String, Byte>>> entityControllers,
+        short entityID,
+        byte mode,
+        String controllerName
+    ) {
+        List<Pair<String, Byte>> controllersPairs = entityControllers.get(entityID);
 
-                if (entityID != nextEntityID) {
-                    String e1e2 = entityID + "->" + nextEntityID;
-                    String e2e1 = nextEntityID + "->" + entityID;
+        if (controllersPairs == null) {
+            controllersPairs = new ArrayList<>();
+            entityControllers.put(entityID, controllersPairs);
+        }
 
-                    int count = e1e2PairCount.getOrDefault(e1e2, 0);
-                    e1e2PairCount.put(e1e2, count + 1);
+        for (Pair<String, Byte> controllerPair : controllersPairs) {
+            if (controllerPair.getFirst().equals(controllerName)) {
+                if (controllerPair.getSecond() != 3 && controllerPair.getSecond() != mode)
+                    controllerPair.setSecond((byte) 3); // "RW" -> 3
 
-                    count = e1e2PairCount.getOrDefault(e2e1, 0);
-                    e1e2PairCount.put(e2e1, count + 1);
-                }
+                return;
             }
         }
-    }
 
-    public static int getMaxNumberOfPairs(Map<String,Integer> e1e2PairCount) {
-        if (!e1e2PairCount.values().isEmpty())
-            return Collections.max(e1e2PairCount.values());
-        else
-            return 0;
+        controllersPairs.add(
+            new Pair<>(
+                controllerName,
+                mode
+            )
+        );
     }
 
     public static class GetDataToBuildSimilarityMatrixResult {
         public Set<Short> entities;
-        public Map<String, Integer> e1e2PairCount;
+        public EntityPairCounts e1e2PairCount;
         public Map<Short, List<Pair<String, Byte>>> entityControllers;
 
         public GetDataToBuildSimilarityMatrixResult(
             Set<Short> entities,
-            Map<String, Integer> e1e2PairCount, Map<Short,
-            List<Pair<String, Byte>>> entityControllers
+            EntityPairCounts e1e2PairCount,
+            Map<Short, List<Pair<String, Byte>>> entityControllers
         ) {
             this.entities = entities;
             this.e1e2PairCount = e1e2PairCount;
@@ -158,7 +145,7 @@ public class Utils {
         System.out.println("Creating similarity matrix...");
 
         Map<Short, List<Pair<String, Byte>>> entityControllers = new HashMap<>();
-        Map<String, Integer> e1e2PairCount = new HashMap<>();
+        EntityPairCounts e1e2PairCount = new EntityPairCounts();
 
         ControllerTracesIterator iter = new ControllerTracesIterator(
             codebase.getDatafilePath(),
@@ -180,8 +167,9 @@ public class Utils {
                         Utils.fillEntityDataStructures(
                             entityControllers,
                             e1e2PairCount,
-                            t.expand(2),
-                            controllerName
+                            t,
+                            controllerName,
+                            getTraceWeight(t)
                         );
                     }
 
@@ -194,8 +182,9 @@ public class Utils {
                         Utils.fillEntityDataStructures(
                             entityControllers,
                             e1e2PairCount,
-                            t.expand(2),
-                            controllerName
+                            t,
+                            controllerName,
+                            getTraceWeight(t)
                         );
                     }
 
@@ -214,8 +203,9 @@ public class Utils {
 //                            Utils.fillEntityDataStructures(
 //                                entityControllers,
 //                                e1e2PairCount,
-//                                t.expand(2),
-//                                controllerName
+//                                t,
+//                                controllerName,
+//                                getTraceWeight(t)
 //                            );
 //                        }
 //                    }
@@ -223,15 +213,39 @@ public class Utils {
 //                    break;
 
                 default:
+                    // identical traces are filled once, weighted by how many times they occur, and the traces
+                    // with the same content hash are only taken as identical when their elements are
+                    Map<Long, List<Pair<TraceDto, Integer>>> uniqueTraces = new LinkedHashMap<>();
+
                     while (iter.hasMoreTraces()) {
                         t = iter.nextTrace();
 
-                        Utils.fillEntityDataStructures(
-                            entityControllers,
-                            e1e2PairCount,
-                            t.expand(2),
-                            controllerName
-                        );
+                        List<Pair<TraceDto, Integer>> sameHashTraces = uniqueTraces.computeIfAbsent(t.getContentHash(), hash -> new ArrayList<>(1));
+                        Pair<TraceDto, Integer> uniqueTrace = null;
+
+                        for (Pair<TraceDto, Integer> sameHashTrace : sameHashTraces) {
+                            if (sameHashTrace.getFirst().hasSameElements(t)) {
+                                uniqueTrace = sameHashTrace;
+                                break;
+                            }
+                        }
+
+                        if (uniqueTrace == null)
+                            sameHashTraces.add(new Pair<>(t, getTraceWeight(t)));
+                        else
+                            uniqueTrace.setSecond(uniqueTrace.getSecond() + getTraceWeight(t));
+                    }
+
+                    for (List<Pair<TraceDto, Integer>> sameHashTraces : uniqueTraces.values()) {
+                        for (Pair<TraceDto, Integer> uniqueTrace : sameHashTraces) {
+                            Utils.fillEntityDataStructures(
+                                entityControllers,
+                                e1e2PairCount,
+                                uniqueTrace.getFirst(),
+                                controllerName,
+                                uniqueTrace.getSecond()
+                            );
+                        }
                     }
             }
 
@@ -249,70 +263,11 @@ public class Utils {
         );
     }
 
-    public static float[] calculateSimilarityMatrixMetrics(
-        Map<Short,List<Pair<String, Byte>>> entityControllers, // entityID -> [<controllerName, accessMode>, ...]
-        Map<String,Integer> e1e2PairCount,
-        short e1ID,
-        short e2ID,
-        int maxNumberOfPairs
-    ) {
-
-        float inCommon = 0;
-        float inCommonW = 0;
-        float inCommonR = 0;
-        float e1ControllersW = 0;
-        float e1ControllersR = 0;
-
-        for (Pair<String, Byte> e1Controller : entityControllers.get(e1ID)) {
-            for (Pair<String, Byte> e2Controller : entityControllers.get(e2ID)) {
-                if (e1Controller.getFirst().equals(e2Controller.getFirst())) {
-                    inCommon++;
-                    // != 1 == contains("W") -> "W" or "RW"
-                    if (e1Controller.getSecond() != 1 && e2Controller.getSecond() != 1)
-                        inCommonW++;
-
-                    // != 2 == contains("R") -> "R" or "RW"
-                    if (e1Controller.getSecond() != 2 && e2Controller.getSecond() != 2)
-                        inCommonR++;
-                }
-            }
-
-            // != 1 == contains("W") -> "W" or "RW"
-            if (e1Controller.getSecond() != 1)
-                e1ControllersW++;
-
-            // != 2 == contains("R") -> "R" or "RW"
-            if (e1Controller.getSecond() != 2)
-                e1ControllersR++;
-        }
-
-        float accessMetric = inCommon / entityControllers.get(e1ID).size();
-        float writeMetric = e1ControllersW == 0 ? 0 : inCommonW / e1ControllersW;
-        float readMetric = e1ControllersR == 0 ? 0 : inCommonR / e1ControllersR;
-
-        String e1e2 = e1ID + "->" + e2ID;
-        float e1e2Count = e1e2PairCount.getOrDefault(e1e2, 0);
-
-        float sequenceMetric;
-
-        if (maxNumberOfPairs != 0)
-            sequenceMetric = e1e2Count / maxNumberOfPairs;
-        else // nao ha controladores a aceder a mais do que uma entidade
-            sequenceMetric = 0;
-
-        return new float[] {
-            accessMetric,
-            writeMetric,
-            readMetric,
-            sequenceMetric
-        };
-    }
-
     public static class GetLocalTransactionsSequenceAndCalculateTracePerformanceResult {
         public int performance = 0;
         public LocalTransaction lastLocalTransaction = null;
         public List<LocalTransaction> localTransactionsSequence = new ArrayList<>();
-        public String firstAccessedClusterName = null;
+        public Short firstAccessedClusterID = null;
         Map<Short, Byte> entityIDToMode = new HashMap<>();
 
         public GetLocalTransactionsSequenceAndCalculateTracePerformanceResult() {}
@@ -321,13 +276,13 @@ public class Utils {
             int performance,
             LocalTransaction lastLocalTransaction,
             List<LocalTransaction> localTransactionsSequence,
-            String firstAccessedClusterName,
+            Short firstAccessedClusterID,
             Map<Short, Byte> entityIDToMode
         ) {
             this.performance = performance;
             this.lastLocalTransaction = lastLocalTransaction;
             this.localTransactionsSequence = localTransactionsSequence;
-            this.firstAccessedClusterName = firstAccessedClusterName;
+            this.firstAccessedClusterID = firstAccessedClusterID;
             this.entityIDToMode = entityIDToMode;
         }
     }
@@ -336,7 +291,7 @@ public class Utils {
         int lastLocalTransactionID,
         LocalTransaction lastLocalTransaction,
         List<ReducedTraceElementDto> elements,
-        Map<Short, String> entityIDToClusterName,
+        Map<Short, Short> entityIDToClusterID,
         Map<Short, Byte> entityIDToMode,
         int from,
         int to
@@ -346,7 +301,7 @@ public class Utils {
         if (numberOfElements == 0) return new GetLocalTransactionsSequenceAndCalculateTracePerformanceResult();
 
         int performance = 0;
-        String firstAccessedClusterName = null;
+        Short firstAccessedClusterID = null;
 
         LocalTransaction currentLocalTransaction = lastLocalTransaction;
         List<LocalTransaction> localTransactionsSequence = new ArrayList<>();
@@ -363,22 +318,22 @@ public class Utils {
                     lastLocalTransactionID,
                     currentLocalTransaction,
                     elements,
-                    entityIDToClusterName,
+                    entityIDToClusterID,
                     entityIDToMode,
                     i + 1,
                     i + 1 + r.getCount()
                 );
 
-                String sequenceFirstAccessedClusterName = result.firstAccessedClusterName;
+                short sequenceFirstAccessedClusterID = result.firstAccessedClusterID;
                 int sequencePerformance = result.performance;
 
-                if (firstAccessedClusterName == null)
-                    firstAccessedClusterName = sequenceFirstAccessedClusterName;
+                if (firstAccessedClusterID == null)
+                    firstAccessedClusterID = sequenceFirstAccessedClusterID;
 
                 // hop between an access (previous cluster if it exists) and the sequence in question
                 if (
                     currentLocalTransaction != null && // this currentLT is already outdated that's why it's useful
-                    currentLocalTransaction.getClusterID() != Short.parseShort(sequenceFirstAccessedClusterName)
+                    currentLocalTransaction.getClusterID() != sequenceFirstAccessedClusterID
                 ) {
                     performance++;
                 }
@@ -396,7 +351,7 @@ public class Utils {
                 // then we want to consider the hop between the final access and the first one
                 if (
                     r.getOccurrences() > 1 &&
-                    Short.parseShort(sequenceFirstAccessedClusterName) != currentLocalTransaction.getClusterID()
+                    sequenceFirstAccessedClusterID != currentLocalTransaction.getClusterID()
                 ) {
                     performance += r.getOccurrences() - 1;
                 }
@@ -409,17 +364,17 @@ public class Utils {
                 short accessedEntityID = access.getEntityID();
                 byte accessMode = access.getMode();
 
-                String currentClusterName = entityIDToClusterName.get(accessedEntityID);
+                Short accessedClusterID = entityIDToClusterID.get(accessedEntityID);
 
-                if (currentClusterName == null) {
+                if (accessedClusterID == null) {
                     System.err.println("No assigned entity with ID " + accessedEntityID + " to a cluster.");
                     System.exit(-1);
                 }
 
-                short currentClusterID = Short.parseShort(currentClusterName);
+                short currentClusterID = accessedClusterID;
 
-                if (firstAccessedClusterName == null)
-                    firstAccessedClusterName = currentClusterName;
+                if (firstAccessedClusterID == null)
+                    firstAccessedClusterID = accessedClusterID;
 
                 if (currentLocalTransaction == null) { // if it's the first element
                     performance++;
@@ -492,7 +447,7 @@ public class Utils {
             performance,
             currentLocalTransaction,
             localTransactionsSequence,
-            firstAccessedClusterName,
+            firstAccessedClusterID,
             entityIDToMode
         );
     }
@@ -7,7 +7,6 @@ import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import pt.ist.socialsoftware.mono2micro.domain.Codebase;
 import pt.ist.socialsoftware.mono2micro.domain.Controller;
-import pt.ist.socialsoftware.mono2micro.domain.Dendrogram;
 
 import java.io.IOException;
 import java.util.List;
@@ -50,10 +49,10 @@ public class CodebaseDeserializer extends StdDeserializer<Codebase> {
 							codebase.setName(jsonParser.getValueAsString());
 							break;
 
-						case "dendrograms":
-							codebase.setDendrograms(
+						case "dendrogramNames":
+							codebase.setDendrogramNames(
 								jsonParser.readValueAs(
-									new TypeReference<List<Dendrogram>>(){}
+									new TypeReference<List<String>>(){}
 								)
 							);
 							break;
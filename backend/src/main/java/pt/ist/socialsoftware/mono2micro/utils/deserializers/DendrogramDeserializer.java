@@ -6,7 +6,6 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import pt.ist.socialsoftware.mono2micro.domain.Dendrogram;
-import pt.ist.socialsoftware.mono2micro.domain.Decomposition;
 import pt.ist.socialsoftware.mono2micro.utils.Constants;
 
 import java.io.IOException;
@@ -69,10 +68,10 @@ public class DendrogramDeserializer extends StdDeserializer<Dendrogram> {
 						case "profile":
 							dendrogram.setProfile(jsonParser.getValueAsString());
 							break;
-						case "decompositions":
-							dendrogram.setDecompositions(
+						case "decompositionNames":
+							dendrogram.setDecompositionNames(
 								jsonParser.readValueAs(
-									new TypeReference<List<Decomposition>>(){}
+									new TypeReference<List<String>>(){}
 								)
 							);
 							break;
@@ -0,0 +1,207 @@
+package pt.ist.socialsoftware.mono2micro.utils.mojoCalculator.src.main.java;
+
+import java.util.Arrays;
+
+/**
+ * MoJo, MoJoPlus and MoJoFM between two partitions held in memory, with the same values as MoJoCalculator
+ * over the equivalent RSF files.
+ *
+ * A partition is an array indexed by object with the number of its cluster, or -1 when the object is not in
+ * the partition. As in the RSF files, objects of the source that are not in the target are ignored, and the
+ * clusters of the target are counted with all of their objects. Every call only uses its own arrays, so the
+ * calculations can run concurrently.
+ */
+public final class PartitionMoJo {
+
+    private PartitionMoJo() {
+    }
+
+    /* one-way MoJo distance from source to target */
+    public static long mojo(int[] source, int[] target) {
+        return new Tags(source, target, false).cost();
+    }
+
+    /* one-way MoJoPlus distance from source to target */
+    public static long mojoplus(int[] source, int[] target) {
+        return new Tags(source, target, true).cost();
+    }
+
+    /* MoJoFM(M) = 1 - mno(A,B) / max(mno(any_A,B)) * 100%, from source to target */
+    public static double mojofm(int[] source, int[] target) {
+        long totalCost = mojo(source, target);
+        long maxDis = maxDistanceTo(source, target);
+
+        return Math.rint((1 - (double) totalCost / maxDis) * 10000) / 100;
+    }
+
+    /*
+     * calculate the max(mno(B, any_A)), which is also the max(mno(any_A, B)), where, as in MoJoCalculator,
+     * n is the number of objects of A that are in B while the clusters of B are counted with all of their objects
+     */
+    private static long maxDistanceTo(int[] source, int[] target) {
+        int[] B = new int[numberOfClusters(target)];
+        long obj_number = 0;
+
+        for (int obj = 0; obj < target.length; obj++) {
+            if (target[obj] >= 0) {
+                B[target[obj]]++;
+
+                if (source[obj] >= 0)
+                    obj_number++;
+            }
+        }
+
+        /* only the clusters with objects are in the partition */
+        B = Arrays.stream(B).filter(cardinality -> cardinality > 0).sorted().toArray();
+
+        int group_number = 0;
+
+        for (int i = 0; i < B.length; i++) {
+            if (group_number < B[i])
+                group_number++;
+        }
+        /* return n - l + l - g = n - g */
+        return obj_number - group_number;
+    }
+
+    private static int numberOfClusters(int[] partition) {
+        int max = -1;
+
+        for (int cluster : partition)
+            max = Math.max(max, cluster);
+
+        return max + 1;
+    }
+
+    /*
+     * Tag assignment of the clusters in A: each cluster in A is linked to the clusters in B it shares the
+     * most objects with (MoJo) or to every cluster in B it shares objects with (MoJoPlus).
+     */
+    private static class Tags {
+        private final int clustersInA; /* clusters in A with objects in B */
+        private final int clustersInB;
+        private long moves; /* objects outside the tag of their cluster in A */
+
+        /* edges of cluster i of A are groups[edgesFrom[i]] to groups[edgesFrom[i + 1] - 1] */
+        private final int[] edgesFrom;
+        private final int[] groups;
+
+        Tags(int[] source, int[] target, boolean plus) {
+            if (source.length != target.length)
+                throw new IllegalArgumentException("Partitions over " + source.length + " and " + target.length + " objects");
+
+            int sourceClusters = numberOfClusters(source);
+            clustersInB = numberOfClusters(target);
+
+            /* objects in both partitions, grouped by their cluster in A */
+            int[] sizes = new int[sourceClusters + 1];
+
+            for (int obj = 0; obj < source.length; obj++)
+                if (source[obj] >= 0 && target[obj] >= 0)
+                    sizes[source[obj] + 1]++;
+
+            for (int i = 0; i < sourceClusters; i++)
+                sizes[i + 1] += sizes[i];
+
+            int[] objects = new int[sizes[sourceClusters]];
+            int[] filled = Arrays.copyOf(sizes, sourceClusters);
+
+            for (int obj = 0; obj < source.length; obj++)
+                if (source[obj] >= 0 && target[obj] >= 0)
+                    objects[filled[source[obj]]++] = obj;
+
+            int[] tags = new int[clustersInB];
+            int[] touched = new int[clustersInB];
+            int[] edgesFrom = new int[sourceClusters + 1];
+            int[] groups = new int[objects.length];
+            int edges = 0;
+            int clustersInA = 0;
+
+            for (int cluster = 0; cluster < sourceClusters; cluster++) {
+                int from = sizes[cluster];
+                int to = sizes[cluster + 1];
+
+                if (from == to)
+                    continue;
+
+                int touchedCount = 0;
+                int maxtag = 0;
+
+                for (int k = from; k < to; k++) {
+                    int tag = target[objects[k]];
+
+                    if (tags[tag]++ == 0)
+                        touched[touchedCount++] = tag;
+
+                    maxtag = Math.max(maxtag, tags[tag]);
+                }
+
+                /* MoJoPlus counts each cluster in B once */
+                int totaltags = plus ? touchedCount : to - from;
+                if (plus)
+                    maxtag = 1;
+
+                moves += totaltags - maxtag;
+                edgesFrom[clustersInA] = edges;
+
+                for (int k = 0; k < touchedCount; k++) {
+                    int tag = touched[k];
+
+                    if (plus || tags[tag] == maxtag)
+                        groups[edges++] = tag;
+
+                    tags[tag] = 0;
+                }
+
+                clustersInA++;
+            }
+
+            edgesFrom[clustersInA] = edges;
+
+            this.clustersInA = clustersInA;
+            this.edgesFrom = edgesFrom;
+            this.groups = groups;
+        }
+
+        /*
+         * After a maximum bipartite matching, the matched clusters in A have different groups and the others
+         * join the group of a matched one, so there is a join operation for each cluster that is not matched.
+         */
+        long cost() {
+            return moves + clustersInA - maximumMatching();
+        }
+
+        private int maximumMatching() {
+            int[] matchOfB = new int[clustersInB];
+            int[] visited = new int[clustersInB]; /* the last cluster in A whose search reached it, plus 1 */
+            Arrays.fill(matchOfB, -1);
+
+            int matched = 0;
+
+            for (int i = 0; i < clustersInA; i++)
+                if (augment(i, i + 1, matchOfB, visited))
+                    matched++;
+
+            return matched;
+        }
+
+        /* depth first search for an augmenting path from cluster i of A */
+        private boolean augment(int i, int search, int[] matchOfB, int[] visited) {
+            for (int k = edgesFrom[i]; k < edgesFrom[i + 1]; k++) {
+                int group = groups[k];
+
+                if (visited[group] == search)
+                    continue;
+
+                visited[group] = search;
+
+                if (matchOfB[group] == -1 || augment(matchOfB[group], search, matchOfB, visited)) {
+                    matchOfB[group] = i;
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
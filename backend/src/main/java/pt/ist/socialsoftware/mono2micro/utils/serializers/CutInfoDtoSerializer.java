@@ -45,7 +45,8 @@ public class CutInfoDtoSerializer extends StdSerializer<CutInfoDto> {
         gen.writeObjectField("mojoBiggest", analyserResultDto.getMojoBiggest());
         gen.writeObjectField("mojoNew", analyserResultDto.getMojoNew());
         gen.writeObjectField("mojoSingletons", analyserResultDto.getMojoSingletons());
-        gen.writeObjectField("controllerSpecs", value.getControllerSpecs());
+        if (value.getControllerSpecs() != null) // left out by analyser results queries unless asked for
+            gen.writeObjectField("controllerSpecs", value.getControllerSpecs());
 
         gen.writeEndObject();
     }
@@ -3,6 +3,7 @@ from os import walk
 import pandas as pd
 import csv
 import shutil
+from similarityMatrix import loadSimilarityMatrix
 
 # Create .CSV files from analyser results
 # numberOfEntities_MaxComplexity_CodebaseName.csv
@@ -26,15 +27,14 @@ for folder in codebases:
     #     continue
     analyserFolderPath = os.getcwd() + "/../codebases/" + folder + "/analyser/"
     analyserResultFilePath = analyserFolderPath + "analyserResult.json"
-    similarityMatrixFilePath = analyserFolderPath + "similarityMatrix.json"
 
     if os.path.exists(analyserResultFilePath):
         print(folder)
 
         dfAnalyser = pd.read_json(analyserResultFilePath)
-        dfSimilarity = pd.read_json(similarityMatrixFilePath)
+        entities, _, _ = loadSimilarityMatrix(analyserFolderPath)
 
-        entitiesCount = len(dfSimilarity['entities'])
+        entitiesCount = len(entities)
 
         maxComplexity = 0
         maxPerformance = 0
@@ -0,0 +1,49 @@
+import numpy as np
+import struct
+import json
+from os import path
+
+# Layout written by pt.ist.socialsoftware.mono2micro.utils.SimilarityMatrix:
+#  magic "M2MS" | version | size | measures | flags | data offset | linkage type length   (int32 each)
+#  linkage type (utf-8) | entity IDs (int16 * size) | padding | values (float32)
+
+MAGIC = b"M2MS"
+UPPER_TRIANGLE = 1
+
+
+def loadSimilarityMatrix(directoryPath):
+    """
+    Returns (entities, matrix, linkageType) where matrix has shape (size, size) when the file has a single
+    measure and (size, size, measures) otherwise. Directories written before the binary format are still
+    read from their similarityMatrix.json.
+    """
+    filePath = directoryPath + "/similarityMatrix.bin"
+
+    if not path.exists(filePath):
+        with open(directoryPath + "/similarityMatrix.json") as f:
+            similarityMatrix = json.load(f)
+
+        return similarityMatrix["entities"], np.array(similarityMatrix["matrix"]), similarityMatrix["linkageType"]
+
+    with open(filePath, "rb") as f:
+        if f.read(4) != MAGIC:
+            raise Exception(filePath + " is not a similarity matrix file")
+
+        version, size, measures, flags, dataOffset, linkageTypeLength = struct.unpack("<6i", f.read(24))
+        linkageType = f.read(linkageTypeLength).decode("utf-8")
+        entities = list(struct.unpack("<%dh" % size, f.read(2 * size)))
+
+    if flags & UPPER_TRIANGLE:
+        values = np.memmap(filePath, dtype="<f4", mode="r", offset=dataOffset,
+                           shape=(size * (size + 1) // 2, measures))
+        matrix = np.empty((size, size, measures), dtype=np.float32)
+        rows, columns = np.triu_indices(size)
+        matrix[rows, columns] = values
+        matrix[columns, rows] = values
+    else:
+        matrix = np.memmap(filePath, dtype="<f4", mode="r", offset=dataOffset, shape=(size, size, measures))
+
+    if measures == 1:
+        matrix = matrix[:, :, 0]
+
+    return entities, matrix, linkageType
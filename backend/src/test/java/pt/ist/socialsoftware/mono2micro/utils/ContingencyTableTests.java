@@ -0,0 +1,195 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The counts and false pairs of the contingency table must be the ones of the pairwise scan getAnalysis used
+ * before: every pair of common entities, in the order of the clusters of the first decomposition.
+ */
+public class ContingencyTableTests {
+
+	private static class PairwiseScan {
+		long truePositive;
+		long falseNegative;
+		long falsePositive;
+		long trueNegative;
+		List<String> falsePairs = new ArrayList<>();
+	}
+
+	private static String getCluster(
+		Map<String, Set<Short>> decomposition,
+		short entityID
+	) {
+		String entityCluster = "";
+
+		for (String cluster : decomposition.keySet())
+			if (decomposition.get(cluster).contains(entityID))
+				entityCluster = cluster;
+
+		return entityCluster;
+	}
+
+	private static PairwiseScan scan(
+		Map<String, Set<Short>> decomposition1,
+		Map<String, Set<Short>> decomposition2
+	) {
+		List<Short> entities = new ArrayList<>();
+
+		for (Set<Short> cluster1 : decomposition1.values())
+			for (short entityID : cluster1)
+				for (Set<Short> cluster2 : decomposition2.values())
+					if (cluster2.contains(entityID))
+						entities.add(entityID);
+
+		PairwiseScan scan = new PairwiseScan();
+
+		for (int i = 0; i < entities.size(); i++) {
+			for (int j = i + 1; j < entities.size(); j++) {
+				short e1ID = entities.get(i);
+				short e2ID = entities.get(j);
+
+				String e1ClusterG1 = getCluster(decomposition1, e1ID);
+				String e2ClusterG1 = getCluster(decomposition1, e2ID);
+				String e1ClusterG2 = getCluster(decomposition2, e1ID);
+				String e2ClusterG2 = getCluster(decomposition2, e2ID);
+
+				boolean sameClusterInGraph1 = e1ClusterG1.equals(e2ClusterG1);
+				boolean sameClusterInGraph2 = e1ClusterG2.equals(e2ClusterG2);
+
+				if (sameClusterInGraph1 && sameClusterInGraph2)
+					scan.truePositive++;
+				if (sameClusterInGraph1 && !sameClusterInGraph2)
+					scan.falseNegative++;
+				if (!sameClusterInGraph1 && sameClusterInGraph2)
+					scan.falsePositive++;
+				if (!sameClusterInGraph1 && !sameClusterInGraph2)
+					scan.trueNegative++;
+
+				if (sameClusterInGraph1 != sameClusterInGraph2)
+					scan.falsePairs.add(String.join(",", String.valueOf(e1ID), e1ClusterG1, e1ClusterG2, String.valueOf(e2ID), e2ClusterG1, e2ClusterG2));
+			}
+		}
+
+		return scan;
+	}
+
+	private static List<String> toStrings(List<String[]> falsePairs) {
+		List<String> strings = new ArrayList<>();
+
+		for (String[] falsePair : falsePairs)
+			strings.add(String.join(",", falsePair));
+
+		return strings;
+	}
+
+	private static void assertSameAsScan(
+		Map<String, Set<Short>> decomposition1,
+		Map<String, Set<Short>> decomposition2
+	) {
+		PairwiseScan scan = scan(decomposition1, decomposition2);
+		ContingencyTable table = new ContingencyTable(decomposition1, decomposition2);
+
+		assertEquals(scan.truePositive, table.getTruePositive());
+		assertEquals(scan.falseNegative, table.getFalseNegative());
+		assertEquals(scan.falsePositive, table.getFalsePositive());
+		assertEquals(scan.trueNegative, table.getTrueNegative());
+		assertEquals(scan.falsePairs.size(), table.getNumberOfFalsePairs());
+
+		assertEquals(scan.falsePairs, toStrings(table.getFalsePairs(0, Integer.MAX_VALUE)));
+
+		// the pages put together are the whole list
+		List<String> pages = new ArrayList<>();
+
+		for (int offset = 0; offset < scan.falsePairs.size(); offset += 3)
+			pages.addAll(toStrings(table.getFalsePairs(offset, 3)));
+
+		assertEquals(scan.falsePairs, pages);
+	}
+
+	private static Map<String, Set<Short>> decomposition(Object... clusters) {
+		Map<String, Set<Short>> decomposition = new LinkedHashMap<>();
+
+		for (int i = 0; i < clusters.length; i += 2) {
+			Set<Short> entities = new HashSet<>();
+
+			for (int entityID : (int[]) clusters[i + 1])
+				entities.add((short) entityID);
+
+			decomposition.put((String) clusters[i], entities);
+		}
+
+		return decomposition;
+	}
+
+	@Test
+	public void counts() {
+		Map<String, Set<Short>> decomposition1 = decomposition(
+			"a", new int[] {1, 2, 3},
+			"b", new int[] {4, 5}
+		);
+		Map<String, Set<Short>> decomposition2 = decomposition(
+			"x", new int[] {1, 2},
+			"y", new int[] {3, 4, 5},
+			"z", new int[] {6} // not in the first decomposition
+		);
+
+		ContingencyTable table = new ContingencyTable(decomposition1, decomposition2);
+
+		assertEquals(5, table.getNumberOfEntities());
+		assertEquals(2, table.getTruePositive()); // 1-2, 4-5
+		assertEquals(2, table.getFalseNegative()); // 1-3, 2-3
+		assertEquals(2, table.getFalsePositive()); // 3-4, 3-5
+		assertEquals(4, table.getTrueNegative());
+
+		assertSameAsScan(decomposition1, decomposition2);
+	}
+
+	@Test
+	public void falsePairsPages() {
+		Map<String, Set<Short>> decomposition1 = decomposition(
+			"a", new int[] {1, 2, 3, 4},
+			"b", new int[] {5, 6, 7}
+		);
+		Map<String, Set<Short>> decomposition2 = decomposition(
+			"x", new int[] {1, 5},
+			"y", new int[] {2, 6},
+			"z", new int[] {3, 4, 7}
+		);
+
+		ContingencyTable table = new ContingencyTable(decomposition1, decomposition2);
+		List<String> falsePairs = scan(decomposition1, decomposition2).falsePairs;
+
+		assertEquals(falsePairs.subList(2, 6), toStrings(table.getFalsePairs(2, 4)));
+		assertEquals(falsePairs.subList(falsePairs.size() - 1, falsePairs.size()), toStrings(table.getFalsePairs(falsePairs.size() - 1, 10)));
+		assertEquals(0, table.getFalsePairs(falsePairs.size(), 10).size());
+		assertEquals(0, table.getFalsePairs(0, 0).size());
+	}
+
+	@Test
+	public void randomDecompositions() {
+		Random random = new Random(3);
+
+		for (int i = 0; i < 100; i++) {
+			int entities = random.nextInt(40);
+			int clusters1 = 1 + random.nextInt(6);
+			int clusters2 = 1 + random.nextInt(6);
+
+			Map<String, Set<Short>> decomposition1 = new HashMap<>();
+			Map<String, Set<Short>> decomposition2 = new HashMap<>();
+
+			for (short entityID = 0; entityID < entities; entityID++) {
+				// some entities are left out of one of the decompositions
+				if (random.nextInt(5) > 0)
+					decomposition1.computeIfAbsent("a" + random.nextInt(clusters1), cluster -> new HashSet<>()).add(entityID);
+				if (random.nextInt(5) > 0)
+					decomposition2.computeIfAbsent("b" + random.nextInt(clusters2), cluster -> new HashSet<>()).add(entityID);
+			}
+
+			assertSameAsScan(decomposition1, decomposition2);
+		}
+	}
+}
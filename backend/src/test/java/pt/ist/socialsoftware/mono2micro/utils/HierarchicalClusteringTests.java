@@ -0,0 +1,138 @@
+package pt.ist.socialsoftware.mono2micro.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Linkages and cuts of seven observations on a line, as given by scipy's linkage(pdist(points), method) and
+ * cut_tree(Z, n_clusters). The points have no ties, so the merges are the same whatever the algorithm.
+ */
+public class HierarchicalClusteringTests {
+	private static final double[] POINTS = {0.0, 1.5, 4.1, 4.9, 6.2, 10.0, 13.7};
+
+	private static double[] getDistances() {
+		int n = POINTS.length;
+		double[] distances = new double[n * (n - 1) / 2];
+
+		for (int i = 0; i < n; i++)
+			for (int j = i + 1; j < n; j++)
+				distances[HierarchicalClustering.condensedIndex(n, i, j)] = Math.abs(POINTS[i] - POINTS[j]);
+
+		return distances;
+	}
+
+	private static Linkage linkage(String linkageType) {
+		return HierarchicalClustering.linkage(
+			getDistances(),
+			POINTS.length,
+			HierarchicalClustering.LinkageType.fromName(linkageType)
+		);
+	}
+
+	// rows of the scipy linkage matrix: left, right, height, count
+	private static void assertLinkage(
+		double[][] expected,
+		Linkage linkage
+	) {
+		assertEquals(expected.length, linkage.getMergesCount());
+
+		for (int k = 0; k < expected.length; k++) {
+			assertEquals("left of merge " + k, (int) expected[k][0], linkage.getLeft(k));
+			assertEquals("right of merge " + k, (int) expected[k][1], linkage.getRight(k));
+			assertEquals("height of merge " + k, expected[k][2], linkage.getHeight(k), 1e-9);
+			assertEquals("count of merge " + k, (int) expected[k][3], linkage.getCount(k));
+		}
+	}
+
+	@Test
+	public void singleLinkage() {
+		assertLinkage(
+			new double[][] {
+				{2, 3, 0.8, 2},
+				{4, 7, 1.3, 3},
+				{0, 1, 1.5, 2},
+				{8, 9, 2.6, 5},
+				{5, 6, 3.7, 2},
+				{10, 11, 3.8, 7}
+			},
+			linkage("single")
+		);
+	}
+
+	@Test
+	public void completeLinkage() {
+		assertLinkage(
+			new double[][] {
+				{2, 3, 0.8, 2},
+				{0, 1, 1.5, 2},
+				{4, 7, 2.1, 3},
+				{5, 6, 3.7, 2},
+				{8, 9, 6.2, 5},
+				{10, 11, 13.7, 7}
+			},
+			linkage("complete")
+		);
+	}
+
+	@Test
+	public void averageLinkage() {
+		assertLinkage(
+			new double[][] {
+				{2, 3, 0.8, 2},
+				{0, 1, 1.5, 2},
+				{4, 7, 1.7, 3},
+				{5, 6, 3.7, 2},
+				{8, 9, 4.316666666666666, 5},
+				{10, 11, 8.51, 7}
+			},
+			linkage("average")
+		);
+	}
+
+	@Test
+	public void weightedLinkage() {
+		assertLinkage(
+			new double[][] {
+				{2, 3, 0.8, 2},
+				{0, 1, 1.5, 2},
+				{4, 7, 1.7, 3},
+				{5, 6, 3.7, 2},
+				{8, 9, 4.6, 5},
+				{10, 11, 8.8, 7}
+			},
+			linkage("weighted")
+		);
+	}
+
+	@Test
+	public void cutByNumberOfClusters() {
+		Linkage single = linkage("single");
+
+		assertArrayEquals(new int[] {0, 0, 0, 0, 0, 0, 0}, single.cutByNumberOfClusters(1));
+		assertArrayEquals(new int[] {0, 0, 0, 0, 0, 1, 1}, single.cutByNumberOfClusters(2));
+		assertArrayEquals(new int[] {0, 0, 0, 0, 0, 1, 2}, single.cutByNumberOfClusters(3));
+		assertArrayEquals(new int[] {0, 0, 1, 1, 1, 2, 3}, single.cutByNumberOfClusters(4));
+		assertArrayEquals(new int[] {0, 1, 2, 2, 2, 3, 4}, single.cutByNumberOfClusters(5));
+		assertArrayEquals(new int[] {0, 1, 2, 2, 3, 4, 5}, single.cutByNumberOfClusters(6));
+		assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5, 6}, single.cutByNumberOfClusters(7));
+
+		Linkage average = linkage("average");
+
+		assertArrayEquals(new int[] {0, 0, 1, 1, 1, 2, 2}, average.cutByNumberOfClusters(3));
+		assertArrayEquals(new int[] {0, 0, 1, 1, 1, 2, 3}, average.cutByNumberOfClusters(4));
+		assertArrayEquals(new int[] {0, 0, 1, 1, 2, 3, 4}, average.cutByNumberOfClusters(5));
+	}
+
+	@Test
+	public void cutByHeight() {
+		Linkage single = linkage("single");
+
+		// only the merges strictly below the height are applied
+		assertArrayEquals(single.cutByNumberOfClusters(4), single.cutByHeight(2.0));
+		assertArrayEquals(single.cutByNumberOfClusters(5), single.cutByHeight(1.5));
+		assertArrayEquals(single.cutByNumberOfClusters(7), single.cutByHeight(0.5));
+		assertArrayEquals(single.cutByNumberOfClusters(1), single.cutByHeight(4.0));
+	}
+}
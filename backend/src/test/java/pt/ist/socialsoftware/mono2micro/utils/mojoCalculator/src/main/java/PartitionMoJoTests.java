@@ -0,0 +1,141 @@
+package pt.ist.socialsoftware.mono2micro.utils.mojoCalculator.src.main.java;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * PartitionMoJo must give the same values as MoJoCalculator over the RSF files of the same partitions.
+ */
+public class PartitionMoJoTests {
+
+	// a partition as written by the analyser: every object of a cluster in a "contain" line
+	private static File writeRsf(List<List<Integer>> clusters) throws IOException {
+		File file = File.createTempFile("partition", ".rsf");
+		file.deleteOnExit();
+
+		try (FileWriter writer = new FileWriter(file)) {
+			for (int cluster = 0; cluster < clusters.size(); cluster++)
+				for (int object : clusters.get(cluster))
+					writer.write("contain c" + cluster + " " + object + "\n");
+		}
+
+		return file;
+	}
+
+	private static int[] toPartition(
+		List<List<Integer>> clusters,
+		int objects
+	) {
+		int[] partition = new int[objects];
+		Arrays.fill(partition, -1);
+
+		for (int cluster = 0; cluster < clusters.size(); cluster++)
+			for (int object : clusters.get(cluster))
+				partition[object] = cluster;
+
+		return partition;
+	}
+
+	private static void assertSameAsCalculator(
+		List<List<Integer>> source,
+		List<List<Integer>> target,
+		int objects
+	)
+		throws IOException
+	{
+		String sourceFile = writeRsf(source).getPath();
+		String targetFile = writeRsf(target).getPath();
+
+		int[] sourcePartition = toPartition(source, objects);
+		int[] targetPartition = toPartition(target, objects);
+
+		String partitions = source + " -> " + target;
+
+		assertEquals(partitions, new MoJoCalculator(sourceFile, targetFile, null).mojo(), PartitionMoJo.mojo(sourcePartition, targetPartition));
+		assertEquals(partitions, new MoJoCalculator(sourceFile, targetFile, null).mojoplus(), PartitionMoJo.mojoplus(sourcePartition, targetPartition));
+		assertEquals(partitions, new MoJoCalculator(sourceFile, targetFile, null).mojofm(), PartitionMoJo.mojofm(sourcePartition, targetPartition), 0);
+	}
+
+	private static List<List<Integer>> clusters(Integer[]... clusters) {
+		List<List<Integer>> partition = new ArrayList<>();
+
+		for (Integer[] cluster : clusters)
+			partition.add(Arrays.asList(cluster));
+
+		return partition;
+	}
+
+	@Test
+	public void samePartitions() throws IOException {
+		List<List<Integer>> partition = clusters(new Integer[] {0, 1, 2}, new Integer[] {3, 4}, new Integer[] {5});
+
+		assertSameAsCalculator(partition, partition, 6);
+		assertEquals(100, PartitionMoJo.mojofm(toPartition(partition, 6), toPartition(partition, 6)), 0);
+	}
+
+	@Test
+	public void movesAndJoins() throws IOException {
+		assertSameAsCalculator(
+			clusters(new Integer[] {0, 1, 2, 3}, new Integer[] {4, 5}, new Integer[] {6, 7}),
+			clusters(new Integer[] {0, 1, 4}, new Integer[] {2, 3, 5, 6, 7}),
+			8
+		);
+
+		assertSameAsCalculator(
+			clusters(new Integer[] {0}, new Integer[] {1}, new Integer[] {2}, new Integer[] {3}),
+			clusters(new Integer[] {0, 1, 2, 3}),
+			4
+		);
+	}
+
+	@Test
+	public void objectsMissingFromOnePartition() throws IOException {
+		// objects of the source that are not in the target are ignored, the target is counted with all of them
+		assertSameAsCalculator(
+			clusters(new Integer[] {0, 1, 2}, new Integer[] {3, 4, 5}),
+			clusters(new Integer[] {0, 1}, new Integer[] {3, 4, 6}, new Integer[] {7}),
+			8
+		);
+	}
+
+	@Test
+	public void randomPartitions() throws IOException {
+		Random random = new Random(7);
+
+		for (int i = 0; i < 100; i++) {
+			int objects = 1 + random.nextInt(40);
+			int sourceClusters = 1 + random.nextInt(8);
+			int targetClusters = 1 + random.nextInt(8);
+
+			List<List<Integer>> source = new ArrayList<>();
+			List<List<Integer>> target = new ArrayList<>();
+
+			for (int c = 0; c < sourceClusters; c++)
+				source.add(new ArrayList<>());
+			for (int c = 0; c < targetClusters; c++)
+				target.add(new ArrayList<>());
+
+			for (int object = 0; object < objects; object++) {
+				// some objects are left out of one of the partitions
+				if (random.nextInt(6) > 0)
+					source.get(random.nextInt(sourceClusters)).add(object);
+				if (random.nextInt(6) > 0)
+					target.get(random.nextInt(targetClusters)).add(object);
+			}
+
+			source.removeIf(List::isEmpty);
+			target.removeIf(List::isEmpty);
+
+			if (source.isEmpty() || target.isEmpty())
+				continue;
+
+			assertSameAsCalculator(source, target, objects);
+		}
+	}
+}